@@ -0,0 +1,34 @@
+package de.firemage.flork.flow;
+
+/**
+ * Limits for the analysis of a single method. If one of them is exceeded, the method gets the conservative stub
+ * summary instead, and the violation is recorded (see {@link FlowContext#getBudgetViolations()}).
+ * Values <= 0 disable a limit.
+ *
+ * @param maxMillis     Wall time of the analysis, including callees that are analyzed on demand
+ * @param maxLiveStates How many normal & exceptional engine states may be live at a statement
+ * @param maxVars       How many var entries a single engine state may have at a statement
+ * @param maxExitStates How many exit states the analysis may produce; checked before they are compacted, so
+ *                      {@link AnalysisOptions#maxExitStates()} does not hide violations
+ */
+public record AnalysisBudget(long maxMillis, int maxLiveStates, int maxVars, int maxExitStates) {
+    public static AnalysisBudget unlimited() {
+        return new AnalysisBudget(0, 0, 0, 0);
+    }
+
+    public AnalysisBudget withMaxMillis(long maxMillis) {
+        return new AnalysisBudget(maxMillis, this.maxLiveStates, this.maxVars, this.maxExitStates);
+    }
+
+    public AnalysisBudget withMaxLiveStates(int maxLiveStates) {
+        return new AnalysisBudget(this.maxMillis, maxLiveStates, this.maxVars, this.maxExitStates);
+    }
+
+    public AnalysisBudget withMaxVars(int maxVars) {
+        return new AnalysisBudget(this.maxMillis, this.maxLiveStates, maxVars, this.maxExitStates);
+    }
+
+    public AnalysisBudget withMaxExitStates(int maxExitStates) {
+        return new AnalysisBudget(this.maxMillis, this.maxLiveStates, this.maxVars, maxExitStates);
+    }
+}
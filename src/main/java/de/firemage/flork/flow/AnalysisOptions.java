@@ -0,0 +1,63 @@
+package de.firemage.flork.flow;
+
+import de.firemage.flork.flow.engine.JoinMode;
+import de.firemage.flork.flow.engine.RelationalDomain;
+
+/**
+ * Tuning knobs of the analysis. Use {@link #defaults()} and the with-methods to derive a configuration.
+ *
+ * @param joinMode  How engine states are combined when control flow joins
+ * @param maxStates How many states may be tracked per control flow point before the engine starts merging them
+ *                  (trading precision for speed); values <= 0 disable merging, which is the default
+ * @param relationalDomain How relations between vars are tracked
+ * @param dispatchMode How the targets of virtual calls are resolved in a closed world
+ * @param specializationDepth How many calls may be nested in which the callee is analyzed specifically for the
+ *                            values of its arguments instead of using its general summary; 0 disables specialization
+ * @param maxExitStates How many exit states a method summary may have before they are merged (trading precision for
+ *                      speed of the callers); values <= 0 disable merging beyond the lossless compaction, which is the
+ *                      default
+ * @param budget Limits for the analysis of a single method
+ */
+public record AnalysisOptions(JoinMode joinMode, int maxStates, RelationalDomain relationalDomain,
+                              DispatchMode dispatchMode, int specializationDepth, int maxExitStates,
+                              AnalysisBudget budget) {
+    public static AnalysisOptions defaults() {
+        return new AnalysisOptions(JoinMode.SUBSUME, 0, RelationalDomain.TRANSITIVE_CLOSURE,
+                DispatchMode.CLASS_HIERARCHY, 0, 0, AnalysisBudget.unlimited());
+    }
+
+    public AnalysisOptions withJoinMode(JoinMode joinMode) {
+        return new AnalysisOptions(joinMode, this.maxStates, this.relationalDomain, this.dispatchMode,
+                this.specializationDepth, this.maxExitStates, this.budget);
+    }
+
+    public AnalysisOptions withMaxStates(int maxStates) {
+        return new AnalysisOptions(this.joinMode, maxStates, this.relationalDomain, this.dispatchMode,
+                this.specializationDepth, this.maxExitStates, this.budget);
+    }
+
+    public AnalysisOptions withRelationalDomain(RelationalDomain relationalDomain) {
+        return new AnalysisOptions(this.joinMode, this.maxStates, relationalDomain, this.dispatchMode,
+                this.specializationDepth, this.maxExitStates, this.budget);
+    }
+
+    public AnalysisOptions withDispatchMode(DispatchMode dispatchMode) {
+        return new AnalysisOptions(this.joinMode, this.maxStates, this.relationalDomain, dispatchMode,
+                this.specializationDepth, this.maxExitStates, this.budget);
+    }
+
+    public AnalysisOptions withSpecializationDepth(int specializationDepth) {
+        return new AnalysisOptions(this.joinMode, this.maxStates, this.relationalDomain, this.dispatchMode,
+                specializationDepth, this.maxExitStates, this.budget);
+    }
+
+    public AnalysisOptions withMaxExitStates(int maxExitStates) {
+        return new AnalysisOptions(this.joinMode, this.maxStates, this.relationalDomain, this.dispatchMode,
+                this.specializationDepth, maxExitStates, this.budget);
+    }
+
+    public AnalysisOptions withBudget(AnalysisBudget budget) {
+        return new AnalysisOptions(this.joinMode, this.maxStates, this.relationalDomain, this.dispatchMode,
+                this.specializationDepth, this.maxExitStates, budget);
+    }
+}
@@ -0,0 +1,154 @@
+package de.firemage.flork.flow;
+
+import de.firemage.flork.flow.analysis.MethodAnalysis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The methods that are currently being analyzed by one thread, innermost last.
+ * <p>
+ * A recursive call finds its callee on this stack and uses the callee's provisional summary. Every analysis that
+ * (transitively) used a provisional summary only holds as long as that summary does, so its result is kept here
+ * (instead of being published in its {@link CachedMethod}) as a dependent of the in-progress method (the head).
+ * The head discards its dependents if its summary changes, and publishes them once its summary is final.
+ */
+class AnalysisStack {
+    private final List<Frame> frames = new ArrayList<>();
+    private final Map<CachedMethod, Frame> inProgress = new HashMap<>();
+    private final Map<CachedMethod, ProvisionalResult> provisionalResults = new HashMap<>();
+    private int specializationDepth = 0;
+    private int provisionalUses = 0;
+
+    void push(CachedMethod method, MethodAnalysis provisionalSummary) {
+        Frame frame = new Frame(method, this.frames.size(), provisionalSummary);
+        this.frames.add(frame);
+        this.inProgress.put(method, frame);
+    }
+
+    Frame pop() {
+        Frame frame = this.frames.removeLast();
+        this.inProgress.remove(frame.method);
+        return frame;
+    }
+
+    /**
+     * Returns the provisional summary if the method is in progress (i.e. this is a recursive call),
+     * or the provisional result if the method has been analyzed with some provisional summary.
+     * Returns null if neither applies.
+     */
+    MethodAnalysis lookup(CachedMethod method) {
+        Frame frame = this.inProgress.get(method);
+        if (frame != null) {
+            this.provisionalUses++;
+            frame.recursive = true;
+            this.addDependency(frame.index);
+            return frame.provisionalSummary;
+        }
+
+        ProvisionalResult result = this.provisionalResults.get(method);
+        if (result != null) {
+            this.provisionalUses++;
+            this.addDependency(result.dependsOn);
+            return result.analysis;
+        }
+        return null;
+    }
+
+    /**
+     * Records the result of a popped frame. If it depends on a method that is still in progress, it (and its
+     * dependents) become dependents of that method, and false is returned. Otherwise, the result and the results of
+     * all dependents are final and published.
+     */
+    boolean complete(Frame frame, MethodAnalysis result) {
+        if (frame.dependsOn < frame.index) {
+            Frame head = this.frames.get(frame.dependsOn);
+            head.dependents.add(frame.method);
+            head.dependents.addAll(frame.dependents);
+            this.provisionalResults.put(frame.method, new ProvisionalResult(result, frame.dependsOn));
+            for (CachedMethod dependent : frame.dependents) {
+                var dependentResult = this.provisionalResults.get(dependent);
+                this.provisionalResults.put(dependent, new ProvisionalResult(dependentResult.analysis, frame.dependsOn));
+            }
+            this.addDependency(frame.dependsOn);
+            return false;
+        }
+
+        for (CachedMethod dependent : frame.dependents) {
+            dependent.publish(this.provisionalResults.remove(dependent).analysis);
+        }
+        return true;
+    }
+
+    /**
+     * Drops the results that were computed with the frame's (now outdated) provisional summary
+     */
+    void discardDependents(Frame frame) {
+        frame.dependents.forEach(this.provisionalResults::remove);
+        frame.dependents.clear();
+    }
+
+    boolean isInProgress(CachedMethod method) {
+        return this.inProgress.containsKey(method);
+    }
+
+    /**
+     * Specializations don't get a frame, since they are never used as provisional summaries
+     */
+    void enterSpecialization() {
+        this.specializationDepth++;
+    }
+
+    void exitSpecialization() {
+        this.specializationDepth--;
+    }
+
+    int getSpecializationDepth() {
+        return this.specializationDepth;
+    }
+
+    /**
+     * Counts how often {@link #lookup(CachedMethod)} returned a provisional summary or result, so that callers can
+     * check whether an analysis depends on one
+     */
+    int getProvisionalUses() {
+        return this.provisionalUses;
+    }
+
+    private void addDependency(int index) {
+        if (!this.frames.isEmpty()) {
+            Frame top = this.frames.getLast();
+            top.dependsOn = Math.min(top.dependsOn, index);
+        }
+    }
+
+    static final class Frame {
+        private final CachedMethod method;
+        private final int index;
+        private final MethodAnalysis provisionalSummary;
+        private final Set<CachedMethod> dependents = new LinkedHashSet<>();
+        private int dependsOn;
+        private boolean recursive = false;
+
+        private Frame(CachedMethod method, int index, MethodAnalysis provisionalSummary) {
+            this.method = method;
+            this.index = index;
+            this.provisionalSummary = provisionalSummary;
+            this.dependsOn = index;
+        }
+
+        /**
+         * Whether the analysis of this method used its own provisional summary
+         */
+        boolean isRecursive() {
+            return this.recursive;
+        }
+    }
+
+    private record ProvisionalResult(MethodAnalysis analysis, int dependsOn) {
+    }
+}
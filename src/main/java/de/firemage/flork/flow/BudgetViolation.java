@@ -0,0 +1,7 @@
+package de.firemage.flork.flow;
+
+/**
+ * The analysis of the method exceeded its {@link AnalysisBudget}, so its summary is the stub summary
+ */
+public record BudgetViolation(CachedMethod method, String reason) {
+}
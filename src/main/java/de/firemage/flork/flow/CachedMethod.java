@@ -1,9 +1,12 @@
 package de.firemage.flork.flow;
 
+import de.firemage.flork.flow.analysis.BudgetExceededException;
+import de.firemage.flork.flow.analysis.FixedMethodAnalysis;
 import de.firemage.flork.flow.analysis.FlowMethodAnalysis;
 import de.firemage.flork.flow.analysis.MethodAnalysis;
 import de.firemage.flork.flow.analysis.StubMethodAnalysis;
 import de.firemage.flork.flow.annotation.FlorkOpaque;
+import de.firemage.flork.flow.value.ValueSet;
 import spoon.reflect.declaration.CtMethod;
 import spoon.reflect.declaration.ModifierKind;
 import spoon.reflect.reference.CtExecutableReference;
@@ -11,24 +14,32 @@ import spoon.reflect.reference.CtExecutableReference;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
 
 public class CachedMethod {
+    /**
+     * After this many iterations, the summary of a recursive method is widened to the stub summary
+     */
+    public static final int MAX_FIXPOINT_ITERATIONS = 8;
+
     private final FlowContext context;
     private final CtExecutableReference<?> method;
     private final String qualifiedName;
     private final boolean effectivelyFinal;
     private final TypeId declaringType;
 
-    private StubMethodAnalysis unknownAnalysis;
-    private List<MethodAnalysis> virtualCallAnalyses;
-    private MethodAnalysis localAnalysis;
+    // Lazily computed; racing threads compute equal values, so publishing them without a lock is fine
+    private volatile StubMethodAnalysis unknownAnalysis;
+    private volatile List<CachedMethod> virtualCallTargets;
+    // Only ever set to the final analysis, see publish
+    private volatile MethodAnalysis localAnalysis;
 
     public CachedMethod(CtExecutableReference<?> method, FlowContext context) {
         this.context = context;
         this.method = method;
-        this.declaringType = TypeId.ofFallible(method.getDeclaringType()).orElseThrow();
-        this.virtualCallAnalyses = null;
+        this.declaringType = context.getTypeFallible(method.getDeclaringType()).orElseThrow();
+        this.virtualCallTargets = null;
         this.localAnalysis = null;
         this.qualifiedName = FlowContext.buildQualifiedExecutableName(method);
 
@@ -68,6 +79,14 @@ public class CachedMethod {
         return this.method;
     }
 
+    /**
+     * Checks whether the summary of the method has already been computed and published, i.e. whether
+     * {@link #getFixedCallAnalysis()} would return it without analyzing the method
+     */
+    public boolean hasPublishedAnalysis() {
+        return this.localAnalysis != null;
+    }
+
     /**
      * For constructors, static methods and methods that can be proven to be of a specific type
      *
@@ -81,6 +100,59 @@ public class CachedMethod {
         return this.getLocalAnalysis();
     }
 
+    /**
+     * Like {@link #getFixedCallAnalysis()}, but analyzes the method specifically for the given values of its
+     * (explicit) parameters, as long as fewer than {@link AnalysisOptions#specializationDepth()} specializations are
+     * nested. Specializations are cached in the context's {@link SpecializationCache}.
+     */
+    public MethodAnalysis getFixedCallAnalysis(List<ValueSet> arguments) {
+        AnalysisStack stack = this.context.getAnalysisStack();
+        if (this.isOpaque()
+                || this.method.getDeclaration() == null
+                || this.context.getHardcodedMethods().getForMethod(this.method).isPresent()
+                || stack.getSpecializationDepth() >= this.context.getOptions().specializationDepth()
+                || stack.isInProgress(this)
+                || this.isUnconstrained(arguments)) {
+            return this.getFixedCallAnalysis();
+        }
+
+        SpecializationCache cache = this.context.getSpecializations();
+        MethodAnalysis result = cache.get(this, arguments);
+        if (result != null) {
+            this.context.logNoPrefix("=== Retrieved cached specialization of " + this.method.getSignature());
+            return result;
+        }
+
+        int provisionalUses = stack.getProvisionalUses();
+        stack.enterSpecialization();
+        try {
+            result = FlowMethodAnalysis.analyzeSpecialized(this, this.method.getDeclaration(), arguments, this.context);
+        } catch (BudgetExceededException ex) {
+            // The general summary is at least as precise as the stub
+            this.context.recordBudgetViolation(new BudgetViolation(this, ex.getMessage()));
+            return this.getFixedCallAnalysis();
+        } finally {
+            stack.exitSpecialization();
+        }
+
+        // Specializations that used a provisional summary may be outdated once that summary changes
+        if (stack.getProvisionalUses() == provisionalUses) {
+            cache.put(this, arguments, result);
+        }
+        return result;
+    }
+
+    private boolean isUnconstrained(List<ValueSet> arguments) {
+        var parameters = this.method.getDeclaration().getParameters();
+        for (int i = 0; i < arguments.size(); i++) {
+            TypeId type = this.context.getType(parameters.get(i).getType());
+            if (!arguments.get(i).equals(ValueSet.topForType(type, this.context))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public List<MethodAnalysis> getVirtualCallAnalyses() {
         if (this.isOpaque()) {
             return List.of(this.getUnknownAnalysis());
@@ -90,22 +162,25 @@ public class CachedMethod {
             throw new IllegalStateException("Cannot virtual-call the non-virtual method " + this.getName());
         }
 
-        if (this.virtualCallAnalyses == null) {
+        if (!this.effectivelyFinal && !this.context.isClosedWorld()) {
+            return List.of(this.getUnknownAnalysis());
+        }
+
+        // Only cache the targets, since the analyses of recursive methods may change until they reach their fixpoint
+        if (this.virtualCallTargets == null) {
             if (this.effectivelyFinal) {
-                this.virtualCallAnalyses = List.of(this.getLocalAnalysis());
-            } else if (this.context.isClosedWorld()) {
-                this.virtualCallAnalyses = Stream.concat(
+                this.virtualCallTargets = List.of(this);
+            } else {
+                this.virtualCallTargets = Stream.concat(
                                 TypeUtil.getAllOverridingMethods(this.method, this.context)
                                         .map(this.context::getCachedMethod),
                                 Stream.of(this)
                         )
-                        .map(CachedMethod::getLocalAnalysis)
+                        .filter(this.context::isPossibleCallTarget)
                         .toList();
-            } else {
-                this.virtualCallAnalyses = List.of(this.getUnknownAnalysis());
             }
         }
-        return this.virtualCallAnalyses;
+        return this.virtualCallTargets.stream().map(CachedMethod::getLocalAnalysis).toList();
     }
 
     private StubMethodAnalysis getUnknownAnalysis() {
@@ -116,19 +191,106 @@ public class CachedMethod {
     }
 
     private MethodAnalysis getLocalAnalysis() {
-        if (this.localAnalysis == null) {
-            if (this.context.getHardcodedMethods().getForMethod(this.method).isPresent()) {
-                this.context.logNoPrefix("=== Using hardcoded analysis of " + this.getName());
-                this.localAnalysis = this.context.getHardcodedMethods().getForMethod(this.method).get();
-            } else if (this.method.getDeclaration() != null) {
-                // Method is present in the classpath
-                this.localAnalysis = FlowMethodAnalysis.analyzeMethod(this, this.method.getDeclaration(), this.context);
-            } else {
-                this.context.logNoPrefix("=== Using stub analysis for " + this.getName());
-                this.localAnalysis = StubMethodAnalysis.forReferencedExecutable(this, this.context);
-            }
-        } else {
+        MethodAnalysis result = this.localAnalysis;
+        if (result != null) {
             this.context.logNoPrefix("=== Retrieved cached analysis of " + this.method.getSignature());
+            return result;
+        }
+
+        if (this.context.getHardcodedMethods().getForMethod(this.method).isPresent()) {
+            this.context.logNoPrefix("=== Using hardcoded analysis of " + this.getName());
+            return this.publish(this.context.getHardcodedMethods().getForMethod(this.method).get());
+        } else if (this.method.getDeclaration() == null) {
+            this.context.logNoPrefix("=== Using stub analysis for " + this.getName());
+            return this.publish(StubMethodAnalysis.forReferencedExecutable(this, this.context));
+        }
+
+        // Recursive call, or the method has already been analyzed with a provisional summary
+        result = this.context.getAnalysisStack().lookup(this);
+        if (result != null) {
+            this.context.logNoPrefix("=== Using provisional summary of " + this.getName());
+            return result;
+        }
+
+        // Method is present in the classpath
+        SummaryStore store = this.context.getSummaryStore();
+        if (store != null) {
+            result = store.load(this);
+            if (result != null) {
+                this.context.logNoPrefix("=== Loaded stored analysis of " + this.getName());
+                return this.publish(result);
+            }
+        }
+
+        result = this.analyzeToFixpoint();
+        // Stubs (e.g. after a budget violation) are cheap to recompute, and provisional summaries are not final
+        if (store != null && result instanceof FlowMethodAnalysis && this.localAnalysis == result) {
+            store.save(this, result);
+        }
+        return result;
+    }
+
+    /**
+     * Analyzes the method until its summary is stable. Recursive calls use the summary of the previous iteration,
+     * starting with a summary without any exit states (i.e. the recursive call does not return).
+     * If the summary does not stabilize within {@link #MAX_FIXPOINT_ITERATIONS}, it is widened to the stub summary.
+     * The result is only published if it does not depend on the provisional summary of a method that is still in
+     * progress.
+     */
+    private MethodAnalysis analyzeToFixpoint() {
+        AnalysisStack stack = this.context.getAnalysisStack();
+        MethodAnalysis summary = new FixedMethodAnalysis(this, List.of());
+        for (int iteration = 1; ; iteration++) {
+            stack.push(this, summary);
+            MethodAnalysis result;
+            AnalysisStack.Frame frame;
+            BudgetExceededException budgetExceeded = null;
+            try {
+                result = FlowMethodAnalysis.analyzeMethod(this, this.method.getDeclaration(), this.context);
+            } catch (BudgetExceededException ex) {
+                budgetExceeded = ex;
+                result = null;
+            } finally {
+                frame = stack.pop();
+            }
+
+            if (budgetExceeded != null) {
+                stack.discardDependents(frame);
+                result = this.fallBackToStub(budgetExceeded);
+                return stack.complete(frame, result) ? this.publish(result) : result;
+            }
+
+            if (frame.isRecursive() && !haveSameExitStates(summary, result)) {
+                // Analyses that used the old summary are outdated
+                stack.discardDependents(frame);
+                if (iteration < MAX_FIXPOINT_ITERATIONS) {
+                    summary = result;
+                    continue;
+                }
+                this.context.logNoPrefix("=== No fixpoint for " + this.getName() + ", using stub analysis");
+                result = StubMethodAnalysis.forReferencedExecutable(this, this.context);
+            }
+
+            return stack.complete(frame, result) ? this.publish(result) : result;
+        }
+    }
+
+    private MethodAnalysis fallBackToStub(BudgetExceededException ex) {
+        this.context.logNoPrefix("=== Budget exceeded for " + this.getName() + " (" + ex.getMessage() + "), using stub analysis");
+        this.context.recordBudgetViolation(new BudgetViolation(this, ex.getMessage()));
+        return StubMethodAnalysis.forReferencedExecutable(this, this.context);
+    }
+
+    private static boolean haveSameExitStates(MethodAnalysis a, MethodAnalysis b) {
+        return Set.copyOf(a.getReturnStates()).equals(Set.copyOf(b.getReturnStates()));
+    }
+
+    /**
+     * Sets the final analysis of this method, unless another thread has been faster
+     */
+    synchronized MethodAnalysis publish(MethodAnalysis analysis) {
+        if (this.localAnalysis == null) {
+            this.localAnalysis = analysis;
         }
         return this.localAnalysis;
     }
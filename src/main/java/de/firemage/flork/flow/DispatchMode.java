@@ -0,0 +1,16 @@
+package de.firemage.flork.flow;
+
+/**
+ * How the possible targets of a virtual call are determined in a closed world
+ */
+public enum DispatchMode {
+    /**
+     * The method and all overriding methods in the model
+     */
+    CLASS_HIERARCHY,
+    /**
+     * Like {@link #CLASS_HIERARCHY}, but only methods of types that are instantiated by code reachable from the entry
+     * points (see {@link RapidTypeAnalysis})
+     */
+    RAPID_TYPE_ANALYSIS
+}
@@ -1,23 +1,33 @@
 package de.firemage.flork.flow;
 
 import de.firemage.flork.flow.analysis.HardcodedAnalysisSupplier;
+import de.firemage.flork.flow.callgraph.CallGraph;
+import de.firemage.flork.flow.engine.SymbolTable;
+import de.firemage.flork.flow.value.Nullness;
+import de.firemage.flork.flow.value.ObjectValueSet;
 import de.firemage.flork.flow.value.ValueSet;
+import de.firemage.flork.flow.value.ValueSetInterner;
 import spoon.reflect.CtModel;
 import spoon.reflect.code.CtExpression;
-import spoon.reflect.declaration.CtClass;
 import spoon.reflect.declaration.CtElement;
-import spoon.reflect.declaration.CtInterface;
 import spoon.reflect.declaration.CtType;
 import spoon.reflect.factory.Factory;
 import spoon.reflect.reference.CtExecutableReference;
 import spoon.reflect.reference.CtTypeReference;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.Deque;
 import java.util.EnumMap;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 public class FlowContext {
@@ -28,20 +38,47 @@ public class FlowContext {
     private final Factory factory;
     private final CtModel model;
     private final boolean closedWorld;
+    private final AnalysisOptions options;
+    private final ValueSetInterner valueSets = new ValueSetInterner();
+    private final SymbolTable symbols = new SymbolTable();
+    private final Map<String, TypeId> types = new ConcurrentHashMap<>();
+    private final AtomicInteger nextTypeId = new AtomicInteger();
+    private final Map<TypeId, Boolean> effectivelyFinalTypes = new ConcurrentHashMap<>();
+    private volatile List<CtExecutableReference<?>> entryPoints = List.of();
     private final EnumMap<StandardExceptions, TypeId> standardExceptions = new EnumMap<>(StandardExceptions.class);
 
-    private final Deque<AnalysisLocation> locationStack = new ArrayDeque<>();
+    // The null set is compared by identity, so there must be exactly one
+    private final Lazy<ObjectValueSet> nullSet = new Lazy<>(() ->
+            ObjectValueSet.forExactType(Nullness.NULL, this.getType(this.getFactory().Type().NULL_TYPE), this));
+    // The model usually does not contain the declaration of java.lang.Object, so don't search for it
+    private final Lazy<TypeId> objectType = new Lazy<>(() -> this.getType(this.getFactory().Type().OBJECT));
+    // Indexing the model is expensive, so these are built on first use
+    private final Lazy<TypeHierarchy> typeHierarchy = new Lazy<>(() -> new TypeHierarchy(this));
+    private final Lazy<RapidTypeAnalysis> rapidTypeAnalysis = new Lazy<>(() -> new RapidTypeAnalysis(this.entryPoints, this));
+    private final Lazy<CallGraph> callGraph = new Lazy<>(() -> new CallGraph(this));
+    private final SpecializationCache specializations = new SpecializationCache(this);
+    private final Queue<BudgetViolation> budgetViolations = new ConcurrentLinkedQueue<>();
+    private volatile SummaryStore summaryStore;
+
+    // Each thread analyzes its own methods
+    private final ThreadLocal<Deque<AnalysisLocation>> locationStack = ThreadLocal.withInitial(ArrayDeque::new);
+    private final ThreadLocal<AnalysisStack> analysisStack = ThreadLocal.withInitial(AnalysisStack::new);
 
     public FlowContext(Factory factory, boolean closedWorld) {
-        this.methods = new HashMap<>();
+        this(factory, closedWorld, AnalysisOptions.defaults());
+    }
+
+    public FlowContext(Factory factory, boolean closedWorld, AnalysisOptions options) {
+        this.methods = new ConcurrentHashMap<>();
         this.factory = factory;
         this.model = factory.getModel();
         this.closedWorld = closedWorld;
+        this.options = options;
 
         this.hardcodedMethods = new HardcodedAnalysisSupplier(this);
 
         for (var exception : StandardExceptions.values()) {
-            this.standardExceptions.put(exception, new TypeId(factory.Type().createReference(exception.getQualifiedName())));
+            this.standardExceptions.put(exception, this.getType(exception.getQualifiedName()));
         }
     }
 
@@ -50,19 +87,24 @@ public class FlowContext {
     }
 
     public AnalysisLocation getLocation() {
-        return this.locationStack.peek();
+        return this.locationStack.get().peek();
     }
 
     public void pushLocation() {
-        if (this.locationStack.isEmpty()) {
-            this.locationStack.push(new AnalysisLocation());
+        var stack = this.locationStack.get();
+        if (stack.isEmpty()) {
+            stack.push(new AnalysisLocation());
         } else {
-            this.locationStack.push(this.getLocation().next());
+            stack.push(stack.peek().next());
         }
     }
 
     public void popLocation() {
-        this.locationStack.pop();
+        this.locationStack.get().pop();
+    }
+
+    AnalysisStack getAnalysisStack() {
+        return this.analysisStack.get();
     }
 
     public void setCurrentElement(CtElement element) {
@@ -74,7 +116,9 @@ public class FlowContext {
     }
 
     public void logNoPrefix(String message) {
-        System.out.println(this.getLocation().formatEmptyPrefix() + message);
+        // May be called outside any analyzed method
+        var location = this.getLocation();
+        System.out.println((location == null ? "" : location.formatEmptyPrefix()) + message);
     }
 
     public CtModel getModel() {
@@ -82,16 +126,106 @@ public class FlowContext {
     }
 
     public TypeId getObject() {
-        return new TypeId(this.model.filterChildren(t -> t instanceof CtClass c && c.getQualifiedName().equals("java.lang.Object"))
-                .<CtClass>first().getReference());
+        return this.objectType.get();
     }
 
     public boolean isClosedWorld() {
         return closedWorld;
     }
 
+    public AnalysisOptions getOptions() {
+        return this.options;
+    }
+
+    public ValueSetInterner getValueSets() {
+        return this.valueSets;
+    }
+
+    public void recordBudgetViolation(BudgetViolation violation) {
+        this.budgetViolations.add(violation);
+    }
+
+    public List<BudgetViolation> getBudgetViolations() {
+        return List.copyOf(this.budgetViolations);
+    }
+
+    /**
+     * Loads & stores the summaries of analyzed methods in the given directory, see {@link SummaryStore}.
+     * Must be called before the analysis starts.
+     */
+    public void setSummaryStore(Path directory) {
+        this.summaryStore = new SummaryStore(directory, this);
+    }
+
+    /**
+     * @return the store, or null if summaries are not persisted
+     */
+    public SummaryStore getSummaryStore() {
+        return this.summaryStore;
+    }
+
+    public SpecializationCache getSpecializations() {
+        return this.specializations;
+    }
+
+    public TypeHierarchy getTypeHierarchy() {
+        return this.typeHierarchy.get();
+    }
+
+    /**
+     * Sets the executables from which the analyzed program starts, which restricts the types considered by
+     * {@link DispatchMode#RAPID_TYPE_ANALYSIS}. Without entry points, the whole model is considered reachable.
+     */
+    public void setEntryPoints(Collection<CtExecutableReference<?>> entryPoints) {
+        if (this.rapidTypeAnalysis.isInitialized()) {
+            throw new IllegalStateException("Entry points must be set before the analysis starts");
+        }
+        this.entryPoints = List.copyOf(entryPoints);
+    }
+
+    public RapidTypeAnalysis getRapidTypeAnalysis() {
+        return this.rapidTypeAnalysis.get();
+    }
+
+    /**
+     * Checks whether a virtual call may be dispatched to the method, i.e. whether its declaring type may be the
+     * runtime type of a receiver
+     */
+    public boolean isPossibleCallTarget(CachedMethod method) {
+        if (this.options.dispatchMode() != DispatchMode.RAPID_TYPE_ANALYSIS || !this.closedWorld) {
+            return true;
+        }
+        return method.getThisType().map(this.getRapidTypeAnalysis()::isPossiblyInstantiated).orElse(true);
+    }
+
+    /**
+     * Depends on the dispatch mode, so virtual calls only have edges to possible targets
+     */
+    public CallGraph getCallGraph() {
+        return this.callGraph.get();
+    }
+
+    public boolean isSubtype(TypeId subtype, TypeId supertype) {
+        return this.getTypeHierarchy().isSubtypeOf(subtype, supertype);
+    }
+
+    public SymbolTable getSymbols() {
+        return this.symbols;
+    }
+
     public CachedMethod getCachedMethod(CtExecutableReference<?> executable) {
-        return this.methods.computeIfAbsent(buildQualifiedExecutableName(executable), m -> new CachedMethod(executable, this));
+        // Not computeIfAbsent, since creating a CachedMethod may build the type hierarchy, which must not happen
+        // while holding a lock of the map
+        String name = buildQualifiedExecutableName(executable);
+        CachedMethod method = this.methods.get(name);
+        if (method == null) {
+            CachedMethod newMethod = new CachedMethod(executable, this);
+            method = this.methods.putIfAbsent(name, newMethod);
+            if (method == null) {
+                method = newMethod;
+            }
+        }
+        return method;
     }
 
     public HardcodedAnalysisSupplier getHardcodedMethods() {
@@ -99,15 +233,45 @@ public class FlowContext {
     }
 
     public TypeId getType(String name) {
-        return new TypeId(this.factory.Type().createReference(name));
+        var type = this.types.get(name);
+        return type != null ? type : this.getType(this.factory.Type().createReference(name));
+    }
+
+    /**
+     * Returns the interned TypeId of the reference; all references with the same qualified name share one TypeId
+     */
+    public TypeId getType(CtTypeReference<?> type) {
+        return this.types.computeIfAbsent(type.getQualifiedName(),
+                name -> new TypeId(this.nextTypeId.getAndIncrement(), type, name));
+    }
+
+    public Optional<TypeId> getTypeFallible(CtTypeReference<?> type) {
+        return type == null ? Optional.empty() : Optional.of(this.getType(type));
     }
 
     public Stream<TypeId> getAllTypes() {
-        return this.model.getAllTypes().stream().map(t -> new TypeId(t.getReference()));
+        return this.model.getAllTypes().stream().map(t -> this.getType(t.getReference()));
     }
 
+    public ObjectValueSet getNullSet() {
+        return this.nullSet.get();
+    }
+
+    /**
+     * Memoized, since this is queried for every value of a reference type.
+     * The model must not be changed after the first query.
+     */
     public boolean isEffectivelyFinalType(TypeId type) {
-        if (type.type() instanceof CtInterface<?>) {
+        Boolean result = this.effectivelyFinalTypes.get(type);
+        if (result == null) {
+            result = this.computeEffectivelyFinalType(type);
+            this.effectivelyFinalTypes.put(type, result);
+        }
+        return result;
+    }
+
+    private boolean computeEffectivelyFinalType(TypeId type) {
+        if (type.type().isInterface()) {
             return false;
         } else if (type.type().getDeclaration() == null) {
             // E.g. JDK classes
@@ -119,7 +283,7 @@ public class FlowContext {
             // In a closed world, we know all potential implementers
             // We don't need to consider lambdas here, since lambdas can only implement interfaces
             // and interfaces are caught by the first if
-            return this.getAllTypes().noneMatch(t -> t.isSubtypeOf(type) && !t.equals(type));
+            return this.getTypeHierarchy().getDirectSubtypes(type).isEmpty();
         }
         return false;
     }
@@ -0,0 +1,81 @@
+package de.firemage.flork.flow;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.BinaryOperator;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * Merges items until at most a given number remain, always merging the pair that loses the least precision.
+ * Used for engine states at control flow joins and for the exit states of summaries.
+ * <p>
+ * All mergeable pairs are kept in a priority queue; pairs that involve an item that has been merged since are
+ * skipped when they are polled. Ties are broken by the positions of the items, so the result is deterministic.
+ */
+public final class GreedyMerge {
+    private GreedyMerge() {
+    }
+
+    /**
+     * The merged item takes the position of the first item of the pair; the order of the remaining items is kept.
+     * Items that cannot be merged with any other item are kept, so the budget may still be exceeded.
+     *
+     * @param cost  the precision lost by merging two items, or -1 if they cannot be merged
+     * @param merge merges two items whose cost is not -1
+     */
+    public static <T> List<T> mergeToBudget(List<T> items, int maxItems, ToIntBiFunction<T, T> cost,
+                                            BinaryOperator<T> merge) {
+        if (items.size() <= maxItems) {
+            return items;
+        }
+
+        List<T> result = new ArrayList<>(items);
+        int[] versions = new int[result.size()];
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Comparator.comparingInt(Candidate::cost)
+                .thenComparingInt(Candidate::first)
+                .thenComparingInt(Candidate::second));
+        for (int i = 0; i < result.size(); i++) {
+            for (int j = i + 1; j < result.size(); j++) {
+                addCandidate(result, versions, i, j, cost, candidates);
+            }
+        }
+
+        int remaining = result.size();
+        while (remaining > maxItems && !candidates.isEmpty()) {
+            Candidate candidate = candidates.poll();
+            int i = candidate.first();
+            int j = candidate.second();
+            if (result.get(i) == null || result.get(j) == null
+                    || versions[i] != candidate.firstVersion() || versions[j] != candidate.secondVersion()) {
+                // Outdated
+                continue;
+            }
+
+            result.set(i, merge.apply(result.get(i), result.get(j)));
+            result.set(j, null);
+            versions[i]++;
+            remaining--;
+            for (int k = 0; k < result.size(); k++) {
+                if (k != i && result.get(k) != null) {
+                    addCandidate(result, versions, Math.min(i, k), Math.max(i, k), cost, candidates);
+                }
+            }
+        }
+
+        result.removeIf(item -> item == null);
+        return result;
+    }
+
+    private static <T> void addCandidate(List<T> items, int[] versions, int i, int j, ToIntBiFunction<T, T> cost,
+                                         PriorityQueue<Candidate> candidates) {
+        int pairCost = cost.applyAsInt(items.get(i), items.get(j));
+        if (pairCost >= 0) {
+            candidates.add(new Candidate(pairCost, i, versions[i], j, versions[j]));
+        }
+    }
+
+    private record Candidate(int cost, int first, int firstVersion, int second, int secondVersion) {
+    }
+}
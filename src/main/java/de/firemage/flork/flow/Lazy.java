@@ -0,0 +1,33 @@
+package de.firemage.flork.flow;
+
+import java.util.function.Supplier;
+
+/**
+ * A value that is computed on first use, exactly once even if multiple threads request it at the same time
+ */
+final class Lazy<T> {
+    private final Supplier<T> supplier;
+    private volatile T value;
+
+    Lazy(Supplier<T> supplier) {
+        this.supplier = supplier;
+    }
+
+    T get() {
+        T result = this.value;
+        if (result == null) {
+            synchronized (this) {
+                result = this.value;
+                if (result == null) {
+                    result = this.supplier.get();
+                    this.value = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    boolean isInitialized() {
+        return this.value != null;
+    }
+}
@@ -0,0 +1,394 @@
+package de.firemage.flork.flow;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.stream.Collectors;
+
+/**
+ * An immutable hash array mapped trie (HAMT).
+ * Every modification returns a new map that shares all untouched nodes with the old one, so copying a map is free
+ * and a modification only copies the path from the root to the modified entry.
+ * Keys must not be null.
+ * The hash code follows the contract of {@link Map#hashCode()} and is maintained incrementally, as is the hash
+ * of the key set ({@link #keyHash()}).
+ */
+public final class PersistentMap<K, V> implements Iterable<Map.Entry<K, V>> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final Object NOT_FOUND = new Object();
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(BitmapNode.EMPTY, 0, 0, 0);
+
+    private final Node root;
+    private final int size;
+    private final int hash;
+    private final int keyHash;
+
+    private PersistentMap(Node root, int size, int hash, int keyHash) {
+        this.root = root;
+        this.size = size;
+        this.hash = hash;
+        this.keyHash = keyHash;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        Object value = this.root.find(key.hashCode(), 0, key);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    public boolean containsKey(K key) {
+        return this.root.find(key.hashCode(), 0, key) != NOT_FOUND;
+    }
+
+    @SuppressWarnings("unchecked")
+    public PersistentMap<K, V> put(K key, V value) {
+        int keyHash = key.hashCode();
+        Object oldValue = this.root.find(keyHash, 0, key);
+        if (oldValue == NOT_FOUND) {
+            return new PersistentMap<>(this.root.put(keyHash, 0, key, value), this.size + 1,
+                    this.hash + entryHash(key, value), this.keyHash + keyHash);
+        } else if (oldValue == value) {
+            return this;
+        } else {
+            return new PersistentMap<>(this.root.put(keyHash, 0, key, value), this.size,
+                    this.hash - entryHash(key, (V) oldValue) + entryHash(key, value), this.keyHash);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public PersistentMap<K, V> remove(K key) {
+        int keyHash = key.hashCode();
+        Object oldValue = this.root.find(keyHash, 0, key);
+        if (oldValue == NOT_FOUND) {
+            return this;
+        }
+        Node newRoot = this.root.remove(keyHash, 0, key);
+        return new PersistentMap<>(newRoot == null ? BitmapNode.EMPTY : newRoot, this.size - 1,
+                this.hash - entryHash(key, (V) oldValue), this.keyHash - keyHash);
+    }
+
+    /**
+     * Removes all entries for which the predicate returns true
+     */
+    public PersistentMap<K, V> removeIf(BiPredicate<? super K, ? super V> predicate) {
+        PersistentMap<K, V> result = this;
+        for (var entry : this) {
+            if (predicate.test(entry.getKey(), entry.getValue())) {
+                result = result.remove(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the value of every entry with the result of the function.
+     * If the function returns null, the entry is removed.
+     */
+    public PersistentMap<K, V> replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        PersistentMap<K, V> result = this;
+        for (var entry : this) {
+            V newValue = function.apply(entry.getKey(), entry.getValue());
+            if (newValue == null) {
+                result = result.remove(entry.getKey());
+            } else if (newValue != entry.getValue()) {
+                result = result.put(entry.getKey(), newValue);
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        this.root.forEach((BiConsumer<Object, Object>) action);
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return this.entries().iterator();
+    }
+
+    public List<Map.Entry<K, V>> entries() {
+        List<Map.Entry<K, V>> result = new ArrayList<>(this.size);
+        this.forEach((k, v) -> result.add(new AbstractMap.SimpleImmutableEntry<>(k, v)));
+        return result;
+    }
+
+    public List<K> keys() {
+        List<K> result = new ArrayList<>(this.size);
+        this.forEach((k, v) -> result.add(k));
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PersistentMap<K, V> that = (PersistentMap<K, V>) o;
+        if (this.size != that.size || this.hash != that.hash) {
+            return false;
+        }
+        for (var entry : this) {
+            Object otherValue = that.root.find(entry.getKey().hashCode(), 0, entry.getKey());
+            if (!Objects.equals(entry.getValue(), otherValue)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    /**
+     * The sum of the hashes of all keys, i.e. the hash code of the key set
+     */
+    public int keyHash() {
+        return this.keyHash;
+    }
+
+    @Override
+    public String toString() {
+        return "{" + this.entries().stream()
+                .map(e -> e.getKey() + "=" + e.getValue())
+                .collect(Collectors.joining(", ")) + "}";
+    }
+
+    private static <K, V> int entryHash(K key, V value) {
+        return key.hashCode() ^ Objects.hashCode(value);
+    }
+
+    private static int bitFor(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static Node createNode(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+        int hash1 = key1.hashCode();
+        if (hash1 == hash2) {
+            return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+        }
+        return BitmapNode.EMPTY
+                .put(hash1, shift, key1, value1)
+                .put(hash2, shift, key2, value2);
+    }
+
+    private abstract static sealed class Node permits BitmapNode, CollisionNode {
+        abstract Object find(int hash, int shift, Object key);
+
+        abstract Node put(int hash, int shift, Object key, Object value);
+
+        /**
+         * @return the new node, or null if the node became empty
+         */
+        abstract Node remove(int hash, int shift, Object key);
+
+        abstract void forEach(BiConsumer<Object, Object> action);
+    }
+
+    /**
+     * Stores up to 32 children. A child is either a key-value pair, or (null, subnode).
+     */
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int hash, int shift, Object key) {
+            int bit = bitFor(hash, shift);
+            if ((this.bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            int index = this.index(bit);
+            Object storedKey = this.array[2 * index];
+            Object storedValue = this.array[2 * index + 1];
+            if (storedKey == null) {
+                return ((Node) storedValue).find(hash, shift + BITS, key);
+            } else if (storedKey.equals(key)) {
+                return storedValue;
+            } else {
+                return NOT_FOUND;
+            }
+        }
+
+        @Override
+        Node put(int hash, int shift, Object key, Object value) {
+            int bit = bitFor(hash, shift);
+            int index = this.index(bit);
+            if ((this.bitmap & bit) == 0) {
+                Object[] newArray = new Object[this.array.length + 2];
+                System.arraycopy(this.array, 0, newArray, 0, 2 * index);
+                newArray[2 * index] = key;
+                newArray[2 * index + 1] = value;
+                System.arraycopy(this.array, 2 * index, newArray, 2 * index + 2, this.array.length - 2 * index);
+                return new BitmapNode(this.bitmap | bit, newArray);
+            }
+
+            Object storedKey = this.array[2 * index];
+            Object storedValue = this.array[2 * index + 1];
+            if (storedKey == null) {
+                Node child = (Node) storedValue;
+                Node newChild = child.put(hash, shift + BITS, key, value);
+                return newChild == child ? this : this.withSlot(index, null, newChild);
+            } else if (storedKey.equals(key)) {
+                return storedValue == value ? this : this.withSlot(index, storedKey, value);
+            } else {
+                return this.withSlot(index, null, createNode(shift + BITS, storedKey, storedValue, hash, key, value));
+            }
+        }
+
+        @Override
+        Node remove(int hash, int shift, Object key) {
+            int bit = bitFor(hash, shift);
+            if ((this.bitmap & bit) == 0) {
+                return this;
+            }
+            int index = this.index(bit);
+            Object storedKey = this.array[2 * index];
+            if (storedKey == null) {
+                Node child = (Node) this.array[2 * index + 1];
+                Node newChild = child.remove(hash, shift + BITS, key);
+                if (newChild == child) {
+                    return this;
+                } else if (newChild != null) {
+                    return this.withSlot(index, null, newChild);
+                }
+            } else if (!storedKey.equals(key)) {
+                return this;
+            }
+
+            if (this.bitmap == bit) {
+                return null;
+            }
+            Object[] newArray = new Object[this.array.length - 2];
+            System.arraycopy(this.array, 0, newArray, 0, 2 * index);
+            System.arraycopy(this.array, 2 * index + 2, newArray, 2 * index, newArray.length - 2 * index);
+            return new BitmapNode(this.bitmap ^ bit, newArray);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < this.array.length; i += 2) {
+                if (this.array[i] == null) {
+                    ((Node) this.array[i + 1]).forEach(action);
+                } else {
+                    action.accept(this.array[i], this.array[i + 1]);
+                }
+            }
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(this.bitmap & (bit - 1));
+        }
+
+        private BitmapNode withSlot(int index, Object key, Object value) {
+            Object[] newArray = this.array.clone();
+            newArray[2 * index] = key;
+            newArray[2 * index + 1] = value;
+            return new BitmapNode(this.bitmap, newArray);
+        }
+    }
+
+    /**
+     * Stores keys with identical hashes as a flat list of key-value pairs
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        private final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int hash, int shift, Object key) {
+            if (hash != this.hash) {
+                return NOT_FOUND;
+            }
+            int index = this.indexOf(key);
+            return index < 0 ? NOT_FOUND : this.array[index + 1];
+        }
+
+        @Override
+        Node put(int hash, int shift, Object key, Object value) {
+            if (hash != this.hash) {
+                // Nest this node into a bitmap node, so that the new key can be stored next to it
+                return new BitmapNode(bitFor(this.hash, shift), new Object[]{null, this}).put(hash, shift, key, value);
+            }
+
+            int index = this.indexOf(key);
+            if (index >= 0) {
+                if (this.array[index + 1] == value) {
+                    return this;
+                }
+                Object[] newArray = this.array.clone();
+                newArray[index + 1] = value;
+                return new CollisionNode(this.hash, newArray);
+            }
+            Object[] newArray = Arrays.copyOf(this.array, this.array.length + 2);
+            newArray[this.array.length] = key;
+            newArray[this.array.length + 1] = value;
+            return new CollisionNode(this.hash, newArray);
+        }
+
+        @Override
+        Node remove(int hash, int shift, Object key) {
+            int index = this.indexOf(key);
+            if (index < 0) {
+                return this;
+            } else if (this.array.length == 2) {
+                return null;
+            }
+            Object[] newArray = new Object[this.array.length - 2];
+            System.arraycopy(this.array, 0, newArray, 0, index);
+            System.arraycopy(this.array, index + 2, newArray, index, newArray.length - index);
+            return new CollisionNode(this.hash, newArray);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < this.array.length; i += 2) {
+                action.accept(this.array[i], this.array[i + 1]);
+            }
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < this.array.length; i += 2) {
+                if (key.equals(this.array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package de.firemage.flork.flow;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * An immutable set backed by a {@link PersistentMap}.
+ * The {@link java.util.Set} view is read-only; use {@link #with(Object)} and {@link #withAll(Collection)} to
+ * derive modified sets.
+ */
+public final class PersistentSet<E> extends AbstractSet<E> {
+    private static final PersistentSet<?> EMPTY = new PersistentSet<>(PersistentMap.empty());
+
+    private final PersistentMap<E, Boolean> elements;
+
+    private PersistentSet(PersistentMap<E, Boolean> elements) {
+        this.elements = elements;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentSet<E> empty() {
+        return (PersistentSet<E>) EMPTY;
+    }
+
+    public PersistentSet<E> with(E element) {
+        var newElements = this.elements.put(element, Boolean.TRUE);
+        return newElements == this.elements ? this : new PersistentSet<>(newElements);
+    }
+
+    public PersistentSet<E> withAll(Collection<? extends E> elements) {
+        if (elements instanceof PersistentSet<? extends E> other && this.isEmpty()) {
+            @SuppressWarnings("unchecked")
+            var result = (PersistentSet<E>) other;
+            return result;
+        }
+
+        var newElements = this.elements;
+        for (E element : elements) {
+            newElements = newElements.put(element, Boolean.TRUE);
+        }
+        return newElements == this.elements ? this : new PersistentSet<>(newElements);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+        return o != null && this.elements.containsKey((E) o);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return this.elements.keys().iterator();
+    }
+
+    @Override
+    public int size() {
+        return this.elements.size();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof PersistentSet<?> other) {
+            return this.elements.equals(other.elements);
+        }
+        return super.equals(o);
+    }
+}
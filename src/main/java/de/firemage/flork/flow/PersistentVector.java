@@ -0,0 +1,192 @@
+package de.firemage.flork.flow;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * An immutable vector backed by a 32-ary trie with a separate tail array.
+ * Like {@link PersistentMap}, every modification returns a new vector that shares everything except the modified path
+ * with the old one. Appending is amortized O(1), get & set are O(log32(n)).
+ */
+public final class PersistentVector<E> implements Iterable<E> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final PersistentVector<?> EMPTY =
+            new PersistentVector<>(0, BITS, new Object[WIDTH], new Object[0]);
+
+    private final int size;
+    private final int shift;
+    private final Object[] root;
+    private final Object[] tail;
+
+    private PersistentVector(int size, int shift, Object[] root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, this.size);
+        return (E) this.leafFor(index)[index & MASK];
+    }
+
+    public PersistentVector<E> set(int index, E element) {
+        Objects.checkIndex(index, this.size);
+        if (index >= this.tailOffset()) {
+            Object[] newTail = this.tail.clone();
+            newTail[index & MASK] = element;
+            return new PersistentVector<>(this.size, this.shift, this.root, newTail);
+        }
+        return new PersistentVector<>(this.size, this.shift, setInTrie(this.shift, this.root, index, element), this.tail);
+    }
+
+    public PersistentVector<E> append(E element) {
+        if (this.size - this.tailOffset() < WIDTH) {
+            Object[] newTail = Arrays.copyOf(this.tail, this.tail.length + 1);
+            newTail[this.tail.length] = element;
+            return new PersistentVector<>(this.size + 1, this.shift, this.root, newTail);
+        }
+
+        // The tail is full, so move it into the trie
+        Object[] newRoot;
+        int newShift = this.shift;
+        if ((this.size >>> BITS) > (1 << this.shift)) {
+            // The trie is full, so add another level
+            newRoot = new Object[WIDTH];
+            newRoot[0] = this.root;
+            newRoot[1] = newPath(this.shift, this.tail);
+            newShift += BITS;
+        } else {
+            newRoot = this.pushTail(this.shift, this.root, this.tail);
+        }
+        return new PersistentVector<>(this.size + 1, newShift, newRoot, new Object[]{element});
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private int index = 0;
+            private Object[] leaf = null;
+
+            @Override
+            public boolean hasNext() {
+                return this.index < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (this.index >= size) {
+                    throw new NoSuchElementException();
+                }
+                if ((this.index & MASK) == 0 || this.leaf == null) {
+                    this.leaf = leafFor(this.index);
+                }
+                return (E) this.leaf[this.index++ & MASK];
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PersistentVector<?> that = (PersistentVector<?>) o;
+        if (this.size != that.size) {
+            return false;
+        }
+        var thisIterator = this.iterator();
+        var thatIterator = that.iterator();
+        while (thisIterator.hasNext()) {
+            if (!Objects.equals(thisIterator.next(), thatIterator.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (E element : this) {
+            result = 31 * result + Objects.hashCode(element);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + StreamSupport.stream(this.spliterator(), false)
+                .map(String::valueOf)
+                .collect(Collectors.joining(", ")) + "]";
+    }
+
+    private int tailOffset() {
+        return this.size < WIDTH ? 0 : ((this.size - 1) >>> BITS) << BITS;
+    }
+
+    private Object[] leafFor(int index) {
+        if (index >= this.tailOffset()) {
+            return this.tail;
+        }
+        Object[] node = this.root;
+        for (int level = this.shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    private Object[] pushTail(int level, Object[] parent, Object[] tailNode) {
+        int subIndex = ((this.size - 1) >>> level) & MASK;
+        Object[] result = parent.clone();
+        Object[] toInsert;
+        if (level == BITS) {
+            toInsert = tailNode;
+        } else {
+            Object[] child = (Object[]) parent[subIndex];
+            toInsert = child != null ? this.pushTail(level - BITS, child, tailNode) : newPath(level - BITS, tailNode);
+        }
+        result[subIndex] = toInsert;
+        return result;
+    }
+
+    private static Object[] newPath(int level, Object[] node) {
+        if (level == 0) {
+            return node;
+        }
+        Object[] result = new Object[WIDTH];
+        result[0] = newPath(level - BITS, node);
+        return result;
+    }
+
+    private static Object[] setInTrie(int level, Object[] node, int index, Object element) {
+        Object[] result = node.clone();
+        if (level == 0) {
+            result[index & MASK] = element;
+        } else {
+            int subIndex = (index >>> level) & MASK;
+            result[subIndex] = setInTrie(level - BITS, (Object[]) node[subIndex], index, element);
+        }
+        return result;
+    }
+}
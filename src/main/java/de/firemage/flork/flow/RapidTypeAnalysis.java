@@ -0,0 +1,203 @@
+package de.firemage.flork.flow;
+
+import spoon.reflect.code.CtAbstractInvocation;
+import spoon.reflect.code.CtConstructorCall;
+import spoon.reflect.code.CtExecutableReferenceExpression;
+import spoon.reflect.code.CtFieldAccess;
+import spoon.reflect.code.CtInvocation;
+import spoon.reflect.code.CtLambda;
+import spoon.reflect.code.CtSuperAccess;
+import spoon.reflect.declaration.CtAnonymousExecutable;
+import spoon.reflect.declaration.CtElement;
+import spoon.reflect.declaration.CtEnum;
+import spoon.reflect.declaration.CtExecutable;
+import spoon.reflect.declaration.CtField;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.declaration.CtTypeMember;
+import spoon.reflect.reference.CtExecutableReference;
+import spoon.reflect.reference.CtFieldReference;
+import spoon.reflect.reference.CtTypeReference;
+import spoon.reflect.visitor.filter.TypeFilter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rapid type analysis: collects the types that are instantiated by code reachable from the entry points.
+ * Reachability is computed together with the instantiated types, since a virtual call only reaches the overriding
+ * methods of types that are instantiated somewhere.
+ * If no entry points are given, every executable of the model is considered reachable.
+ */
+public class RapidTypeAnalysis {
+    private final FlowContext context;
+    private final Set<TypeId> instantiatedTypes = new HashSet<>();
+    private final Map<TypeId, Boolean> possiblyInstantiated = new ConcurrentHashMap<>();
+
+    private final Set<String> reachableExecutables = new HashSet<>();
+    private final Set<TypeId> initializedTypes = new HashSet<>();
+    private final Deque<CtElement> worklist = new ArrayDeque<>();
+    // Targets of virtual calls whose declaring type has not been instantiated (yet)
+    private final Map<String, CtExecutableReference<?>> pendingTargets = new HashMap<>();
+
+    public RapidTypeAnalysis(Collection<CtExecutableReference<?>> entryPoints, FlowContext context) {
+        this.context = context;
+
+        if (entryPoints.isEmpty()) {
+            for (CtExecutable<?> executable : context.getModel().getElements(new TypeFilter<>(CtExecutable.class))) {
+                this.markReachable(executable.getReference());
+            }
+        } else {
+            entryPoints.forEach(this::markReachable);
+        }
+
+        while (!this.worklist.isEmpty()) {
+            this.scan(this.worklist.pop());
+        }
+    }
+
+    public Set<TypeId> getInstantiatedTypes() {
+        return Set.copyOf(this.instantiatedTypes);
+    }
+
+    /**
+     * Checks whether the type or one of its subtypes is instantiated, i.e. whether a value of this type can exist
+     */
+    public boolean isPossiblyInstantiated(TypeId type) {
+        return this.possiblyInstantiated.computeIfAbsent(type,
+                t -> this.instantiatedTypes.stream().anyMatch(i -> this.context.isSubtype(i, t)));
+    }
+
+    private void scan(CtElement element) {
+        for (CtAbstractInvocation<?> invocation : element.getElements(new TypeFilter<>(CtAbstractInvocation.class))) {
+            var executable = invocation.getExecutable();
+            if (executable == null) {
+                continue;
+            }
+
+            if (invocation instanceof CtConstructorCall<?> constructorCall) {
+                this.instantiate(constructorCall.getType());
+                this.markReachable(executable);
+            } else if (executable.isStatic() || executable.isConstructor()
+                    || invocation instanceof CtInvocation<?> call && call.getTarget() instanceof CtSuperAccess<?>) {
+                this.markReachable(executable);
+            } else {
+                this.addVirtualTargets(executable);
+            }
+        }
+
+        for (CtExecutableReferenceExpression<?, ?> reference : element.getElements(new TypeFilter<>(CtExecutableReferenceExpression.class))) {
+            // The method reference itself is an instance of the functional interface
+            this.instantiate(reference.getType());
+            if (reference.getExecutable().isConstructor()) {
+                this.instantiate(reference.getExecutable().getDeclaringType());
+                this.markReachable(reference.getExecutable());
+            } else {
+                this.addVirtualTargets(reference.getExecutable());
+            }
+        }
+
+        for (CtLambda<?> lambda : element.getElements(new TypeFilter<>(CtLambda.class))) {
+            this.instantiate(lambda.getType());
+        }
+
+        // Accessing a static field initializes its declaring type
+        for (CtFieldAccess<?> access : element.getElements(new TypeFilter<>(CtFieldAccess.class))) {
+            CtFieldReference<?> field = access.getVariable();
+            if (field != null && field.isStatic() && field.getDeclaringType() != null) {
+                this.initialize(this.context.getType(field.getDeclaringType()));
+            }
+        }
+    }
+
+    private void addVirtualTargets(CtExecutableReference<?> method) {
+        List<CtExecutableReference<?>> targets = new ArrayList<>(this.context.getTypeHierarchy().getOverridingMethods(method));
+        targets.add(method);
+        for (CtExecutableReference<?> target : targets) {
+            if (target.getDeclaringType() == null) {
+                this.markReachable(target);
+                continue;
+            }
+
+            String name = FlowContext.buildQualifiedExecutableName(target);
+            if (!this.reachableExecutables.contains(name)) {
+                if (this.instantiatedTypes.stream().anyMatch(i -> this.declaresOrInherits(i, target))) {
+                    this.markReachable(target);
+                } else {
+                    this.pendingTargets.put(name, target);
+                }
+            }
+        }
+    }
+
+    private void instantiate(CtTypeReference<?> reference) {
+        if (reference == null) {
+            return;
+        }
+        TypeId type = this.context.getType(reference);
+        if (!this.instantiatedTypes.add(type)) {
+            return;
+        }
+
+        List<CtExecutableReference<?>> newTargets = this.pendingTargets.values().stream()
+                .filter(target -> this.declaresOrInherits(type, target))
+                .toList();
+        newTargets.forEach(target -> this.pendingTargets.remove(FlowContext.buildQualifiedExecutableName(target)));
+        newTargets.forEach(this::markReachable);
+        this.initialize(type);
+    }
+
+    private boolean declaresOrInherits(TypeId type, CtExecutableReference<?> method) {
+        return this.context.isSubtype(type, this.context.getType(method.getDeclaringType()));
+    }
+
+    private void markReachable(CtExecutableReference<?> executable) {
+        if (!this.reachableExecutables.add(FlowContext.buildQualifiedExecutableName(executable))) {
+            return;
+        }
+
+        if (executable.getDeclaringType() != null) {
+            this.initialize(this.context.getType(executable.getDeclaringType()));
+        }
+        CtExecutable<?> declaration = executable.getExecutableDeclaration();
+        if (declaration != null) {
+            this.worklist.push(declaration);
+        }
+    }
+
+    /**
+     * Field initializers and initializer blocks run as soon as a type is used, so they are reachable as well.
+     * Initializing a class also initializes its superclass.
+     */
+    private void initialize(TypeId type) {
+        if (!this.initializedTypes.add(type)) {
+            return;
+        }
+
+        CtType<?> declaration = type.type().getDeclaration();
+        if (declaration == null) {
+            return;
+        }
+        if (declaration.getSuperclass() != null) {
+            this.initialize(this.context.getType(declaration.getSuperclass()));
+        }
+        if (declaration instanceof CtEnum<?>) {
+            // Enum constants are instantiated implicitly
+            this.instantiate(declaration.getReference());
+        }
+        for (CtTypeMember member : declaration.getTypeMembers()) {
+            if (member instanceof CtField<?> field && field.getDefaultExpression() != null) {
+                this.worklist.push(field.getDefaultExpression());
+            } else if (member instanceof CtAnonymousExecutable initializer) {
+                this.worklist.push(initializer);
+            }
+        }
+    }
+}
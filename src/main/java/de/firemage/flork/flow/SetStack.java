@@ -1,64 +1,118 @@
 package de.firemage.flork.flow;
 
-import java.util.ArrayDeque;
 import java.util.Collection;
-import java.util.Deque;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.function.Consumer;
-import java.util.function.Function;
 
+/**
+ * A stack of sets. Both the stack and the sets are persistent, so copying a SetStack is O(1).
+ */
 public class SetStack<E> implements Iterable<Set<E>> {
-    private final Deque<Set<E>> stack;
+    private Frame<E> top;
+    private int size;
 
-    public SetStack(int initialCapacity) {
-        this.stack = new ArrayDeque<>(initialCapacity);
+    public SetStack() {
+        this.top = null;
+        this.size = 0;
     }
 
     public SetStack(SetStack<E> other) {
-        this.stack = new ArrayDeque<>(other.stack);
-        for (var set : other.stack) {
-            this.stack.add(new HashSet<>(set));
-        }
+        this.top = other.top;
+        this.size = other.size;
     }
 
     public void pushEmpty() {
-        this.stack.push(new HashSet<>());
+        this.top = new Frame<>(PersistentSet.empty(), this.top);
+        this.size++;
     }
 
     public Set<E> pop() {
-        return this.stack.pop();
+        if (this.top == null) {
+            throw new NoSuchElementException();
+        }
+        var result = this.top.elements();
+        this.top = this.top.next();
+        this.size--;
+        return result;
     }
 
     public Set<E> peek() {
-        return this.stack.peek();
+        return this.top == null ? null : this.top.elements();
     }
 
     public void addToLast(E element) {
-        this.stack.peek().add(element);
+        this.top = new Frame<>(this.top.elements().with(element), this.top.next());
     }
 
     public void addAllToLast(Collection<E> element) {
-        this.stack.peek().addAll(element);
-        var x = true;
-        Consumer<Integer> p = (y) -> {
-            if (x) {
-                System.out.println(y);
-            }
-        };
+        this.top = new Frame<>(this.top.elements().withAll(element), this.top.next());
     }
 
     public int size() {
-        return this.stack.size();
+        return this.size;
     }
 
     public boolean lastContains(E element) {
-        return this.stack.peek().contains(element);
+        return this.top.elements().contains(element);
+    }
+
+    /**
+     * Adds the elements of each set of the other stack to the respective set of this stack.
+     * Both stacks must have the same depth.
+     */
+    public void addAll(SetStack<E> other) {
+        if (this.size != other.size) {
+            throw new IllegalArgumentException("Cannot merge set stacks of different depth");
+        }
+        this.top = union(this.top, other.top);
+    }
+
+    /**
+     * Checks whether both stacks have the same depth, and each set of this stack contains the respective set of the
+     * other stack
+     */
+    public boolean covers(SetStack<E> other) {
+        if (this.size != other.size) {
+            return false;
+        }
+        for (Frame<E> a = this.top, b = other.top; a != b; a = a.next(), b = b.next()) {
+            if (a.elements() != b.elements() && !a.elements().containsAll(b.elements())) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public Iterator<Set<E>> iterator() {
-        return this.stack.iterator();
+        return new Iterator<>() {
+            private Frame<E> current = top;
+
+            @Override
+            public boolean hasNext() {
+                return this.current != null;
+            }
+
+            @Override
+            public Set<E> next() {
+                if (this.current == null) {
+                    throw new NoSuchElementException();
+                }
+                var result = this.current.elements();
+                this.current = this.current.next();
+                return result;
+            }
+        };
+    }
+
+    private static <E> Frame<E> union(Frame<E> a, Frame<E> b) {
+        if (a == b) {
+            return a;
+        }
+        return new Frame<>(a.elements().withAll(b.elements()), union(a.next(), b.next()));
+    }
+
+    private record Frame<E>(PersistentSet<E> elements, Frame<E> next) {
     }
 }
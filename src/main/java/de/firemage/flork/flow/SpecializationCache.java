@@ -0,0 +1,77 @@
+package de.firemage.flork.flow;
+
+import de.firemage.flork.flow.analysis.MethodAnalysis;
+import de.firemage.flork.flow.value.ValueSet;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summaries of methods that have been analyzed for specific argument values (see
+ * {@link AnalysisOptions#specializationDepth()}), keyed by the method and its interned argument values.
+ * Only the most recently used specializations are kept. All methods are thread-safe.
+ */
+public class SpecializationCache {
+    private static final int CAPACITY = 1024;
+
+    private final FlowContext context;
+    private final Map<Key, MethodAnalysis> cache = Collections.synchronizedMap(new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, MethodAnalysis> eldest) {
+            return this.size() > CAPACITY;
+        }
+    });
+
+    public SpecializationCache(FlowContext context) {
+        this.context = context;
+    }
+
+    /**
+     * @return the cached specialization, or null if there is none
+     */
+    public MethodAnalysis get(CachedMethod method, List<ValueSet> arguments) {
+        return this.cache.get(this.key(method, arguments));
+    }
+
+    public void put(CachedMethod method, List<ValueSet> arguments, MethodAnalysis analysis) {
+        this.cache.put(this.key(method, arguments), analysis);
+    }
+
+    public int size() {
+        return this.cache.size();
+    }
+
+    private Key key(CachedMethod method, List<ValueSet> arguments) {
+        return new Key(method, arguments.stream().map(this.context.getValueSets()::intern).toList());
+    }
+
+    /**
+     * Arguments are interned, so they can be compared by identity
+     */
+    private record Key(CachedMethod method, List<ValueSet> arguments) {
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key other) || !this.method.equals(other.method)
+                    || this.arguments.size() != other.arguments.size()) {
+                return false;
+            }
+            for (int i = 0; i < this.arguments.size(); i++) {
+                if (this.arguments.get(i) != other.arguments.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = this.method.hashCode();
+            for (ValueSet argument : this.arguments) {
+                hash = 31 * hash + System.identityHashCode(argument);
+            }
+            return hash;
+        }
+    }
+}
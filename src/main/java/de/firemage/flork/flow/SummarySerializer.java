@@ -0,0 +1,323 @@
+package de.firemage.flork.flow;
+
+import de.firemage.flork.flow.analysis.FixedMethodAnalysis;
+import de.firemage.flork.flow.analysis.MethodAnalysis;
+import de.firemage.flork.flow.exit.MethodExitState;
+import de.firemage.flork.flow.value.BooleanValueSet;
+import de.firemage.flork.flow.value.BoxedIntValueSet;
+import de.firemage.flork.flow.value.DoubleValueSet;
+import de.firemage.flork.flow.value.IntValueSet;
+import de.firemage.flork.flow.value.LongValueSet;
+import de.firemage.flork.flow.value.Nullness;
+import de.firemage.flork.flow.value.ObjectValueSet;
+import de.firemage.flork.flow.value.ValueSet;
+import de.firemage.flork.flow.value.VoidValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Converts the exit states of method summaries to a compact binary format and back.
+ * <p>
+ * Types are stored by name in a table at the start, and referenced by their index in the table.
+ * Ints & lengths are variable-length encoded, since they are small most of the time.
+ * The encoding is deterministic, so equal summaries are always encoded to the same bytes.
+ */
+public class SummarySerializer {
+    private static final int MAGIC = 0x464C524B; // "FLRK"
+    static final int FORMAT_VERSION = 1;
+
+    private static final int VOID = 0;
+    private static final int BOOLEAN = 1;
+    private static final int INT = 2;
+    private static final int LONG = 3;
+    private static final int DOUBLE = 4;
+    private static final int OBJECT = 5;
+    private static final int BOXED_INT = 6;
+
+    private static final int RETURN = 0;
+    private static final int THROW = 1;
+
+    private final FlowContext context;
+
+    public SummarySerializer(FlowContext context) {
+        this.context = context;
+    }
+
+    public byte[] serialize(MethodAnalysis analysis) {
+        // The type table must be written before the exit states, so the exit states are encoded first
+        Map<TypeId, Integer> types = new HashMap<>();
+        List<TypeId> typeTable = new ArrayList<>();
+        var body = new ByteArrayOutputStream();
+        try {
+            var out = new DataOutputStream(body);
+            writeVarInt(analysis.getReturnStates().size(), out);
+            for (MethodExitState exitState : analysis.getReturnStates()) {
+                writeExitState(exitState, types, typeTable, out);
+            }
+
+            var result = new ByteArrayOutputStream();
+            out = new DataOutputStream(result);
+            out.writeInt(MAGIC);
+            writeVarInt(FORMAT_VERSION, out);
+            writeVarInt(typeTable.size(), out);
+            for (TypeId type : typeTable) {
+                out.writeUTF(type.getName());
+            }
+            body.writeTo(out);
+            return result.toByteArray();
+        } catch (IOException e) {
+            // Byte array streams do not throw
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @throws IOException if the data is truncated, corrupted or was written by another format version
+     */
+    public MethodAnalysis deserialize(CachedMethod method, byte[] data) throws IOException {
+        var in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != MAGIC || readVarInt(in) != FORMAT_VERSION) {
+            throw new IOException("Not a summary of format version " + FORMAT_VERSION);
+        }
+
+        List<TypeId> typeTable = new ArrayList<>();
+        int typeCount = readVarInt(in);
+        for (int i = 0; i < typeCount; i++) {
+            typeTable.add(this.resolveType(in.readUTF()));
+        }
+
+        int exitStateCount = readVarInt(in);
+        List<MethodExitState> exitStates = new ArrayList<>(exitStateCount);
+        for (int i = 0; i < exitStateCount; i++) {
+            exitStates.add(this.readExitState(typeTable, in));
+        }
+        if (in.available() > 0) {
+            throw new IOException("Trailing data after the exit states");
+        }
+        return new FixedMethodAnalysis(method, exitStates);
+    }
+
+    private static void writeExitState(MethodExitState exitState, Map<TypeId, Integer> types, List<TypeId> typeTable,
+                                       DataOutputStream out) throws IOException {
+        if (exitState.getReturnValue() != null) {
+            out.writeByte(RETURN);
+            writeValue(exitState.getReturnValue(), types, typeTable, out);
+        } else {
+            out.writeByte(THROW);
+            writeType(exitState.getThrownException(), types, typeTable, out);
+        }
+
+        writeVarInt(exitState.getParameterPrecondition().size(), out);
+        for (ValueSet precondition : exitState.getParameterPrecondition()) {
+            writeValue(precondition, types, typeTable, out);
+        }
+    }
+
+    private MethodExitState readExitState(List<TypeId> typeTable, DataInputStream in) throws IOException {
+        int kind = in.readByte();
+        ValueSet returnValue = null;
+        TypeId thrownException = null;
+        switch (kind) {
+            case RETURN -> returnValue = this.readValue(typeTable, in);
+            case THROW -> thrownException = readType(typeTable, in);
+            default -> throw new IOException("Unknown exit kind " + kind);
+        }
+
+        int parameterCount = readVarInt(in);
+        List<ValueSet> preconditions = new ArrayList<>(parameterCount);
+        for (int i = 0; i < parameterCount; i++) {
+            preconditions.add(this.readValue(typeTable, in));
+        }
+
+        if (returnValue != null) {
+            return MethodExitState.forReturn(returnValue, preconditions);
+        } else {
+            return MethodExitState.forThrow(thrownException, preconditions);
+        }
+    }
+
+    private static void writeValue(ValueSet value, Map<TypeId, Integer> types, List<TypeId> typeTable,
+                                   DataOutputStream out) throws IOException {
+        switch (value) {
+            case VoidValue v -> out.writeByte(VOID);
+            case BooleanValueSet set -> {
+                out.writeByte(BOOLEAN);
+                out.writeByte(set.getState().ordinal());
+            }
+            case IntValueSet set -> {
+                out.writeByte(INT);
+                writeInts(set, out);
+            }
+            case LongValueSet set -> {
+                out.writeByte(LONG);
+                writeVarLong(set.min(), out);
+                writeVarLong(set.max(), out);
+            }
+            case DoubleValueSet set -> {
+                out.writeByte(DOUBLE);
+                out.writeDouble(set.min());
+                out.writeDouble(set.max());
+                out.writeBoolean(set.mayBeNaN());
+            }
+            case BoxedIntValueSet set -> {
+                out.writeByte(BOXED_INT);
+                out.writeByte(set.getNullness().ordinal());
+                writeInts(set.value(), out);
+            }
+            case ObjectValueSet set -> {
+                out.writeByte(OBJECT);
+                out.writeByte(set.getNullness().ordinal());
+                if (set.getSupertype() == null) {
+                    // Bottom
+                    out.writeBoolean(false);
+                } else {
+                    out.writeBoolean(true);
+                    writeType(set.getSupertype(), types, typeTable, out);
+                }
+                // Sorted by name, since the order of the set depends on the (per-context) type ids
+                List<TypeId> lowerLimitingTypes = set.getLowerLimitingTypes().stream()
+                        .sorted(Comparator.comparing(TypeId::getName))
+                        .toList();
+                writeVarInt(lowerLimitingTypes.size(), out);
+                for (TypeId type : lowerLimitingTypes) {
+                    writeType(type, types, typeTable, out);
+                }
+            }
+        }
+    }
+
+    private ValueSet readValue(List<TypeId> typeTable, DataInputStream in) throws IOException {
+        int tag = in.readByte();
+        return switch (tag) {
+            case VOID -> VoidValue.getInstance();
+            case BOOLEAN -> BooleanValueSet.of(readEnum(BooleanValueSet.State.values(), in));
+            case INT -> readInts(in);
+            case LONG -> {
+                long min = readVarLong(in);
+                long max = readVarLong(in);
+                yield min > max ? LongValueSet.BOTTOM : LongValueSet.ofRange(min, max);
+            }
+            case DOUBLE -> {
+                double min = in.readDouble();
+                double max = in.readDouble();
+                yield in.readBoolean() ? DoubleValueSet.ofRangeWithNaN(min, max) : DoubleValueSet.ofRange(min, max);
+            }
+            case BOXED_INT -> new BoxedIntValueSet(readEnum(Nullness.values(), in), readInts(in), this.context);
+            case OBJECT -> {
+                Nullness nullness = readEnum(Nullness.values(), in);
+                TypeId supertype = in.readBoolean() ? readType(typeTable, in) : null;
+                int lowerLimitingTypeCount = readVarInt(in);
+                Set<TypeId> lowerLimitingTypes = new HashSet<>();
+                for (int i = 0; i < lowerLimitingTypeCount; i++) {
+                    lowerLimitingTypes.add(readType(typeTable, in));
+                }
+                var set = new ObjectValueSet(nullness, supertype, Set.copyOf(lowerLimitingTypes), this.context);
+                // The null set is compared by identity
+                yield set.equals(this.context.getNullSet()) ? this.context.getNullSet() : set;
+            }
+            default -> throw new IOException("Unknown value tag " + tag);
+        };
+    }
+
+    private static void writeInts(IntValueSet set, DataOutputStream out) throws IOException {
+        writeVarInt(set.getIntervals().size(), out);
+        for (IntValueSet.IntInterval interval : set.getIntervals()) {
+            writeVarLong(interval.min(), out);
+            writeVarLong(interval.max(), out);
+        }
+    }
+
+    private static IntValueSet readInts(DataInputStream in) throws IOException {
+        int intervalCount = readVarInt(in);
+        List<IntValueSet.IntInterval> intervals = new ArrayList<>(intervalCount);
+        for (int i = 0; i < intervalCount; i++) {
+            intervals.add(new IntValueSet.IntInterval(readVarLong(in), readVarLong(in)));
+        }
+        return IntValueSet.ofIntIntervals(intervals);
+    }
+
+    private static void writeType(TypeId type, Map<TypeId, Integer> types, List<TypeId> typeTable,
+                                  DataOutputStream out) throws IOException {
+        Integer index = types.get(type);
+        if (index == null) {
+            index = typeTable.size();
+            types.put(type, index);
+            typeTable.add(type);
+        }
+        writeVarInt(index, out);
+    }
+
+    private static TypeId readType(List<TypeId> typeTable, DataInputStream in) throws IOException {
+        int index = readVarInt(in);
+        if (index >= typeTable.size()) {
+            throw new IOException("Type index " + index + " is out of bounds");
+        }
+        return typeTable.get(index);
+    }
+
+    private TypeId resolveType(String name) {
+        // The null type cannot be created from its name
+        return name.equals(this.context.getNullSet().getSupertype().getName())
+                ? this.context.getNullSet().getSupertype()
+                : this.context.getType(name);
+    }
+
+    private static <T extends Enum<T>> T readEnum(T[] values, DataInputStream in) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new IOException("Invalid ordinal " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    private static void writeVarInt(int value, DataOutputStream out) throws IOException {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative length " + value);
+        }
+        writeVarLong(value, out);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Invalid length " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Zigzag & LEB128, so that values close to zero (positive or negative) take few bytes
+     */
+    private static void writeVarLong(long value, DataOutputStream out) throws IOException {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.writeByte((int) zigzag);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Malformed variable-length number");
+    }
+}
@@ -0,0 +1,232 @@
+package de.firemage.flork.flow;
+
+import de.firemage.flork.flow.analysis.MethodAnalysis;
+import de.firemage.flork.flow.callgraph.CallGraph;
+import spoon.reflect.declaration.CtField;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.reference.CtExecutableReference;
+import spoon.reflect.reference.CtTypeReference;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Persists method summaries in a directory, so that later runs on mostly unchanged code load them instead of
+ * analyzing the methods again. All methods are thread-safe.
+ * <p>
+ * Each summary is stored under a hash of everything it depends on: the source of the method and of the other members
+ * of its strongly connected component in the call graph, the summaries of all callees outside the component,
+ * the analysis options, and the type hierarchy of the model. Outdated files are therefore never read again.
+ * Only methods with a body in the model are stored.
+ */
+public class SummaryStore {
+    private static final String EXTENSION = ".summary";
+
+    private final Path directory;
+    private final FlowContext context;
+    private final SummarySerializer serializer;
+    private final Lazy<ComponentIndex> components;
+    private final Lazy<byte[]> modelHash;
+    private final Map<CachedMethod, String> keys = new ConcurrentHashMap<>();
+    private final Map<CachedMethod, byte[]> summaryHashes = new ConcurrentHashMap<>();
+
+    public SummaryStore(Path directory, FlowContext context) {
+        this.directory = directory;
+        this.context = context;
+        this.serializer = new SummarySerializer(context);
+        this.components = new Lazy<>(() -> ComponentIndex.of(context.getCallGraph()));
+        this.modelHash = new Lazy<>(this::hashModel);
+    }
+
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * May analyze callees of the method, since their summaries are part of the key
+     *
+     * @return the stored summary, or null if there is none for the current code & options
+     */
+    public MethodAnalysis load(CachedMethod method) {
+        String key = this.getKey(method);
+        if (key == null) {
+            return null;
+        }
+
+        Path file = this.directory.resolve(key + EXTENSION);
+        try {
+            byte[] data = Files.readAllBytes(file);
+            MethodAnalysis analysis = this.serializer.deserialize(method, data);
+            this.summaryHashes.putIfAbsent(method, sha256().digest(data));
+            return analysis;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            this.context.logNoPrefix("=== Ignoring unreadable summary " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Only final summaries may be stored; I/O errors are logged and otherwise ignored
+     */
+    public void save(CachedMethod method, MethodAnalysis analysis) {
+        String key = this.getKey(method);
+        if (key == null) {
+            return;
+        }
+
+        byte[] data = this.serializer.serialize(analysis);
+        this.summaryHashes.putIfAbsent(method, sha256().digest(data));
+        Path temp = null;
+        try {
+            Files.createDirectories(this.directory);
+            // Written to a temporary file first, so that concurrent readers never see a partial summary
+            temp = Files.createTempFile(this.directory, key, ".tmp");
+            Files.write(temp, data);
+            Files.move(temp, this.directory.resolve(key + EXTENSION),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            this.context.logNoPrefix("=== Could not store the summary of " + method.getName() + ": " + e.getMessage());
+            deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * @return the key of the method's summary, or null if the method is not part of the call graph
+     */
+    String getKey(CachedMethod method) {
+        String key = this.keys.get(method);
+        if (key != null) {
+            return key;
+        }
+
+        CallGraph callGraph = this.context.getCallGraph();
+        int node = callGraph.getNode(method.getExecutable());
+        if (node < 0) {
+            return null;
+        }
+
+        // Not computeIfAbsent, since hashing the callees' summaries may analyze them, which recursively needs keys
+        MessageDigest digest = sha256();
+        update(digest, String.valueOf(SummarySerializer.FORMAT_VERSION));
+        update(digest, this.context.getOptions().toString());
+        update(digest, String.valueOf(this.context.isClosedWorld()));
+        digest.update(this.modelHash.get());
+
+        ComponentIndex index = this.components.get();
+        int component = index.componentOf()[node];
+        for (CtExecutableReference<?> member : index.components().get(component).executables()) {
+            update(digest, FlowContext.buildQualifiedExecutableName(member));
+            update(digest, member.getExecutableDeclaration().toString());
+        }
+        // Callees within the component are covered by their source
+        for (CtExecutableReference<?> member : index.components().get(component).executables()) {
+            for (int callee : callGraph.getCallees(callGraph.getNode(member))) {
+                if (index.componentOf()[callee] != component) {
+                    CachedMethod calleeMethod = this.context.getCachedMethod(callGraph.getExecutable(callee));
+                    update(digest, calleeMethod.getName());
+                    digest.update(this.getSummaryHash(calleeMethod));
+                }
+            }
+        }
+        update(digest, method.getName());
+
+        key = HexFormat.of().formatHex(digest.digest());
+        String existing = this.keys.putIfAbsent(method, key);
+        return existing != null ? existing : key;
+    }
+
+    private byte[] getSummaryHash(CachedMethod method) {
+        byte[] hash = this.summaryHashes.get(method);
+        if (hash == null) {
+            hash = sha256().digest(this.serializer.serialize(method.getFixedCallAnalysis()));
+            byte[] existing = this.summaryHashes.putIfAbsent(method, hash);
+            if (existing != null) {
+                hash = existing;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Covers everything of the types that summaries may depend on besides the code of the called methods,
+     * e.g. whether a type is effectively final in a closed world
+     */
+    private byte[] hashModel() {
+        MessageDigest digest = sha256();
+        List<CtType<?>> types = this.context.getModel().getAllTypes().stream()
+                .sorted(Comparator.comparing(CtType::getQualifiedName))
+                .toList();
+        for (CtType<?> type : types) {
+            update(digest, type.getQualifiedName());
+            update(digest, type.getModifiers().toString());
+            update(digest, type.getSuperclass() == null ? "" : type.getSuperclass().getQualifiedName());
+            update(digest, type.getSuperInterfaces().stream()
+                    .map(CtTypeReference::getQualifiedName)
+                    .sorted()
+                    .collect(Collectors.joining(",")));
+            for (CtField<?> field : type.getFields()) {
+                update(digest, field.getType().getQualifiedName() + " " + field.getSimpleName());
+            }
+        }
+        return digest.digest();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        // Length-prefixed, so that different splits of the same characters hash differently
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform must support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // Only a leftover temporary file
+        }
+    }
+
+    private record ComponentIndex(List<CallGraph.Component> components, int[] componentOf) {
+        private static ComponentIndex of(CallGraph callGraph) {
+            List<CallGraph.Component> components = callGraph.getComponentsBottomUp();
+            int[] componentOf = new int[callGraph.size()];
+            Arrays.fill(componentOf, -1);
+            for (int i = 0; i < components.size(); i++) {
+                for (CtExecutableReference<?> executable : components.get(i).executables()) {
+                    componentOf[callGraph.getNode(executable)] = i;
+                }
+            }
+            return new ComponentIndex(components, componentOf);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package de.firemage.flork.flow;
+
+import spoon.reflect.CtModel;
+import spoon.reflect.declaration.CtExecutable;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.declaration.CtTypeParameter;
+import spoon.reflect.reference.CtArrayTypeReference;
+import spoon.reflect.reference.CtExecutableReference;
+import spoon.reflect.reference.CtTypeParameterReference;
+import spoon.reflect.reference.CtTypeReference;
+import spoon.reflect.visitor.filter.TypeFilter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of the types and executables of the model, built once per {@link FlowContext}.
+ * Answers subtype and overrider queries with lookups instead of scanning the whole model.
+ * <p>
+ * For subtype tests, every class / interface gets a dense id and a bitset of the ids of all its (transitive) supertypes,
+ * so that a subtype test is a single bit test once both types have been seen.
+ * Types that cannot be encoded this way (primitives, arrays, type parameters, the null type) fall back to Spoon,
+ * whose answers are memoized.
+ * <p>
+ * For lowest common supertypes, every type stores its depth in the superclass tree and its 2^k-th superclasses
+ * (binary lifting), so that a query only walks O(log depth) steps.
+ */
+public class TypeHierarchy {
+    private final FlowContext context;
+    private final Map<TypeId, Set<TypeId>> directSubtypes = new HashMap<>();
+    // Executables grouped by simple name and parameter count, since overriding methods must match both
+    private final Map<String, List<CtExecutableReference<?>>> executablesBySignature = new HashMap<>();
+
+    private final Map<TypeId, Set<TypeId>> transitiveSubtypes = new ConcurrentHashMap<>();
+    private final Map<String, List<CtExecutableReference<?>>> overridingMethods = new ConcurrentHashMap<>();
+
+    private final Map<TypeId, Integer> typeIds = new ConcurrentHashMap<>();
+    private final Map<TypeId, BitSet> supertypes = new ConcurrentHashMap<>();
+    private final Map<List<TypeId>, Boolean> fallbackSubtypeTests = new ConcurrentHashMap<>();
+
+    private final Map<TypeId, Ancestry> ancestries = new ConcurrentHashMap<>();
+    private final Map<Long, TypeId> lowestCommonSupertypes = new ConcurrentHashMap<>();
+
+    public TypeHierarchy(FlowContext context) {
+        this.context = context;
+        CtModel model = context.getModel();
+        for (CtType<?> type : model.getElements(new TypeFilter<>(CtType.class))) {
+            if (type instanceof CtTypeParameter) {
+                // A bound is not extended by its type parameter, the type arguments are subtypes anyway
+                continue;
+            }
+            TypeId id = context.getType(type.getReference());
+            if (type.getSuperclass() != null) {
+                this.addDirectSubtype(type.getSuperclass(), id);
+            }
+            for (CtTypeReference<?> superInterface : type.getSuperInterfaces()) {
+                this.addDirectSubtype(superInterface, id);
+            }
+        }
+
+        for (CtExecutable<?> executable : model.getElements(new TypeFilter<>(CtExecutable.class))) {
+            var reference = executable.getReference();
+            this.executablesBySignature.computeIfAbsent(signatureKey(reference), k -> new ArrayList<>()).add(reference);
+        }
+    }
+
+    /**
+     * Types of the model that directly extend / implement the given type
+     */
+    public Set<TypeId> getDirectSubtypes(TypeId type) {
+        return this.directSubtypes.getOrDefault(type, Set.of());
+    }
+
+    /**
+     * Types of the model that are subtypes of the given type, excluding the type itself
+     */
+    public Set<TypeId> getTransitiveSubtypes(TypeId type) {
+        return this.transitiveSubtypes.computeIfAbsent(type, t -> {
+            Set<TypeId> result = new HashSet<>();
+            Deque<TypeId> worklist = new ArrayDeque<>(this.getDirectSubtypes(t));
+            while (!worklist.isEmpty()) {
+                TypeId subtype = worklist.pop();
+                if (result.add(subtype)) {
+                    worklist.addAll(this.getDirectSubtypes(subtype));
+                }
+            }
+            return Set.copyOf(result);
+        });
+    }
+
+    /**
+     * Executables of the model that override the given method, not including the method itself
+     */
+    public List<CtExecutableReference<?>> getOverridingMethods(CtExecutableReference<?> method) {
+        return this.overridingMethods.computeIfAbsent(FlowContext.buildQualifiedExecutableName(method), k ->
+                this.executablesBySignature.getOrDefault(signatureKey(method), List.of()).stream()
+                        .filter(e -> e.isOverriding(method) && !e.equals(method))
+                        .<CtExecutableReference<?>>map(e -> e)
+                        .toList());
+    }
+
+    public boolean isSubtypeOf(TypeId subtype, TypeId supertype) {
+        if (subtype.equals(supertype)) {
+            return true;
+        } else if (!isEncodable(subtype) || !isEncodable(supertype)) {
+            return this.fallbackSubtypeTests.computeIfAbsent(List.of(subtype, supertype), k -> subtype.isSubtypeOf(supertype));
+        } else if (supertype.isObject()) {
+            return true;
+        }
+
+        BitSet subtypeBits = this.getSupertypeBits(subtype);
+        // All supertypes of subtype have an id by now, so supertype cannot be one of them if it has no id
+        Integer supertypeId = this.typeIds.get(supertype);
+        return supertypeId != null && subtypeBits.get(supertypeId);
+    }
+
+    /**
+     * The lowest common superclass of both types, i.e. the deepest class that both types (transitively) extend.
+     * Interfaces are not considered, so this is java.lang.Object for unrelated types.
+     */
+    public TypeId getLowestCommonSupertype(TypeId a, TypeId b) {
+        if (a.equals(b)) {
+            return a;
+        }
+
+        // The result is symmetric, so order the pair to share the memo entry
+        long key = a.id() < b.id()
+                ? ((long) a.id() << 32) | b.id()
+                : ((long) b.id() << 32) | a.id();
+        TypeId result = this.lowestCommonSupertypes.get(key);
+        if (result == null) {
+            result = this.computeLowestCommonSupertype(a, b);
+            this.lowestCommonSupertypes.put(key, result);
+        }
+        return result;
+    }
+
+    private TypeId computeLowestCommonSupertype(TypeId a, TypeId b) {
+        Ancestry aAncestry = this.getAncestry(a);
+        Ancestry bAncestry = this.getAncestry(b);
+        if (aAncestry.depth() > bAncestry.depth()) {
+            a = this.getAncestor(a, aAncestry.depth() - bAncestry.depth());
+        } else if (bAncestry.depth() > aAncestry.depth()) {
+            b = this.getAncestor(b, bAncestry.depth() - aAncestry.depth());
+        }
+        if (a.equals(b)) {
+            return a;
+        }
+
+        // Both are on the same depth now; lift both as far as they stay different, then their parent is the result
+        for (int k = this.getAncestry(a).jumps().length - 1; k >= 0; k--) {
+            TypeId[] aJumps = this.getAncestry(a).jumps();
+            TypeId[] bJumps = this.getAncestry(b).jumps();
+            if (k < aJumps.length && !aJumps[k].equals(bJumps[k])) {
+                a = aJumps[k];
+                b = bJumps[k];
+            }
+        }
+        return this.getAncestry(a).jumps()[0];
+    }
+
+    private TypeId getAncestor(TypeId type, int steps) {
+        for (int k = 0; steps != 0; k++, steps >>>= 1) {
+            if ((steps & 1) != 0) {
+                type = this.getAncestry(type).jumps()[k];
+            }
+        }
+        return type;
+    }
+
+    private Ancestry getAncestry(TypeId type) {
+        Ancestry ancestry = this.ancestries.get(type);
+        if (ancestry != null) {
+            return ancestry;
+        }
+
+        if (type.isObject()) {
+            ancestry = new Ancestry(0, new TypeId[0]);
+        } else {
+            TypeId superclass = TypeUtil.getBestSuperclass(type, this.context);
+            int depth = this.getAncestry(superclass).depth() + 1;
+            // One entry for every k with 2^k <= depth
+            TypeId[] jumps = new TypeId[Integer.SIZE - Integer.numberOfLeadingZeros(depth)];
+            jumps[0] = superclass;
+            for (int k = 1; k < jumps.length; k++) {
+                jumps[k] = this.getAncestry(jumps[k - 1]).jumps()[k - 1];
+            }
+            ancestry = new Ancestry(depth, jumps);
+        }
+        this.ancestries.putIfAbsent(type, ancestry);
+        return ancestry;
+    }
+
+    private BitSet getSupertypeBits(TypeId type) {
+        BitSet bits = this.supertypes.get(type);
+        if (bits != null) {
+            return bits;
+        }
+
+        // Dense ids must be assigned sequentially
+        synchronized (this.typeIds) {
+            bits = this.supertypes.get(type);
+            if (bits == null) {
+                bits = new BitSet();
+                bits.set(this.typeIds.computeIfAbsent(type, t -> this.typeIds.size()));
+                var superclass = type.type().getSuperclass();
+                if (superclass != null) {
+                    bits.or(this.getSupertypeBits(this.context.getType(superclass)));
+                }
+                for (CtTypeReference<?> superInterface : type.type().getSuperInterfaces()) {
+                    bits.or(this.getSupertypeBits(this.context.getType(superInterface)));
+                }
+                this.supertypes.put(type, bits);
+            }
+            return bits;
+        }
+    }
+
+    private static boolean isEncodable(TypeId type) {
+        CtTypeReference<?> reference = type.type();
+        return !reference.isPrimitive()
+                && !type.isNulltype()
+                && !(reference instanceof CtArrayTypeReference<?>)
+                && !(reference instanceof CtTypeParameterReference);
+    }
+
+    private void addDirectSubtype(CtTypeReference<?> supertype, TypeId subtype) {
+        this.directSubtypes.computeIfAbsent(this.context.getType(supertype), t -> new HashSet<>()).add(subtype);
+    }
+
+    /**
+     * @param depth number of superclasses up to java.lang.Object
+     * @param jumps jumps[k] is the 2^k-th superclass
+     */
+    private record Ancestry(int depth, TypeId[] jumps) {
+    }
+
+    private static String signatureKey(CtExecutableReference<?> executable) {
+        return executable.getSimpleName() + "/" + executable.getParameters().size();
+    }
+}
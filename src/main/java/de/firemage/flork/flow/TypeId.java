@@ -1,72 +1,97 @@
 package de.firemage.flork.flow;
 
 import spoon.reflect.reference.CtTypeReference;
-import java.util.Objects;
-import java.util.Optional;
 
-public record TypeId(CtTypeReference<?> type) {
-    public static Optional<TypeId> ofFallible(CtTypeReference<?> type) {
-        return type == null ? Optional.empty() : Optional.of(new TypeId(type));
+/**
+ * A type, interned per {@link FlowContext} (see {@link FlowContext#getType(CtTypeReference)}).
+ * Since there is exactly one instance per qualified name and context, TypeIds are compared by identity,
+ * and TypeIds of different contexts must not be mixed.
+ */
+public final class TypeId {
+    private final int id;
+    private final CtTypeReference<?> type;
+    private final String name;
+    private final Kind kind;
+
+    TypeId(int id, CtTypeReference<?> type, String name) {
+        this.id = id;
+        this.type = type;
+        this.name = name;
+        this.kind = Kind.of(name);
+    }
+
+    /**
+     * Dense id, unique within the context
+     */
+    public int id() {
+        return this.id;
+    }
+
+    public CtTypeReference<?> type() {
+        return this.type;
+    }
+
+    public Kind kind() {
+        return this.kind;
     }
 
     public String getName() {
-        return this.type.getQualifiedName();
+        return this.name;
     }
 
+    /**
+     * Asks Spoon directly, which is slow. Prefer {@link FlowContext#isSubtype(TypeId, TypeId)}.
+     */
     public boolean isSubtypeOf(TypeId other) {
         return this.type.isSubtypeOf(other.type);
     }
 
-    public Optional<TypeId> getSuperclass() {
-        return Optional.ofNullable(this.type.getSuperclass()).map(TypeId::new);
-    }
-
     public boolean isObject() {
-        return this.getName().equals("java.lang.Object");
+        return this.kind == Kind.OBJECT;
     }
 
     public boolean isNulltype() {
-        return this.getName().equals("<nulltype>");
+        return this.kind == Kind.NULL;
     }
 
     public boolean isPrimitive() {
-        return this.type.isPrimitive();
+        return this.kind.primitive;
     }
 
     public boolean isVoid() {
-        return this.getName().equals("void");
+        return this.kind == Kind.VOID;
     }
 
     public boolean isBoolean() {
-        return this.getName().equals("boolean");
+        return this.kind == Kind.BOOLEAN;
     }
 
     public boolean isInt() {
-        return this.getName().equals("int");
+        return this.kind == Kind.INT;
     }
 
     public boolean isLong() {
-        return this.getName().equals("long");
+        return this.kind == Kind.LONG;
     }
 
     public boolean isFloat() {
-        return this.getName().equals("float");
+        return this.kind == Kind.FLOAT;
     }
 
     public boolean isDouble() {
-        return this.getName().equals("double");
+        return this.kind == Kind.DOUBLE;
     }
 
     public boolean isByte() {
-        return this.getName().equals("byte");
+        return this.kind == Kind.BYTE;
     }
 
     public boolean isShort() {
-        return this.getName().equals("short");
+        return this.kind == Kind.SHORT;
     }
 
     public boolean isChar() {
-        return this.getName().equals("char");
+        return this.kind == Kind.CHAR;
     }
 
     public boolean isJDKType() {
@@ -75,14 +100,56 @@ public record TypeId(CtTypeReference<?> type) {
 
     @Override
     public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        TypeId typeId = (TypeId) o;
-        return this.getName().equals(typeId.getName());
+        return this == o;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(this.getName());
+        return this.id;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+
+    public enum Kind {
+        BOOLEAN(true),
+        BYTE(true),
+        SHORT(true),
+        CHAR(true),
+        INT(true),
+        LONG(true),
+        FLOAT(true),
+        DOUBLE(true),
+        VOID(true),
+        OBJECT(false),
+        BOXED_INT(false),
+        NULL(false),
+        REFERENCE(false);
+
+        private final boolean primitive;
+
+        Kind(boolean primitive) {
+            this.primitive = primitive;
+        }
+
+        private static Kind of(String name) {
+            return switch (name) {
+                case "boolean" -> BOOLEAN;
+                case "byte" -> BYTE;
+                case "short" -> SHORT;
+                case "char" -> CHAR;
+                case "int" -> INT;
+                case "long" -> LONG;
+                case "float" -> FLOAT;
+                case "double" -> DOUBLE;
+                case "void" -> VOID;
+                case "java.lang.Object" -> OBJECT;
+                case "java.lang.Integer" -> BOXED_INT;
+                case "<nulltype>" -> NULL;
+                default -> REFERENCE;
+            };
+        }
     }
 }
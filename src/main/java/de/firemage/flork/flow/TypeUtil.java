@@ -1,16 +1,13 @@
 package de.firemage.flork.flow;
 
 import spoon.reflect.declaration.CtClass;
-import spoon.reflect.declaration.CtExecutable;
 import spoon.reflect.declaration.CtType;
 import spoon.reflect.factory.Factory;
 import spoon.reflect.reference.CtExecutableReference;
 import spoon.reflect.reference.CtTypeReference;
 import spoon.support.reflect.reference.CtTypeReferenceImpl;
 
-import java.util.HashSet;
 import java.util.Optional;
-import java.util.Set;
 import java.util.stream.Stream;
 
 public final class TypeUtil {
@@ -20,30 +17,12 @@ public final class TypeUtil {
 
     public static TypeId findLowestCommonSupertype(TypeId a, TypeId b,
                                                                FlowContext context) {
-        if (a.equals(b)) {
-            return a;
-        }
-
-        Set<TypeId> aParents = new HashSet<>();
-        aParents.add(a);
-
-        TypeId aParent = a;
-        while (!aParent.isObject()) {
-            aParent = TypeUtil.getBestSuperclass(aParent, context);
-            aParents.add(aParent);
-        }
-
-        TypeId bParent = b;
-        while (true) {
-            if (aParents.contains(bParent)) {
-                return bParent;
-            }
-            bParent = TypeUtil.getBestSuperclass(bParent, context);
-        }
+        return context.getTypeHierarchy().getLowestCommonSupertype(a, b);
     }
 
     public static TypeId getBestSuperclass(TypeId type, FlowContext context) {
-        return type.getSuperclass().orElseGet(context::getObject);
+        var superclass = type.type().getSuperclass();
+        return superclass != null ? context.getType(superclass) : context.getObject();
     }
 
     /**
@@ -54,22 +33,18 @@ public final class TypeUtil {
      */
     public static Stream<? extends CtExecutableReference<?>> getAllOverridingMethods(CtExecutableReference<?> method,
                                                                                      FlowContext context) {
-        return context.getModel()
-            .getElements(CtExecutable.class::isInstance) // TODO filtering for CtExecutable instead of refs may be suboptimal, but refs include only referenced executables
-            .stream()
-            .map(e -> ((CtExecutable<?>) e).getReference())
-            .filter(e -> e.isOverriding(method) && !e.equals(method));
+        return context.getTypeHierarchy().getOverridingMethods(method).stream();
     }
 
     public static CtTypeReference<?> buildReference(String qualifiedName, FlowContext context) {
         return context.getFactory().createReference(qualifiedName);
     }
 
-    public static boolean isTrueSubtype(TypeId subtype, TypeId supertype) {
-        return !subtype.equals(supertype) && subtype.isSubtypeOf(supertype);
+    public static boolean isTrueSubtype(TypeId subtype, TypeId supertype, FlowContext context) {
+        return !subtype.equals(supertype) && context.isSubtype(subtype, supertype);
     }
     
-    public static boolean areSiblingTypes(TypeId a, TypeId b) {
-        return !a.isSubtypeOf(b) && !b.isSubtypeOf(a);
+    public static boolean areSiblingTypes(TypeId a, TypeId b, FlowContext context) {
+        return !context.isSubtype(a, b) && !context.isSubtype(b, a);
     }
 }
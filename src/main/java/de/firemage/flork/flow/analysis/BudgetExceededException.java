@@ -0,0 +1,10 @@
+package de.firemage.flork.flow.analysis;
+
+/**
+ * Aborts the analysis of a method that exceeded its {@link de.firemage.flork.flow.AnalysisBudget}
+ */
+public class BudgetExceededException extends RuntimeException {
+    public BudgetExceededException(String message) {
+        super(message);
+    }
+}
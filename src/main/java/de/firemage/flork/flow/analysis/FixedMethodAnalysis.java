@@ -0,0 +1,52 @@
+package de.firemage.flork.flow.analysis;
+
+import de.firemage.flork.flow.CachedMethod;
+import de.firemage.flork.flow.exit.ExitStateIndex;
+import de.firemage.flork.flow.exit.MethodExitState;
+import spoon.reflect.declaration.CtParameter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A summary with the given exit states, e.g. the provisional summary of a recursive method
+ */
+public class FixedMethodAnalysis implements MethodAnalysis {
+    private final CachedMethod method;
+    private final List<MethodExitState> returnStates;
+    private final List<String> parameterNames;
+    private final ExitStateIndex exitStateIndex;
+
+    public FixedMethodAnalysis(CachedMethod method, List<MethodExitState> returnStates) {
+        this.method = method;
+        this.returnStates = List.copyOf(returnStates);
+        this.exitStateIndex = ExitStateIndex.of(this.returnStates);
+        this.parameterNames = new ArrayList<>();
+        if (!method.isStatic()) {
+            this.parameterNames.add("this");
+        }
+        for (CtParameter<?> parameter : method.getExecutable().getExecutableDeclaration().getParameters()) {
+            this.parameterNames.add(parameter.getSimpleName());
+        }
+    }
+
+    @Override
+    public CachedMethod getMethod() {
+        return this.method;
+    }
+
+    @Override
+    public List<MethodExitState> getReturnStates() {
+        return this.returnStates;
+    }
+
+    @Override
+    public ExitStateIndex getExitStateIndex() {
+        return this.exitStateIndex;
+    }
+
+    @Override
+    public List<String> getOrderedParameterNames() {
+        return this.parameterNames;
+    }
+}
@@ -1,8 +1,11 @@
 package de.firemage.flork.flow.analysis;
 
+import de.firemage.flork.flow.AnalysisBudget;
 import de.firemage.flork.flow.CachedMethod;
 import de.firemage.flork.flow.FlowContext;
 import de.firemage.flork.flow.PrimitiveTypeRelationship;
+import de.firemage.flork.flow.exit.ExitStateCompaction;
+import de.firemage.flork.flow.exit.ExitStateIndex;
 import de.firemage.flork.flow.exit.MethodExitState;
 import de.firemage.flork.flow.TypeId;
 import de.firemage.flork.flow.engine.FlowEngine;
@@ -12,6 +15,7 @@ import de.firemage.flork.flow.value.IntValueSet;
 import de.firemage.flork.flow.value.LongValueSet;
 import de.firemage.flork.flow.value.Nullness;
 import de.firemage.flork.flow.value.ObjectValueSet;
+import de.firemage.flork.flow.value.ValueSet;
 import de.firemage.flork.flow.value.VoidValue;
 import spoon.reflect.code.BinaryOperatorKind;
 import spoon.reflect.code.CtAnnotationFieldAccess;
@@ -50,15 +54,24 @@ public class FlowMethodAnalysis implements MethodAnalysis {
     private final FlowContext context;
     private final CachedMethod method;
     private final List<String> parameterNames;
-    private final List<MethodExitState> returnStates;
+    private List<MethodExitState> returnStates;
     private final boolean effectivelyVoid;
-
-    private FlowMethodAnalysis(CachedMethod method, CtExecutable<?> executable, FlowContext context) {
+    private final ExitStateIndex exitStateIndex;
+    private final AnalysisBudget budget;
+    private final long startTime;
+    // Only the general analysis may publish expression values, since specializations only see some arguments
+    private final boolean recordsExpressionValues;
+
+    private FlowMethodAnalysis(CachedMethod method, CtExecutable<?> executable, List<ValueSet> argumentValues,
+                               FlowContext context) {
         this.context = context;
         this.method = method;
         this.returnStates = new ArrayList<>();
         this.parameterNames = new ArrayList<>();
         this.effectivelyVoid = executable.getType().getSimpleName().equals("void");
+        this.budget = context.getOptions().budget();
+        this.startTime = System.nanoTime();
+        this.recordsExpressionValues = argumentValues == null;
 
         // This pointer
         TypeId thisType = method.getThisType().orElse(null);
@@ -84,21 +97,38 @@ public class FlowMethodAnalysis implements MethodAnalysis {
         this.context.pushLocation();
         this.context.logNoPrefix("=============== " + this.method.getName() + " ===============");
 
-        FlowEngine engine = new FlowEngine(thisType, thisPointer, executable.getParameters(), this.context);
-        analyzeBlock(executable.getBody(), engine);
+        try {
+            FlowEngine engine = new FlowEngine(thisType, thisPointer, executable.getParameters(), argumentValues, this.context);
+            analyzeBlock(executable.getBody(), engine);
 
-        // Handle thrown exceptions & possible implicit return
-        if (!engine.isEmpty()) {
-            this.buildExitStates(engine, false);
-        }
+            // Handle thrown exceptions & possible implicit return
+            if (!engine.isEmpty()) {
+                this.buildExitStates(engine, false);
+            }
 
-        this.context.log(this.getReturnStates().size() + " return states: " + this.getReturnStates());
-        this.context.logNoPrefix("================== " + this.method.getName() + " completed ==================");
-        this.context.popLocation();
+            // Checked before compaction, since the lossy merging would otherwise hide any violation
+            if (this.budget.maxExitStates() > 0 && this.returnStates.size() > this.budget.maxExitStates()) {
+                throw new BudgetExceededException(this.returnStates.size() + " exit states");
+            }
+            this.returnStates = ExitStateCompaction.compact(this.returnStates, context.getOptions().maxExitStates());
+            this.exitStateIndex = ExitStateIndex.of(this.returnStates);
+            this.context.log(this.getReturnStates().size() + " return states: " + this.getReturnStates());
+            this.context.logNoPrefix("================== " + this.method.getName() + " completed ==================");
+        } finally {
+            this.context.popLocation();
+        }
     }
 
     public static MethodAnalysis analyzeMethod(CachedMethod method, CtExecutable<?> executable, FlowContext context) {
-        return new FlowMethodAnalysis(method, executable, context);
+        return new FlowMethodAnalysis(method, executable, null, context);
+    }
+
+    /**
+     * Analyzes the method for the given values of its (explicit) parameters instead of all possible values
+     */
+    public static MethodAnalysis analyzeSpecialized(CachedMethod method, CtExecutable<?> executable,
+                                                    List<ValueSet> argumentValues, FlowContext context) {
+        return new FlowMethodAnalysis(method, executable, argumentValues, context);
     }
 
     @Override
@@ -111,6 +141,11 @@ public class FlowMethodAnalysis implements MethodAnalysis {
         return this.returnStates;
     }
 
+    @Override
+    public ExitStateIndex getExitStateIndex() {
+        return this.exitStateIndex;
+    }
+
     @Override
     public List<String> getOrderedParameterNames() {
         return this.parameterNames;
@@ -125,13 +160,14 @@ public class FlowMethodAnalysis implements MethodAnalysis {
     // Returns true if the statement is a return statement
     private void analyzeStatement(CtStatement statement, FlowEngine engine) {
         this.context.setCurrentElement(statement);
+        this.checkBudget(engine);
         switch (statement) {
             case CtExpression<?> expression -> {
                 analyzeExpression(expression, engine);
                 engine.pop();
             }
             case CtLocalVariable<?> localDefinition -> {
-                engine.createLocal(localDefinition.getSimpleName(), new TypeId(localDefinition.getType()));
+                engine.createLocal(localDefinition.getSimpleName(), this.context.getType(localDefinition.getType()));
                 if (localDefinition.getAssignment() != null) {
                     analyzeExpression(localDefinition.getAssignment(), engine);
                     doImplicitConversions(localDefinition.getType(), getExpressionType(localDefinition.getAssignment()), engine);
@@ -162,7 +198,7 @@ public class FlowMethodAnalysis implements MethodAnalysis {
                 analyzeBlock(tryBlock.getBody(), engine);
                 for (var catcher : tryBlock.getCatchers()) {
                     this.context.log("=== Catch " + catcher.getParameter().getType());
-                    var catcherEngine = engine.extractExceptionalStatesForHandler(TypeId.ofFallible(catcher.getParameter().getType()).get());
+                    var catcherEngine = engine.extractExceptionalStatesForHandler(this.context.getTypeFallible(catcher.getParameter().getType()).get());
                     if (catcherEngine.isImpossibleState()) {
                         this.context.log("-> Unreachable");
                         continue;
@@ -228,8 +264,8 @@ public class FlowMethodAnalysis implements MethodAnalysis {
             }
             case CtConstructorCall<?> constructorCall -> analyzeConstructorCall(constructorCall, engine);
             case CtTypeAccess<?> access -> {
-                // Can't handle this for now, so play safeTypeId.ofFallible
-                engine.pushValue(ObjectValueSet.forExactType(Nullness.NON_NULL, new TypeId(access.getAccessedType()), this.context));
+                // Can't handle this for now, so play safe
+                engine.pushValue(ObjectValueSet.forExactType(Nullness.NON_NULL, this.context.getType(access.getAccessedType()), this.context));
             }
             case CtVariableWrite<?> ignored ->
                     throw new IllegalStateException("Write expression should be handled in assignment");
@@ -241,20 +277,23 @@ public class FlowMethodAnalysis implements MethodAnalysis {
 
                 FlowEngine lambdaEngine = engine.cloneEngine();
                 for (CtParameter<?> parameter : lambda.getParameters()) {
-                    lambdaEngine.createLocal(parameter.getSimpleName(), new TypeId(parameter.getType()));
+                    lambdaEngine.createLocal(parameter.getSimpleName(), this.context.getType(parameter.getType()));
                 }
 
                 this.context.pushLocation();
-                this.context.logNoPrefix("=== Lambda Start === ");
-                if (lambda.getBody() != null) {
-                    analyzeBlock(lambda.getBody(), lambdaEngine);
-                } else {
-                    analyzeExpression(lambda.getExpression(), lambdaEngine);
+                try {
+                    this.context.logNoPrefix("=== Lambda Start === ");
+                    if (lambda.getBody() != null) {
+                        analyzeBlock(lambda.getBody(), lambdaEngine);
+                    } else {
+                        analyzeExpression(lambda.getExpression(), lambdaEngine);
+                    }
+                    this.context.logNoPrefix("=== Lambda End === ");
+                } finally {
+                    this.context.popLocation();
                 }
-                this.context.logNoPrefix("=== Lambda End === ");
-                this.context.popLocation();
 
-                engine.pushValue(ObjectValueSet.forUnconstrainedType(Nullness.NON_NULL, new TypeId(lambda.getType()), this.context));
+                engine.pushValue(ObjectValueSet.forUnconstrainedType(Nullness.NON_NULL, this.context.getType(lambda.getType()), this.context));
             }
             default ->
                     throw new UnsupportedOperationException(expression.getClass().getName() + " @ " + this.context.getLocation());
@@ -270,11 +309,13 @@ public class FlowMethodAnalysis implements MethodAnalysis {
                 engine.box();
             }
 
-            engine.castTo(new TypeId(cast));
+            engine.castTo(this.context.getType(cast));
             currentType = cast;
         }
 
-        expression.putMetadata(FlowContext.VALUE_KEY, engine.peekOrVoid());
+        if (this.recordsExpressionValues) {
+            expression.putMetadata(FlowContext.VALUE_KEY, engine.peekOrVoid());
+        }
     }
 
     private void analyzeAssignment(CtAssignment<?, ?> assignment, FlowEngine engine) {
@@ -303,7 +344,7 @@ public class FlowMethodAnalysis implements MethodAnalysis {
             }
         } else {
             // I'm pretty sure that the only non-primitive literal is the null literal
-            engine.pushValue(ObjectValueSet.getNullSet(this.context));
+            engine.pushValue(this.context.getNullSet());
         }
     }
 
@@ -351,7 +392,7 @@ public class FlowMethodAnalysis implements MethodAnalysis {
             engine.unbox();
         }
         if (tyRelation == PrimitiveTypeRelationship.RHS_WIDER) {
-            engine.castTo(new TypeId(rhsType));
+            engine.castTo(this.context.getType(rhsType));
         }
 
         analyzeExpression(operator.getRightHandOperand(), engine);
@@ -359,7 +400,7 @@ public class FlowMethodAnalysis implements MethodAnalysis {
             engine.unbox();
         }
         if (tyRelation == PrimitiveTypeRelationship.LHS_WIDER) {
-            engine.castTo(new TypeId(lhsType));
+            engine.castTo(this.context.getType(lhsType));
         }
 
         switch (operator.getKind()) {
@@ -411,7 +452,7 @@ public class FlowMethodAnalysis implements MethodAnalysis {
 
         // Create and push the new object as the this-pointer for the method
         engine.pushValue(
-                ObjectValueSet.forExactType(Nullness.NON_NULL, new TypeId(call.getExecutable().getType()), this.context));
+                ObjectValueSet.forExactType(Nullness.NON_NULL, this.context.getType(call.getExecutable().getType()), this.context));
 
         for (int i = call.getArguments().size() - 1; i >= 0; i--) {
             analyzeExpression(call.getArguments().get(i), engine);
@@ -502,6 +543,18 @@ public class FlowMethodAnalysis implements MethodAnalysis {
         engine.join(skipBranch);
     }
 
+    private void checkBudget(FlowEngine engine) {
+        if (this.budget.maxMillis() > 0 && System.nanoTime() - this.startTime > this.budget.maxMillis() * 1_000_000) {
+            throw new BudgetExceededException("more than " + this.budget.maxMillis() + " ms");
+        }
+        if (this.budget.maxLiveStates() > 0 && engine.getLiveStateCount() > this.budget.maxLiveStates()) {
+            throw new BudgetExceededException(engine.getLiveStateCount() + " live states");
+        }
+        if (this.budget.maxVars() > 0 && engine.getMaxVarCount() > this.budget.maxVars()) {
+            throw new BudgetExceededException(engine.getMaxVarCount() + " vars in one state");
+        }
+    }
+
     private void buildExitStates(FlowEngine engine, boolean returningExpression) {
         if (!returningExpression) {
             if (this.effectivelyVoid) {
@@ -544,7 +597,7 @@ public class FlowMethodAnalysis implements MethodAnalysis {
             // Here, the value is boxed first (yielding Integer), and then cast to Object
             // Therefore, we may need to add a cast here
             if (!oldType.box().equals(newType)) {
-                engine.castTo(new TypeId(newType));
+                engine.castTo(this.context.getType(newType));
             }
 
             return;
@@ -558,14 +611,14 @@ public class FlowMethodAnalysis implements MethodAnalysis {
         if (!oldType.isPrimitive()) {
             // Widening reference conversion (JLS 5.1.5)
             // Narrowing reference conversions cannot happen implicitly, so we can ignore them
-            engine.castTo(new TypeId(newType));
+            engine.castTo(this.context.getType(newType));
             return;
         }
 
         // Primitive conversions
         var relation = PrimitiveTypeRelationship.compareTypes(newType, oldType);
         if (relation == PrimitiveTypeRelationship.LHS_WIDER) {
-            engine.castTo(new TypeId(newType));
+            engine.castTo(this.context.getType(newType));
         }
     }
 }
@@ -29,10 +29,10 @@ public class HardcodedMethodAnalysis implements MethodAnalysis {
 
         var parameterTypes = new ArrayList<TypeId>(parameterNames.size());
         for (int i = 0; i < parameterNames.size(); i++) {
-            parameterTypes.add(new TypeId(method.getExecutable().getParameters().get(i)));
+            parameterTypes.add(context.getType(method.getExecutable().getParameters().get(i)));
         }
 
-        var returnType = new TypeId(method.getExecutable().getType());
+        var returnType = context.getType(method.getExecutable().getType());
 
         if (returnType.isVoid()) {
             this.returnStates = List.of(MethodExitState.forReturn(VoidValue.getInstance(),
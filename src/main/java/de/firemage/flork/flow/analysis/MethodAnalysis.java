@@ -1,6 +1,7 @@
 package de.firemage.flork.flow.analysis;
 
 import de.firemage.flork.flow.CachedMethod;
+import de.firemage.flork.flow.exit.ExitStateIndex;
 import de.firemage.flork.flow.exit.MethodExitState;
 import de.firemage.flork.flow.engine.VarId;
 
@@ -11,5 +12,12 @@ public interface MethodAnalysis {
 
     List<MethodExitState> getReturnStates();
 
+    /**
+     * Summaries with many exit states should build the index once and return it here
+     */
+    default ExitStateIndex getExitStateIndex() {
+        return ExitStateIndex.of(this.getReturnStates());
+    }
+
     List<String> getOrderedParameterNames();
 }
@@ -27,7 +27,7 @@ public class StubMethodAnalysis implements MethodAnalysis {
         this.method = method;
         this.parameters = new ArrayList<>(parameterNames);
 
-        var returnType = TypeId.ofFallible(method.getExecutable().getType());
+        var returnType = context.getTypeFallible(method.getExecutable().getType());
         if (returnType.isEmpty() || returnType.get().isVoid()) {
             this.returnStates = List.of(MethodExitState.forReturn(VoidValue.getInstance(),
                     createGenericParameterConditions(parameterTypes, context)));
@@ -46,12 +46,12 @@ public class StubMethodAnalysis implements MethodAnalysis {
 
         if (!executable.isStatic()) {
             paramNames.add("this");
-            paramTypes.add(new TypeId(executable.getDeclaringType()));
+            paramTypes.add(context.getType(executable.getDeclaringType()));
         }
 
         for (int i = 0; i < parameters.size(); i++) {
             paramNames.add("p" + i);
-            paramTypes.add(new TypeId(parameters.get(i)));
+            paramTypes.add(context.getType(parameters.get(i)));
         }
         return new StubMethodAnalysis(method, paramNames, paramTypes, context);
     }
@@ -0,0 +1,193 @@
+package de.firemage.flork.flow.callgraph;
+
+import de.firemage.flork.flow.FlowContext;
+import de.firemage.flork.flow.TypeUtil;
+import spoon.reflect.code.CtAbstractInvocation;
+import spoon.reflect.code.CtInvocation;
+import spoon.reflect.code.CtSuperAccess;
+import spoon.reflect.declaration.CtConstructor;
+import spoon.reflect.declaration.CtExecutable;
+import spoon.reflect.declaration.CtMethod;
+import spoon.reflect.reference.CtExecutableReference;
+import spoon.reflect.visitor.filter.TypeFilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The call graph of all methods & constructors with a body in the model.
+ * Nodes are dense ints; virtual calls have an edge to every possible target
+ * (see {@link FlowContext#isPossibleCallTarget(de.firemage.flork.flow.CachedMethod)}).
+ * Calls to executables outside the model are not recorded, since they have no callees that could be analyzed.
+ */
+public class CallGraph {
+    private final List<CtExecutableReference<?>> executables = new ArrayList<>();
+    private final Map<String, Integer> nodes = new HashMap<>();
+    private final int[][] callees;
+
+    public CallGraph(FlowContext context) {
+        List<CtExecutable<?>> declarations = context.getModel().getElements(new TypeFilter<>(CtExecutable.class)).stream()
+                .filter(e -> (e instanceof CtMethod<?> || e instanceof CtConstructor<?>) && e.getBody() != null)
+                .<CtExecutable<?>>map(e -> e)
+                .toList();
+        for (CtExecutable<?> declaration : declarations) {
+            var reference = declaration.getReference();
+            this.nodes.put(FlowContext.buildQualifiedExecutableName(reference), this.executables.size());
+            this.executables.add(reference);
+        }
+
+        this.callees = new int[this.executables.size()][];
+        for (int i = 0; i < declarations.size(); i++) {
+            // Sorted & deduplicated, so that the graph (and therefore the schedule) is deterministic
+            Set<Integer> targets = new TreeSet<>();
+            for (CtAbstractInvocation<?> invocation : declarations.get(i).getElements(new TypeFilter<>(CtAbstractInvocation.class))) {
+                this.collectTargets(invocation, targets, context);
+            }
+            this.callees[i] = targets.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    public int size() {
+        return this.executables.size();
+    }
+
+    public CtExecutableReference<?> getExecutable(int node) {
+        return this.executables.get(node);
+    }
+
+    /**
+     * @return the node of the executable, or -1 if it has no body in the model
+     */
+    public int getNode(CtExecutableReference<?> executable) {
+        return this.nodes.getOrDefault(FlowContext.buildQualifiedExecutableName(executable), -1);
+    }
+
+    public int[] getCallees(int node) {
+        return Arrays.copyOf(this.callees[node], this.callees[node].length);
+    }
+
+    /**
+     * The strongly connected components of the whole graph, callees before callers
+     */
+    public List<Component> getComponentsBottomUp() {
+        int[] roots = new int[this.size()];
+        Arrays.setAll(roots, i -> i);
+        return this.getComponentsBottomUp(roots);
+    }
+
+    /**
+     * The strongly connected components reachable from the given executables, callees before callers.
+     * Executables that are not part of the graph are ignored.
+     */
+    public List<Component> getComponentsBottomUp(Collection<CtExecutableReference<?>> roots) {
+        return this.getComponentsBottomUp(roots.stream().mapToInt(this::getNode).filter(n -> n >= 0).toArray());
+    }
+
+    /**
+     * Tarjan's algorithm, which emits every component after all components reachable from it.
+     * Iterative, since call chains can be deeper than the Java stack.
+     */
+    private List<Component> getComponentsBottomUp(int[] roots) {
+        int n = this.size();
+        int[] index = new int[n];
+        Arrays.fill(index, -1);
+        int[] lowLink = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int stackSize = 0;
+        int nextIndex = 0;
+
+        // The call stack of the depth-first search: node and position in its callee list
+        int[] dfsNodes = new int[n];
+        int[] dfsEdges = new int[n];
+
+        List<Component> result = new ArrayList<>();
+        for (int root : roots) {
+            if (index[root] >= 0) {
+                continue;
+            }
+
+            int depth = 0;
+            dfsNodes[0] = root;
+            dfsEdges[0] = 0;
+            index[root] = lowLink[root] = nextIndex++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int node = dfsNodes[depth];
+                if (dfsEdges[depth] < this.callees[node].length) {
+                    int callee = this.callees[node][dfsEdges[depth]++];
+                    if (index[callee] < 0) {
+                        index[callee] = lowLink[callee] = nextIndex++;
+                        stack[stackSize++] = callee;
+                        onStack[callee] = true;
+                        depth++;
+                        dfsNodes[depth] = callee;
+                        dfsEdges[depth] = 0;
+                    } else if (onStack[callee]) {
+                        lowLink[node] = Math.min(lowLink[node], index[callee]);
+                    }
+                    continue;
+                }
+
+                if (lowLink[node] == index[node]) {
+                    List<CtExecutableReference<?>> members = new ArrayList<>();
+                    int member;
+                    do {
+                        member = stack[--stackSize];
+                        onStack[member] = false;
+                        members.add(this.executables.get(member));
+                    } while (member != node);
+                    boolean recursive = members.size() > 1 || Arrays.binarySearch(this.callees[node], node) >= 0;
+                    result.add(new Component(List.copyOf(members.reversed()), recursive));
+                }
+
+                depth--;
+                if (depth >= 0) {
+                    int caller = dfsNodes[depth];
+                    lowLink[caller] = Math.min(lowLink[caller], lowLink[node]);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void collectTargets(CtAbstractInvocation<?> invocation, Set<Integer> targets, FlowContext context) {
+        var executable = invocation.getExecutable();
+        if (executable == null) {
+            return;
+        }
+
+        this.addTarget(executable, targets);
+        boolean virtual = !executable.isStatic() && !executable.isConstructor()
+                && !(invocation instanceof CtInvocation<?> call && call.getTarget() instanceof CtSuperAccess<?>);
+        if (virtual && context.isClosedWorld()) {
+            TypeUtil.getAllOverridingMethods(executable, context)
+                    .filter(m -> context.isPossibleCallTarget(context.getCachedMethod(m)))
+                    .forEach(m -> this.addTarget(m, targets));
+        }
+    }
+
+    private void addTarget(CtExecutableReference<?> executable, Set<Integer> targets) {
+        int node = this.getNode(executable);
+        if (node >= 0) {
+            targets.add(node);
+        }
+    }
+
+    /**
+     * A strongly connected component of the call graph
+     *
+     * @param executables the members, in discovery order
+     * @param recursive   whether the members (transitively) call themselves
+     */
+    public record Component(List<CtExecutableReference<?>> executables, boolean recursive) {
+    }
+}
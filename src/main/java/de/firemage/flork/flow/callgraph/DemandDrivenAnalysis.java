@@ -0,0 +1,74 @@
+package de.firemage.flork.flow.callgraph;
+
+import de.firemage.flork.flow.DispatchMode;
+import de.firemage.flork.flow.FlowContext;
+import spoon.reflect.reference.CtExecutableReference;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Analyzes only the methods & constructors that are reachable from the given entry points, callees before callers.
+ * Everything else in the model is skipped, so the cost scales with the reachable code instead of the whole model.
+ * <p>
+ * The entry points are also passed to the rapid type analysis. With {@link DispatchMode#RAPID_TYPE_ANALYSIS},
+ * virtual calls therefore only reach overriding methods of types that are instantiated by reachable code.
+ * With {@link DispatchMode#CLASS_HIERARCHY}, every overriding method is reachable in a closed world.
+ */
+public class DemandDrivenAnalysis {
+    private final FlowContext context;
+    private final List<CtExecutableReference<?>> entryPoints;
+
+    /**
+     * Must be created before anything else is analyzed in the context, see {@link FlowContext#setEntryPoints(Collection)}
+     */
+    public DemandDrivenAnalysis(FlowContext context, Collection<CtExecutableReference<?>> entryPoints) {
+        if (entryPoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one entry point is required");
+        }
+        this.context = context;
+        this.entryPoints = List.copyOf(entryPoints);
+        context.setEntryPoints(this.entryPoints);
+    }
+
+    public Report analyze() {
+        return this.buildReport(new SummaryScheduler(this.context).analyzeReachable(this.entryPoints));
+    }
+
+    public Report analyzeInParallel(ForkJoinPool pool) {
+        return this.buildReport(new SummaryScheduler(this.context).analyzeReachableInParallel(this.entryPoints, pool));
+    }
+
+    private Report buildReport(List<CallGraph.Component> components) {
+        CallGraph callGraph = this.context.getCallGraph();
+        boolean[] reachable = new boolean[callGraph.size()];
+        List<CtExecutableReference<?>> analyzed = new ArrayList<>();
+        for (CallGraph.Component component : components) {
+            for (CtExecutableReference<?> executable : component.executables()) {
+                reachable[callGraph.getNode(executable)] = true;
+                analyzed.add(executable);
+            }
+        }
+
+        List<CtExecutableReference<?>> skipped = new ArrayList<>();
+        for (int node = 0; node < callGraph.size(); node++) {
+            if (!reachable[node]) {
+                skipped.add(callGraph.getExecutable(node));
+            }
+        }
+        return new Report(analyzed, skipped);
+    }
+
+    /**
+     * @param analyzed the reachable executables, callees before callers
+     * @param skipped  the executables with a body that are not reachable from the entry points
+     */
+    public record Report(List<CtExecutableReference<?>> analyzed, List<CtExecutableReference<?>> skipped) {
+        public Report {
+            analyzed = List.copyOf(analyzed);
+            skipped = List.copyOf(skipped);
+        }
+    }
+}
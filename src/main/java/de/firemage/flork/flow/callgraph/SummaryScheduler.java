@@ -0,0 +1,165 @@
+package de.firemage.flork.flow.callgraph;
+
+import de.firemage.flork.flow.FlowContext;
+import spoon.reflect.reference.CtExecutableReference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Computes method summaries bottom-up along the call graph, i.e. every strongly connected component is analyzed
+ * after all components it calls. Callers therefore find the summaries of their callees in the cache instead of
+ * analyzing them in a nested analysis.
+ * <p>
+ * The parallel variants analyze every component as soon as all components it calls are done, so independent
+ * components are analyzed concurrently. The members of one component are always analyzed by the same thread.
+ */
+public class SummaryScheduler {
+    private final FlowContext context;
+
+    public SummaryScheduler(FlowContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Analyzes every method & constructor of the model
+     */
+    public void analyzeAll() {
+        this.context.getCallGraph().getComponentsBottomUp().forEach(this::analyze);
+    }
+
+    /**
+     * Analyzes the given executables and everything they (transitively) call
+     *
+     * @return the analyzed components, callees before callers
+     */
+    public List<CallGraph.Component> analyzeReachable(Collection<CtExecutableReference<?>> roots) {
+        List<CallGraph.Component> components = this.context.getCallGraph().getComponentsBottomUp(roots);
+        components.forEach(this::analyze);
+        return components;
+    }
+
+    public void analyzeAllInParallel(ForkJoinPool pool) {
+        this.analyzeInParallel(this.context.getCallGraph().getComponentsBottomUp(), pool);
+    }
+
+    public List<CallGraph.Component> analyzeReachableInParallel(Collection<CtExecutableReference<?>> roots,
+                                                               ForkJoinPool pool) {
+        List<CallGraph.Component> components = this.context.getCallGraph().getComponentsBottomUp(roots);
+        this.analyzeInParallel(components, pool);
+        return components;
+    }
+
+    private void analyze(CallGraph.Component component) {
+        for (CtExecutableReference<?> executable : component.executables()) {
+            // Caches the summary
+            this.context.getCachedMethod(executable).getFixedCallAnalysis();
+        }
+    }
+
+    private void analyzeInParallel(List<CallGraph.Component> components, ForkJoinPool pool) {
+        CallGraph callGraph = this.context.getCallGraph();
+        int[] componentOfNode = new int[callGraph.size()];
+        Arrays.fill(componentOfNode, -1);
+        for (int i = 0; i < components.size(); i++) {
+            for (CtExecutableReference<?> executable : components.get(i).executables()) {
+                componentOfNode[callGraph.getNode(executable)] = i;
+            }
+        }
+
+        // A component becomes ready once all of its callee components are done
+        List<List<Integer>> callers = new ArrayList<>(components.size());
+        AtomicInteger[] pendingCallees = new AtomicInteger[components.size()];
+        for (int i = 0; i < components.size(); i++) {
+            callers.add(new ArrayList<>());
+        }
+        for (int i = 0; i < components.size(); i++) {
+            Set<Integer> callees = new HashSet<>();
+            for (CtExecutableReference<?> executable : components.get(i).executables()) {
+                for (int callee : callGraph.getCallees(callGraph.getNode(executable))) {
+                    // The components are closed under calls, so every callee has a component
+                    if (componentOfNode[callee] != i) {
+                        callees.add(componentOfNode[callee]);
+                    }
+                }
+            }
+            pendingCallees[i] = new AtomicInteger(callees.size());
+            for (int callee : callees) {
+                callers.get(callee).add(i);
+            }
+        }
+
+        var scheduling = new Scheduling(components, callers, pendingCallees, pool);
+        for (int i = 0; i < components.size(); i++) {
+            if (pendingCallees[i].get() == 0) {
+                scheduling.submit(i);
+            }
+        }
+        scheduling.await();
+    }
+
+    private final class Scheduling {
+        private final List<CallGraph.Component> components;
+        private final List<List<Integer>> callers;
+        private final AtomicInteger[] pendingCallees;
+        private final ForkJoinPool pool;
+        private final CountDownLatch remaining;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private Scheduling(List<CallGraph.Component> components, List<List<Integer>> callers,
+                           AtomicInteger[] pendingCallees, ForkJoinPool pool) {
+            this.components = components;
+            this.callers = callers;
+            this.pendingCallees = pendingCallees;
+            this.pool = pool;
+            this.remaining = new CountDownLatch(components.size());
+        }
+
+        private void submit(int component) {
+            this.pool.execute(() -> {
+                try {
+                    analyze(this.components.get(component));
+                } catch (Throwable ex) {
+                    // Callers are still analyzed, they will just redo the failing analysis on demand.
+                    // Errors are caught as well, since the pool would otherwise swallow them and await() would report
+                    // success. Later failures are attached to the first one, which is rethrown.
+                    if (!this.failure.compareAndSet(null, ex) && this.failure.get() != ex) {
+                        this.failure.get().addSuppressed(ex);
+                    }
+                } finally {
+                    for (int caller : this.callers.get(component)) {
+                        if (this.pendingCallees[caller].decrementAndGet() == 0) {
+                            this.submit(caller);
+                        }
+                    }
+                    this.remaining.countDown();
+                }
+            });
+        }
+
+        private void await() {
+            try {
+                this.remaining.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the analysis", ex);
+            }
+            Throwable failure = this.failure.get();
+            if (failure instanceof RuntimeException ex) {
+                throw ex;
+            } else if (failure instanceof Error error) {
+                throw error;
+            } else if (failure != null) {
+                throw new IllegalStateException("The analysis failed", failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package de.firemage.flork.flow.engine;
+
+import de.firemage.flork.flow.BooleanStatus;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * A difference bound matrix over integral vars. Entry (i, j) is an upper bound c for node_i - node_j <= c.
+ * Node 0 is the constant zero, so (i, 0) is the upper bound and -(0, i) the lower bound of node i.
+ * The matrix is always kept closed, i.e. every bound is as tight as the other bounds allow, so queries are O(1)
+ * and adding a constraint is O(n^2) in the number of tracked vars.
+ * Like {@link ValueStack}, copies share their arrays until one of them writes (copy-on-write).
+ */
+public final class DifferenceBoundMatrix {
+    public static final long INFINITY = Long.MAX_VALUE;
+    private static final int ZERO = 0;
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int[] vars; // vars[i] is the var id of node i, vars[0] is unused
+    private long[] bounds; // Row-major with a row length of vars.length
+    private int size; // Number of nodes, including the zero node
+    private boolean shared;
+    private int hash; // Lazily computed, 0 if unknown
+
+    public DifferenceBoundMatrix() {
+        this.vars = new int[INITIAL_CAPACITY];
+        this.bounds = new long[INITIAL_CAPACITY * INITIAL_CAPACITY];
+        this.vars[ZERO] = -1;
+        this.bounds[0] = 0;
+        this.size = 1;
+        this.shared = false;
+    }
+
+    public DifferenceBoundMatrix(DifferenceBoundMatrix other) {
+        this.vars = other.vars;
+        this.bounds = other.bounds;
+        this.size = other.size;
+        this.hash = other.hash;
+        this.shared = true;
+        other.shared = true;
+    }
+
+    public boolean contains(int var) {
+        return this.nodeOf(var) >= 0;
+    }
+
+    /**
+     * Starts tracking var with the given (inclusive) bounds. Use Long.MIN_VALUE / Long.MAX_VALUE for unknown bounds.
+     */
+    public void addVar(int var, long lowerBound, long upperBound) {
+        if (this.contains(var)) {
+            throw new IllegalArgumentException("$" + var + " is already tracked");
+        }
+
+        this.prepareWrite(this.size + 1);
+        int node = this.size++;
+        this.vars[node] = var;
+        this.set(node, ZERO, upperBound == Long.MAX_VALUE ? INFINITY : upperBound);
+        this.set(ZERO, node, lowerBound == Long.MIN_VALUE ? INFINITY : -lowerBound);
+        this.set(node, node, 0);
+        // The only constraints of the new node go through the zero node, so this keeps the matrix closed
+        for (int i = 1; i < node; i++) {
+            this.set(node, i, add(this.get(node, ZERO), this.get(ZERO, i)));
+            this.set(i, node, add(this.get(i, ZERO), this.get(ZERO, node)));
+        }
+    }
+
+    /**
+     * Tightens the bounds of a tracked var, e.g. because its value has been narrowed elsewhere
+     *
+     * @return false if the bounds contradict the matrix, in which case the matrix is left unchanged
+     */
+    public boolean restrict(int var, long lowerBound, long upperBound) {
+        int node = this.nodeOf(var);
+        if (node < 0) {
+            throw new IllegalArgumentException("$" + var + " is not tracked");
+        }
+        if (upperBound != Long.MAX_VALUE && add(upperBound, this.get(ZERO, node)) < 0
+                || lowerBound != Long.MIN_VALUE && add(-lowerBound, this.get(node, ZERO)) < 0) {
+            return false;
+        }
+        return (upperBound == Long.MAX_VALUE || this.addNodeConstraint(node, ZERO, upperBound))
+                && (lowerBound == Long.MIN_VALUE || this.addNodeConstraint(ZERO, node, -lowerBound));
+    }
+
+    /**
+     * Upper bound of lhs - rhs, or INFINITY if unknown
+     */
+    public long bound(int lhs, int rhs) {
+        int i = this.nodeOf(lhs);
+        int j = this.nodeOf(rhs);
+        return i < 0 || j < 0 ? INFINITY : this.get(i, j);
+    }
+
+    public long upperBound(int var) {
+        int node = this.nodeOf(var);
+        return node < 0 ? Long.MAX_VALUE : this.get(node, ZERO);
+    }
+
+    public long lowerBound(int var) {
+        int node = this.nodeOf(var);
+        if (node < 0) {
+            return Long.MIN_VALUE;
+        }
+        long bound = this.get(ZERO, node);
+        return bound == INFINITY ? Long.MIN_VALUE : -bound;
+    }
+
+    public BooleanStatus check(int lhs, int rhs, Relation relation) {
+        long lhsMinusRhs = this.bound(lhs, rhs);
+        long rhsMinusLhs = this.bound(rhs, lhs);
+        return switch (relation) {
+            case LESS_THAN -> status(lhsMinusRhs <= -1, rhsMinusLhs <= 0);
+            case LESS_THAN_EQUAL -> status(lhsMinusRhs <= 0, rhsMinusLhs <= -1);
+            case GREATER_THAN -> status(rhsMinusLhs <= -1, lhsMinusRhs <= 0);
+            case GREATER_THAN_EQUAL -> status(rhsMinusLhs <= 0, lhsMinusRhs <= -1);
+            case EQUAL -> status(lhsMinusRhs <= 0 && rhsMinusLhs <= 0, lhsMinusRhs <= -1 || rhsMinusLhs <= -1);
+            case NOT_EQUAL -> status(lhsMinusRhs <= -1 || rhsMinusLhs <= -1, lhsMinusRhs <= 0 && rhsMinusLhs <= 0);
+        };
+    }
+
+    /**
+     * Adds the constraints for "lhs relation rhs". Both vars must be tracked.
+     * NOT_EQUAL cannot be expressed by a DBM and is therefore not supported.
+     *
+     * @return false if the constraint contradicts the known bounds, in which case the matrix is left unchanged
+     */
+    public boolean assertRelation(int lhs, int rhs, Relation relation) {
+        return switch (relation) {
+            case LESS_THAN -> this.addConstraint(lhs, rhs, -1);
+            case LESS_THAN_EQUAL -> this.addConstraint(lhs, rhs, 0);
+            case GREATER_THAN -> this.addConstraint(rhs, lhs, -1);
+            case GREATER_THAN_EQUAL -> this.addConstraint(rhs, lhs, 0);
+            case EQUAL -> this.bound(rhs, lhs) >= 0 && this.bound(lhs, rhs) >= 0
+                    && this.addConstraint(lhs, rhs, 0) && this.addConstraint(rhs, lhs, 0);
+            case NOT_EQUAL -> throw new UnsupportedOperationException("DBMs cannot express !=");
+        };
+    }
+
+    /**
+     * Adds lhs - rhs <= c and restores closure incrementally
+     */
+    private boolean addConstraint(int lhs, int rhs, long c) {
+        int x = this.nodeOf(lhs);
+        int y = this.nodeOf(rhs);
+        if (x < 0 || y < 0) {
+            throw new IllegalArgumentException("Both vars must be tracked");
+        }
+        return this.addNodeConstraint(x, y, c);
+    }
+
+    private boolean addNodeConstraint(int x, int y, long c) {
+        if (c >= this.get(x, y)) {
+            return true;
+        } else if (add(c, this.get(y, x)) < 0) {
+            return false;
+        }
+
+        this.prepareWrite(this.size);
+        for (int i = 0; i < this.size; i++) {
+            long viaX = this.get(i, x);
+            if (viaX == INFINITY) {
+                continue;
+            }
+            long toY = add(viaX, c);
+            for (int j = 0; j < this.size; j++) {
+                long candidate = add(toY, this.get(y, j));
+                if (candidate < this.get(i, j)) {
+                    this.set(i, j, candidate);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces every var id by mapping[id], dropping vars that are mapped to a negative id.
+     * Dropping nodes from a closed matrix keeps it closed.
+     */
+    public void remap(int[] mapping) {
+        int[] newVars = new int[this.vars.length];
+        long[] newBounds = new long[this.bounds.length];
+        int[] kept = new int[this.size];
+        int newSize = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (i == ZERO || mapping[this.vars[i]] >= 0) {
+                newVars[newSize] = i == ZERO ? -1 : mapping[this.vars[i]];
+                kept[newSize++] = i;
+            }
+        }
+        int stride = newVars.length;
+        for (int i = 0; i < newSize; i++) {
+            for (int j = 0; j < newSize; j++) {
+                newBounds[i * stride + j] = this.get(kept[i], kept[j]);
+            }
+        }
+        this.vars = newVars;
+        this.bounds = newBounds;
+        this.size = newSize;
+        this.shared = false;
+        this.hash = 0;
+    }
+
+    /**
+     * Least upper bound of both matrices, restricted to vars that are tracked by both and accepted by the filter.
+     * The pointwise maximum of two closed matrices is closed.
+     */
+    public static DifferenceBoundMatrix join(DifferenceBoundMatrix a, DifferenceBoundMatrix b, IntPredicate varFilter) {
+        DifferenceBoundMatrix result = new DifferenceBoundMatrix();
+        int[] aNodes = new int[a.size];
+        int[] bNodes = new int[a.size];
+        int count = 1; // Zero node
+        for (int i = 1; i < a.size; i++) {
+            int var = a.vars[i];
+            int bNode = b.nodeOf(var);
+            if (bNode >= 0 && varFilter.test(var)) {
+                result.prepareWrite(count + 1);
+                result.vars[count] = var;
+                aNodes[count] = i;
+                bNodes[count] = bNode;
+                count++;
+            }
+        }
+        result.size = count;
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < count; j++) {
+                result.set(i, j, Math.max(a.get(aNodes[i], aNodes[j]), b.get(bNodes[i], bNodes[j])));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether every bound of the more general matrix also holds in this matrix.
+     *
+     * @param mapping maps var ids of the general matrix to var ids of this matrix; vars mapped to a negative id are ignored
+     */
+    public boolean implies(DifferenceBoundMatrix general, int[] mapping) {
+        int[] nodes = new int[general.size];
+        for (int i = 1; i < general.size; i++) {
+            int var = general.vars[i];
+            nodes[i] = var < mapping.length && mapping[var] >= 0 ? this.nodeOf(mapping[var]) : -2;
+        }
+        for (int i = 0; i < general.size; i++) {
+            for (int j = 0; j < general.size; j++) {
+                long bound = general.get(i, j);
+                if (bound == INFINITY || nodes[i] == -2 || nodes[j] == -2) {
+                    continue;
+                }
+                if (nodes[i] < 0 || nodes[j] < 0 || this.get(nodes[i], nodes[j]) > bound) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private int nodeOf(int var) {
+        for (int i = 1; i < this.size; i++) {
+            if (this.vars[i] == var) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private long get(int i, int j) {
+        return this.bounds[i * this.vars.length + j];
+    }
+
+    private void set(int i, int j, long value) {
+        this.bounds[i * this.vars.length + j] = value;
+    }
+
+    private void prepareWrite(int requiredCapacity) {
+        this.hash = 0;
+        int capacity = this.vars.length;
+        if (requiredCapacity > capacity) {
+            int newCapacity = Math.max(capacity * 2, requiredCapacity);
+            long[] newBounds = new long[newCapacity * newCapacity];
+            for (int i = 0; i < this.size; i++) {
+                System.arraycopy(this.bounds, i * capacity, newBounds, i * newCapacity, this.size);
+            }
+            this.vars = Arrays.copyOf(this.vars, newCapacity);
+            this.bounds = newBounds;
+            this.shared = false;
+        } else if (this.shared) {
+            this.vars = this.vars.clone();
+            this.bounds = this.bounds.clone();
+            this.shared = false;
+        }
+    }
+
+    private static long add(long a, long b) {
+        if (a == INFINITY || b == INFINITY) {
+            return INFINITY;
+        }
+        long result = a + b;
+        if (((a ^ result) & (b ^ result)) < 0) {
+            // Overflow, saturate
+            return a > 0 ? INFINITY : Long.MIN_VALUE;
+        }
+        return result;
+    }
+
+    private static BooleanStatus status(boolean always, boolean never) {
+        if (always) {
+            return BooleanStatus.ALWAYS;
+        } else if (never) {
+            return BooleanStatus.NEVER;
+        } else {
+            return BooleanStatus.SOMETIMES;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DifferenceBoundMatrix that = (DifferenceBoundMatrix) o;
+        if (this.size != that.size || this.hashCode() != that.hashCode()) {
+            return false;
+        }
+        for (int i = 1; i < this.size; i++) {
+            if (this.vars[i] != that.vars[i]) {
+                return false;
+            }
+        }
+        for (int i = 0; i < this.size; i++) {
+            for (int j = 0; j < this.size; j++) {
+                if (this.get(i, j) != that.get(i, j)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        if (this.hash != 0) {
+            return this.hash;
+        }
+        int result = this.size;
+        for (int i = 0; i < this.size; i++) {
+            result = 31 * result + this.vars[i];
+            for (int j = 0; j < this.size; j++) {
+                result = 31 * result + Long.hashCode(this.get(i, j));
+            }
+        }
+        this.hash = result;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < this.size; i++) {
+            for (int j = 0; j < this.size; j++) {
+                long bound = this.get(i, j);
+                if (i != j && bound != INFINITY) {
+                    if (builder.length() > 1) {
+                        builder.append(", ");
+                    }
+                    builder.append(i == ZERO ? "0" : "$" + this.vars[i])
+                            .append(" - ")
+                            .append(j == ZERO ? "0" : "$" + this.vars[j])
+                            .append(" <= ")
+                            .append(bound);
+                }
+            }
+        }
+        return builder.append("}").toString();
+    }
+}
@@ -3,6 +3,8 @@ package de.firemage.flork.flow.engine;
 import de.firemage.flork.flow.BooleanStatus;
 import de.firemage.flork.flow.CachedMethod;
 import de.firemage.flork.flow.FlowContext;
+import de.firemage.flork.flow.PersistentMap;
+import de.firemage.flork.flow.PersistentVector;
 import de.firemage.flork.flow.exit.MethodExitState;
 import de.firemage.flork.flow.SetStack;
 import de.firemage.flork.flow.TypeId;
@@ -10,6 +12,7 @@ import de.firemage.flork.flow.analysis.MethodAnalysis;
 import de.firemage.flork.flow.value.BooleanValueSet;
 import de.firemage.flork.flow.value.BoxedIntValueSet;
 import de.firemage.flork.flow.value.IntValueSet;
+import de.firemage.flork.flow.value.LongValueSet;
 import de.firemage.flork.flow.value.Nullness;
 import de.firemage.flork.flow.value.NumericValueSet;
 import de.firemage.flork.flow.value.ObjectValueSet;
@@ -18,6 +21,8 @@ import de.firemage.flork.flow.value.VoidValue;
 import spoon.reflect.declaration.CtParameter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -27,12 +32,15 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
- * INVARIANT: Only the fields of this class are mutable. Everything else (VarStates, ValueSets, VarRelations, FieldIds, ...)
- * are IMMUTABLE. This ensures that a shallow copy of the datastructures of this class (namely the maps, as well as the varIdCounter) CLONES
- * the entire engine state.
+ * INVARIANT: Only the fields of this class are mutable. Everything else (VarStates, ValueSets, RelationSets, FieldIds, ...)
+ * are IMMUTABLE. The maps and lists are persistent datastructures, so a shallow copy of the fields of this class CLONES
+ * the entire engine state in O(1). Modifications reassign the fields and only copy the modified paths.
+ * The parts of the hash code are maintained incrementally as well, so hashing and rejecting unequal states is cheap.
  */
 public class EngineState {
     public static final int THIS_VALUE = 0;
+    // varsState is compacted at statement boundaries once it has grown by this many entries
+    private static final int COMPACTION_THRESHOLD = 64;
 
     final FlowContext context;
 
@@ -41,16 +49,18 @@ public class EngineState {
     // because we take the else-branch of an if statement)
     // When normal program flow of the analyzed program overwrites a value, a new id needs to be created
     // And a new value needs to be stored in this map
-    final List<VarState> varsState;
+    PersistentVector<VarState> varsState;
+    // Sum of ZobristHash.slot(id, varsState[id].hashCode()), maintained by setVar & createNewVarEntry
+    private int varsHash;
 
     // The current state of the stack
     final ValueStack stack;
     // Store the current value of each field / local where we have any knowledge
-    final Map<FieldId, Integer> liveFields;
+    PersistentMap<FieldId, Integer> liveFields;
     // Maps vars to their *declared* type. Useful for resetting values
-    private final Map<FieldId, TypeId> types;
+    PersistentMap<FieldId, TypeId> types;
     // Stores the *initial* value of each parameter. Useful to construct preconditions for states - immutable
-    private final List<Integer> initialParamValues;
+    private List<Integer> initialParamValues;
 
     // Fields that have been written to in a given context
     // Useful e.g. to reset all written fields after loops
@@ -59,44 +69,61 @@ public class EngineState {
 
     TypeId activeException = null;
 
-    public EngineState(TypeId thisType, ObjectValueSet thisPointer, List<CtParameter<?>> parameters, FlowContext context) {
+    // Only used by the DIFFERENCE_BOUNDS relational domain, null otherwise
+    private DifferenceBoundMatrix bounds;
+
+    // Size of varsState after the last compaction
+    private int compactedSize = 0;
+
+    public EngineState(TypeId thisType, ObjectValueSet thisPointer, List<CtParameter<?>> parameters,
+                       List<ValueSet> parameterValues, FlowContext context) {
         this.context = context;
 
-        this.liveFields = new HashMap<>(parameters.size() + 1);
-        this.varsState = new ArrayList<>(parameters.size() + 1);
-        this.types = new HashMap<>(parameters.size() + 1);
-        this.initialParamValues = new ArrayList<>(parameters.size() + 1);
+        this.liveFields = PersistentMap.empty();
+        this.varsState = PersistentVector.empty();
+        this.types = PersistentMap.empty();
+        List<Integer> initialParamValues = new ArrayList<>(parameters.size() + 1);
 
         if (thisPointer != null) {
             if (this.createNewVarEntry(new VarState(thisPointer)) != THIS_VALUE) {
                 throw new IllegalStateException("Value of THIS is unexpectedly not 0 - this is a bug");
             }
-            this.liveFields.put(FieldId.THIS, THIS_VALUE); // Store the id to the this value
-            this.initialParamValues.add(THIS_VALUE);
-            this.types.put(FieldId.THIS, thisType); // Remember which type this is
+            this.liveFields = this.liveFields.put(FieldId.THIS, THIS_VALUE); // Store the id to the this value
+            initialParamValues.add(THIS_VALUE);
+            this.types = this.types.put(FieldId.THIS, thisType); // Remember which type this is
         }
 
-        for (CtParameter<?> parameter : parameters) {
-            FieldId fieldId = FieldId.forLocal(parameter.getSimpleName());
-            int value = this.createNewVarEntry(new VarState(ValueSet.topForType(new TypeId(parameter.getType()), this.context)));
-            this.liveFields.put(fieldId, value);
-            this.initialParamValues.add(value);
-            this.types.put(FieldId.forLocal(fieldId.fieldName()), TypeId.ofFallible(parameter.getType()).orElseThrow());
+        for (int i = 0; i < parameters.size(); i++) {
+            CtParameter<?> parameter = parameters.get(i);
+            FieldId fieldId = FieldId.forLocal(this.symbol(parameter.getSimpleName()));
+            TypeId type = this.context.getType(parameter.getType());
+            ValueSet initialValue = parameterValues == null ? ValueSet.topForType(type, this.context) : parameterValues.get(i);
+            int value = this.createNewVarEntry(new VarState(initialValue));
+            this.liveFields = this.liveFields.put(fieldId, value);
+            initialParamValues.add(value);
+            this.types = this.types.put(fieldId, type);
         }
+        this.initialParamValues = List.copyOf(initialParamValues);
 
         this.stack = new ValueStack();
-        this.writtenLocalsAndOwnFields = new SetStack<>(2);
+        this.writtenLocalsAndOwnFields = new SetStack<>();
+        if (context.getOptions().relationalDomain() == RelationalDomain.DIFFERENCE_BOUNDS) {
+            this.bounds = new DifferenceBoundMatrix();
+        }
     }
 
     private EngineState(EngineState other) {
         this.context = other.context;
-        this.varsState = new ArrayList<>(other.varsState);
+        this.varsState = other.varsState;
+        this.varsHash = other.varsHash;
         this.stack = new ValueStack(other.stack);
-        this.liveFields = new HashMap<>(other.liveFields);
-        this.types = new HashMap<>(other.types);
-        this.initialParamValues = new ArrayList<>(other.initialParamValues);
+        this.liveFields = other.liveFields;
+        this.types = other.types;
+        this.initialParamValues = other.initialParamValues; // Immutable
         this.writtenLocalsAndOwnFields = new SetStack<>(other.writtenLocalsAndOwnFields);
         this.activeException = other.activeException;
+        this.compactedSize = other.compactedSize;
+        this.bounds = other.bounds == null ? null : new DifferenceBoundMatrix(other.bounds);
     }
 
     public EngineState fork() {
@@ -115,14 +142,18 @@ public class EngineState {
         this.activeException = null;
     }
 
+    public int getVarCount() {
+        return this.varsState.size();
+    }
+
     public List<ValueSet> getInitialState() {
         return this.initialParamValues.stream().map(this.varsState::get).map(VarState::value).toList();
     }
 
     public void createVariable(String name, TypeId type) {
-        FieldId field = FieldId.forLocal(name);
-        this.liveFields.put(field, this.createNewVarEntry(new VarState(ValueSet.topForType(type, this.context))));
-        this.types.put(FieldId.forLocal(name), type);
+        FieldId field = FieldId.forLocal(this.symbol(name));
+        this.liveFields = this.liveFields.put(field, this.createNewVarEntry(new VarState(ValueSet.topForType(type, this.context))));
+        this.types = this.types.put(field, type);
     }
 
     public void beginWritesScope() {
@@ -140,23 +171,23 @@ public class EngineState {
     public void resetWrittenLocalsAndFields() {
         // We reset all locals and own fields that have been written to in the current context
         // We unconditionally reset all "transitive fields" (i.e. fields of fields of this)
-        this.liveFields.entrySet().removeIf(f -> {
+        var written = this.writtenLocalsAndOwnFields.peek();
+        this.liveFields = this.liveFields.replaceAll((field, value) -> {
             // Edit the entry of locals to their respective top type
-            if (this.writtenLocalsAndOwnFields.peek().contains(f.getKey())) {
-                ValueSet newValue = ValueSet.topForType(this.types.get(f.getKey()), this.context);
-                f.setValue(this.createNewVarEntry(new VarState(newValue)));
-                return false;
+            if (written.contains(field)) {
+                ValueSet newValue = ValueSet.topForType(this.types.get(field), this.context);
+                return this.createNewVarEntry(new VarState(newValue));
             }
-            return !f.getKey().isLocalOrOwnField();
+            return field.isLocalOrOwnField() ? value : null;
         });
     }
 
     public void resetTransitiveFields() {
-        this.liveFields.entrySet().removeIf(f -> !f.getKey().isLocalOrOwnField());
+        this.liveFields = this.liveFields.removeIf((field, value) -> !field.isLocalOrOwnField());
     }
 
     public void resetAllFields() {
-        this.liveFields.entrySet().removeIf(f -> !f.getKey().isLocal());
+        this.liveFields = this.liveFields.removeIf((field, value) -> !field.isLocal());
     }
 
     public void pushValue(ValueSet value) {
@@ -164,11 +195,11 @@ public class EngineState {
     }
 
     public void pushThis() {
-        this.pushVar("this");
+        this.stack.push(this.liveFields.get(FieldId.THIS));
     }
 
     public void pushVar(String variable) {
-        this.stack.push(this.liveFields.get(FieldId.forLocal(variable)));
+        this.stack.push(this.liveFields.get(FieldId.forLocal(this.symbol(variable))));
     }
 
     public void pushField(String field) {
@@ -177,29 +208,30 @@ public class EngineState {
         // Parent cannot be null
         this.assertNonNull(parent);
 
-        var fieldId = new FieldId(parent, field);
+        var fieldId = FieldId.forField(parent, this.symbol(field));
 
-        int value = this.liveFields.computeIfAbsent(fieldId, id -> {
+        Integer value = this.liveFields.get(fieldId);
+        if (value == null) {
             VarState parentState = this.varsState.get(parent);
             TypeId type = ((ObjectValueSet) parentState.value()).getFieldType(field);
 
-            int valueId = this.createNewVarEntry(new VarState(ValueSet.topForType(type, this.context)));
-            this.types.put(id, type); // Record the type of the field
-            return valueId;
-        });
-        this.stack.push(this.liveFields.get(fieldId));
+            value = this.createNewVarEntry(new VarState(ValueSet.topForType(type, this.context)));
+            this.liveFields = this.liveFields.put(fieldId, value);
+            this.types = this.types.put(fieldId, type); // Record the type of the field
+        }
+        this.stack.push(value);
     }
 
     public void storeVar(String variable) {
-        FieldId fieldId = FieldId.forLocal(variable);
-        this.liveFields.put(fieldId, this.stack.peek());
+        FieldId fieldId = FieldId.forLocal(this.symbol(variable));
+        this.liveFields = this.liveFields.put(fieldId, this.stack.peek());
         this.recordWrite(fieldId);
     }
 
     public void storeField(String name) {
         int objValue = this.stack.pop();
-        FieldId fieldId = FieldId.forField(objValue, name);
-        this.liveFields.put(fieldId, this.stack.peek());
+        FieldId fieldId = FieldId.forField(objValue, this.symbol(name));
+        this.liveFields = this.liveFields.put(fieldId, this.stack.peek());
 
         if (objValue == THIS_VALUE) {
             this.recordWrite(fieldId);
@@ -207,7 +239,7 @@ public class EngineState {
 
         // We know that the object cannot be null, or an exception would have been thrown
         VarState oldState = this.varsState.get(objValue);
-        this.varsState.set(objValue, new VarState(((ObjectValueSet) oldState.value()).asNonNull(),
+        this.setVar(objValue, new VarState(((ObjectValueSet) oldState.value()).asNonNull(),
                 oldState.relations()));
     }
 
@@ -237,6 +269,101 @@ public class EngineState {
 
     public void clearStack() {
         this.stack.clear();
+
+        // Statement boundaries are a good place to compact, since there are no temporaries on the stack
+        if (this.varsState.size() - this.compactedSize > COMPACTION_THRESHOLD) {
+            this.compact();
+        }
+    }
+
+    /**
+     * Removes all var entries that are not reachable from locals, fields, the stack, the initial parameter values
+     * or relations of reachable vars, and renumbers the remaining ones.
+     * Renumbering preserves the order of ids, so THIS_VALUE and the initial parameter values keep their ids.
+     */
+    void compact() {
+        int size = this.varsState.size();
+        int[] mapping = new int[size];
+        Arrays.fill(mapping, -1);
+
+        // Mark all reachable vars
+        int[] worklist = new int[size];
+        int worklistSize = 0;
+        for (int id : this.initialParamValues) {
+            worklistSize = mark(id, mapping, worklist, worklistSize);
+        }
+        for (var entry : this.liveFields) {
+            if (entry.getKey().parent() >= 0) {
+                worklistSize = mark(entry.getKey().parent(), mapping, worklist, worklistSize);
+            }
+            worklistSize = mark(entry.getValue(), mapping, worklist, worklistSize);
+        }
+        for (int i = 0; i < this.stack.size(); i++) {
+            worklistSize = mark(this.stack.peek(i), mapping, worklist, worklistSize);
+        }
+        while (worklistSize > 0) {
+            int id = worklist[--worklistSize];
+            RelationSet relations = this.varsState.get(id).relations();
+            for (int i = 0; i < relations.size(); i++) {
+                worklistSize = mark(relations.rhs(i), mapping, worklist, worklistSize);
+            }
+        }
+
+        // Assign new ids in ascending order
+        int liveCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (mapping[i] >= 0) {
+                mapping[i] = liveCount++;
+            }
+        }
+        this.compactedSize = liveCount;
+        if (liveCount == size) {
+            return;
+        }
+
+        PersistentVector<VarState> newVarsState = PersistentVector.empty();
+        for (int i = 0; i < size; i++) {
+            if (mapping[i] >= 0) {
+                newVarsState = newVarsState.append(this.varsState.get(i).remap(mapping));
+            }
+        }
+        this.varsState = newVarsState;
+        this.varsHash = this.computeVarsHash();
+
+        PersistentMap<FieldId, Integer> newLiveFields = PersistentMap.empty();
+        for (var entry : this.liveFields) {
+            newLiveFields = newLiveFields.put(remapField(entry.getKey(), mapping), mapping[entry.getValue()]);
+        }
+        this.liveFields = newLiveFields;
+
+        // Types of fields of dead objects are dropped
+        PersistentMap<FieldId, TypeId> newTypes = PersistentMap.empty();
+        for (var entry : this.types) {
+            if (entry.getKey().isLocal() || mapping[entry.getKey().parent()] >= 0) {
+                newTypes = newTypes.put(remapField(entry.getKey(), mapping), entry.getValue());
+            }
+        }
+        this.types = newTypes;
+
+        this.initialParamValues = this.initialParamValues.stream().map(id -> mapping[id]).toList();
+        this.stack.remap(mapping);
+        if (this.bounds != null) {
+            // Bounds never keep a var alive - dead vars can simply be projected out
+            this.bounds.remap(mapping);
+        }
+        // writtenLocalsAndOwnFields only contains locals and own fields, whose ids do not change
+    }
+
+    private static int mark(int id, int[] mapping, int[] worklist, int worklistSize) {
+        if (mapping[id] < 0) {
+            mapping[id] = 0;
+            worklist[worklistSize++] = id;
+        }
+        return worklistSize;
+    }
+
+    private static FieldId remapField(FieldId field, int[] mapping) {
+        return field.isLocal() ? field : FieldId.forField(mapping[field.parent()], field.name());
     }
 
     public void negate() {
@@ -433,7 +560,7 @@ public class EngineState {
     }
 
     public List<EngineState> callStatic(CachedMethod method) {
-        return this.call(-1, method.getFixedCallAnalysis());
+        return this.call(-1, this.getFixedCallAnalysis(method));
     }
 
     public List<EngineState> callVirtual(CachedMethod method) {
@@ -441,7 +568,7 @@ public class EngineState {
         this.assertNonNull(thisVar);
 
         if (((ObjectValueSet) this.varsState.get(thisVar).value()).isExact()) {
-            return this.call(thisVar, method.getFixedCallAnalysis());
+            return this.call(thisVar, this.getFixedCallAnalysis(method));
         } else {
             List<EngineState> resultStates = new ArrayList<>();
             for (MethodAnalysis analysis : method.getVirtualCallAnalyses()) {
@@ -459,7 +586,21 @@ public class EngineState {
 
     public List<EngineState> callConstructor(CachedMethod method) {
         int thisVar = this.stack.peek(method.getExecutable().getParameters().size());
-        return this.call(thisVar, method.getFixedCallAnalysis());
+        return this.call(thisVar, this.getFixedCallAnalysis(method));
+    }
+
+    private MethodAnalysis getFixedCallAnalysis(CachedMethod method) {
+        if (this.context.getOptions().specializationDepth() <= 0) {
+            return method.getFixedCallAnalysis();
+        }
+
+        // The first argument is on top of the stack
+        int parameterCount = method.getExecutable().getParameters().size();
+        List<ValueSet> arguments = new ArrayList<>(parameterCount);
+        for (int i = 0; i < parameterCount; i++) {
+            arguments.add(this.varsState.get(this.stack.peek(i)).value());
+        }
+        return method.getFixedCallAnalysis(arguments);
     }
 
     public void box() {
@@ -518,26 +659,22 @@ public class EngineState {
         // Pop the caller
         this.pop();
 
+        List<ValueSet> arguments = new ArrayList<>(parameterCount);
+        for (int i = 0; i < parameterCount; i++) {
+            arguments.add(this.varsState.get(parameters.get(i)).value());
+        }
+
         List<EngineState> result = new ArrayList<>();
-        returnState:
-        for (MethodExitState exitState : method.getReturnStates()) {
+        for (MethodExitState exitState : method.getExitStateIndex().getCompatibleExitStates(arguments)) {
             var precondition = exitState.getParameterPrecondition();
 
-            // Check whether the preconditions apply
-            for (int i = 0; i < parameterCount; i++) {
-                var param = this.varsState.get(parameters.get(i)).value();
-                if (!precondition.get(i).isCompatible(param)) {
-                    continue returnState;
-                }
-            }
-
             // The preconditions apply, so fork the engine and narrow parameters down to the preconditions
             EngineState newState = this.fork();
             for (int i = 0; i < parameterCount; i++) {
                 // newState.assertVarValue(parameters.get(i), precondition.get(i));
                 var oldState = newState.varsState.get(parameters.get(i));
-                var newValue = precondition.get(i).intersect(oldState.value());
-                this.varsState.set(parameters.get(i), new VarState(newValue, oldState.relations()));
+                var newValue = this.context.getValueSets().intersect(precondition.get(i), oldState.value());
+                newState.setVar(parameters.get(i), new VarState(newValue, oldState.relations()));
             }
 
             // Handle exit state
@@ -572,18 +709,18 @@ public class EngineState {
                 throw new IllegalStateException(this.varsState.get(id).value() + " is not a superset of " + value);
             }
         } else {
-            this.varsState.set(id, new VarState(value, oldState.relations()));
+            this.setVar(id, new VarState(value, oldState.relations()));
         }
     }
 
     void assertNonNull(int id) {
         var oldState = this.varsState.get(id);
-        this.varsState.set(id, new VarState(((ObjectValueSet) oldState.value()).asNonNull(), oldState.relations()));
+        this.setVar(id, new VarState(((ObjectValueSet) oldState.value()).asNonNull(), oldState.relations()));
     }
 
     private void recordWrite(FieldId field) {
         if (!field.isLocalOrOwnField()) {
-            throw new IllegalArgumentException("Cannot write to non-local field " + field);
+            throw new IllegalArgumentException("Cannot write to non-local field " + field.toString(this.context.getSymbols()));
         }
 
         if (this.writtenLocalsAndOwnFields.peek() != null) {
@@ -592,38 +729,98 @@ public class EngineState {
     }
 
     private void tryAssertRelation(int lhs, int rhs, Relation relation) {
-        this.addRelationAndExtendTransitive(lhs, new VarRelation(rhs, relation));
+        if (this.bounds != null && relation != Relation.NOT_EQUAL && canTrackBounds(this.varsState.get(lhs).value())
+                && canTrackBounds(this.varsState.get(rhs).value())) {
+            this.assertBoundedRelation(lhs, rhs, relation);
+        } else {
+            this.addRelationAndExtendTransitive(lhs, rhs, relation);
+        }
     }
 
-    private void addRelationAndExtendTransitive(int lhs, VarRelation relation) {
-        if (this.varsState.get(lhs).relations().contains(relation) || relation.rhs() == lhs) {
+    private void assertBoundedRelation(int lhs, int rhs, Relation relation) {
+        if (!this.trackBounds(lhs) || !this.trackBounds(rhs) || !this.bounds.assertRelation(lhs, rhs, relation)) {
+            // Contradiction, i.e. this path is infeasible. We just don't learn anything here, which is still sound
             return;
         }
+        this.trimToBounds(lhs);
+        this.trimToBounds(rhs);
+    }
 
-        VarState local = addRelationAndTrimValue(this.varsState.get(lhs), relation.rhs(), relation.relation());
-        this.varsState.set(lhs, local);
-        // this.localsState.compute(relation.rhs(), (k, v) -> v.addRelation(new VarRelation(lhs, relation.relation().invert())));
+    /**
+     * Adds the var to the matrix, or tightens its bounds if its value has been narrowed since it was added
+     */
+    private boolean trackBounds(int id) {
+        ValueSet value = this.varsState.get(id).value();
+        long min;
+        long max;
+        if (value instanceof IntValueSet set) {
+            min = set.min();
+            max = set.max();
+        } else {
+            LongValueSet set = (LongValueSet) value;
+            min = set.min();
+            max = set.max();
+        }
 
-        if (relation.relation() == Relation.NOT_EQUAL) {
+        if (this.bounds.contains(id)) {
+            return this.bounds.restrict(id, min, max);
+        } else {
+            this.bounds.addVar(id, min, max);
+            return true;
+        }
+    }
+
+    private void trimToBounds(int id) {
+        var oldState = this.varsState.get(id);
+        long min = this.bounds.lowerBound(id);
+        long max = this.bounds.upperBound(id);
+        ValueSet newValue;
+        if (oldState.value() instanceof IntValueSet set) {
+            newValue = set.splitAtAbove(min).splitAtBelow(max);
+        } else {
+            newValue = oldState.value().intersect(LongValueSet.ofRange(min, max));
+        }
+        if (!newValue.equals(oldState.value())) {
+            this.setVar(id, new VarState(newValue, oldState.relations()));
+        }
+    }
+
+    private static boolean canTrackBounds(ValueSet value) {
+        return (value instanceof IntValueSet || value instanceof LongValueSet) && !value.isEmpty();
+    }
+
+    private void addRelationAndExtendTransitive(int lhs, int rhs, Relation relation) {
+        if (rhs == lhs || this.varsState.get(lhs).relations().contains(rhs, relation)) {
+            return;
+        }
+
+        VarState local = addRelationAndTrimValue(this.varsState.get(lhs), rhs, relation);
+        this.setVar(lhs, local);
+
+        if (relation == Relation.NOT_EQUAL) {
             // != is not transitive, but symmetric
-            this.varsState.set(relation.rhs(),
-                    addRelationAndTrimValue(this.varsState.get(relation.rhs()), lhs, Relation.NOT_EQUAL));
+            this.setVar(rhs,
+                    addRelationAndTrimValue(this.varsState.get(rhs), lhs, Relation.NOT_EQUAL));
             return;
         }
 
-        local.relations().stream()
-                .filter(r -> r.relation() == relation.relation().invert())
-                .forEach(r -> addRelationAndExtendTransitive(r.rhs(), relation));
-        local.relations().stream()
-                .filter(r -> r.relation() == relation.relation())
-                .forEach(r -> addRelationAndExtendTransitive(r.rhs(), new VarRelation(lhs, relation.relation().invert())));
+        RelationSet relations = local.relations();
+        Relation inverted = relation.invert();
+        for (int i = 0; i < relations.size(); i++) {
+            if (relations.relation(i) == inverted) {
+                addRelationAndExtendTransitive(relations.rhs(i), rhs, relation);
+            }
+        }
+        for (int i = 0; i < relations.size(); i++) {
+            if (relations.relation(i) == relation) {
+                addRelationAndExtendTransitive(relations.rhs(i), lhs, inverted);
+            }
+        }
     }
 
     private VarState addRelationAndTrimValue(VarState state, int rhs, Relation relation) {
-        Set<VarRelation> relations = new HashSet<>(state.relations());
-        relations.add(new VarRelation(rhs, relation));
         ValueSet value = state.value().removeNotFulfillingValues(this.varsState.get(rhs).value(), relation);
-        return new VarState(value, relations);
+        return new VarState(value, state.relations().with(rhs, relation));
     }
 
     private BooleanStatus checkRelation(int lhs, int rhs, Relation relation) {
@@ -634,6 +831,12 @@ public class EngineState {
                 return BooleanStatus.NEVER;
             }
         }
+        if (this.bounds != null) {
+            BooleanStatus status = this.bounds.check(lhs, rhs, relation);
+            if (status != BooleanStatus.SOMETIMES) {
+                return status;
+            }
+        }
         if (hasRelation(lhs, rhs, relation)) {
             return BooleanStatus.ALWAYS;
         } else if (hasRelation(lhs, rhs, relation.negate())) {
@@ -644,40 +847,387 @@ public class EngineState {
     }
 
     private boolean hasRelation(int lhs, int rhs, Relation relation) {
-        for (VarRelation r : this.varsState.get(lhs).relations()) {
-            if (r.relation().implies(relation) && r.rhs() == rhs) {
-                return true;
+        return this.varsState.get(lhs).relations().containsImplying(rhs, relation);
+    }
+
+    /**
+     * A cheap hash over the parts of the state that must be equal for one state to subsume another
+     * (tracked locals and fields, stack depth and the active exception).
+     * The hash of the tracked keys is maintained incrementally by the map, so this is O(1).
+     */
+    int shapeHash() {
+        int result = this.liveFields.keyHash();
+        result = 31 * result + this.stack.size();
+        result = 31 * result + (this.activeException == null ? 0 : this.activeException.hashCode());
+        return result;
+    }
+
+    /**
+     * Checks whether every concrete state described by this state is also described by the other state.
+     * This is the case if both states track the same locals and fields, each of the other state's values is a superset
+     * of the respective value of this state, and each relation or alias of the other state also holds in this state.
+     */
+    boolean isSubsumedBy(EngineState other) {
+        if (this == other) {
+            return true;
+        } else if (this.liveFields.size() != other.liveFields.size()
+                || this.stack.size() != other.stack.size()
+                || this.initialParamValues.size() != other.initialParamValues.size()
+                || !Objects.equals(this.activeException, other.activeException)
+                || !other.writtenLocalsAndOwnFields.covers(this.writtenLocalsAndOwnFields)) {
+            return false;
+        }
+
+        // Maps var ids of the other state to var ids of this state
+        // If the other state uses one var for two locations, this state must do so too, since this is an alias
+        int[] mapping = new int[other.varsState.size()];
+        Arrays.fill(mapping, -1);
+
+        for (int i = 0; i < this.initialParamValues.size(); i++) {
+            if (!other.coversVar(other.initialParamValues.get(i), this, this.initialParamValues.get(i), mapping)) {
+                return false;
+            }
+        }
+        for (int i = 0; i < this.stack.size(); i++) {
+            if (!other.coversVar(other.stack.peek(i), this, this.stack.peek(i), mapping)) {
+                return false;
             }
         }
-        return false;
+        for (var entry : this.liveFields) {
+            FieldId field = entry.getKey();
+            Integer otherValue = other.liveFields.get(field);
+            if (otherValue == null || !other.coversVar(otherValue, this, entry.getValue(), mapping)) {
+                return false;
+            }
+            // The parent is referenced by its id, so it must be the same var in both states
+            if (!field.isLocal() && !other.coversVar(field.parent(), this, field.parent(), mapping)) {
+                return false;
+            }
+        }
+
+        // Relations of the other state must also hold in this state
+        if (this.bounds != null && !this.bounds.implies(other.bounds, mapping)) {
+            return false;
+        }
+        for (int otherId = 0; otherId < mapping.length; otherId++) {
+            if (mapping[otherId] < 0) {
+                continue;
+            }
+            VarState specific = this.varsState.get(mapping[otherId]);
+            RelationSet relations = other.varsState.get(otherId).relations();
+            for (int i = 0; i < relations.size(); i++) {
+                int rhs = mapping[relations.rhs(i)];
+                if (rhs < 0 || !specific.relations().contains(rhs, relations.relation(i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Estimates how much precision would be lost by merging the two states.
+     * Each location (parameter, stack slot, local or field) adds 0 if its values are equal, 1 if they can be merged
+     * exactly, and 2 otherwise. Locals and fields that are only tracked by one of the states are forgotten and add 2.
+     *
+     * @return the cost, or -1 if the states cannot be merged
+     */
+    static int mergeCost(EngineState a, EngineState b) {
+        if (!canMerge(a, b)) {
+            return -1;
+        }
+
+        int cost = 0;
+        for (int i = 0; i < a.initialParamValues.size(); i++) {
+            int locationCost = locationMergeCost(a, a.initialParamValues.get(i), b, b.initialParamValues.get(i));
+            if (locationCost < 0) {
+                return -1;
+            }
+            cost += locationCost;
+        }
+        for (int i = 0; i < a.stack.size(); i++) {
+            int locationCost = locationMergeCost(a, a.stack.peek(i), b, b.stack.peek(i));
+            if (locationCost < 0) {
+                return -1;
+            }
+            cost += locationCost;
+        }
+        List<MatchedField> fields = matchFields(a, b);
+        for (MatchedField field : fields) {
+            // The parent is a paired location itself, so it has already been accounted for
+            int locationCost = locationMergeCost(a, field.aValue(), b, field.bValue());
+            if (locationCost < 0) {
+                return -1;
+            }
+            cost += locationCost;
+        }
+        if (a.bounds != null && !a.bounds.equals(b.bounds)) {
+            cost++;
+        }
+        return cost + 2 * (a.liveFields.size() - fields.size()) + 2 * (b.liveFields.size() - fields.size());
+    }
+
+    /**
+     * Creates a state that describes (at least) all concrete states described by a or b.
+     * Locals and fields that are only tracked by one of the states are forgotten, and relations are only kept
+     * if they hold in both states. The states must be mergeable, see {@link #mergeCost(EngineState, EngineState)}.
+     */
+    static EngineState merge(EngineState a, EngineState b) {
+        EngineState merged = a.fork();
+        // Maps pairs of (a's id, b's id) to the id in the merged state, so that aliases that exist in both states are kept
+        Map<Long, Integer> mergedIds = new HashMap<>();
+        // Ids that denote the same location in both states
+        BitSet sharedIds = new BitSet();
+
+        List<Integer> initialParamValues = new ArrayList<>(a.initialParamValues.size());
+        for (int i = 0; i < a.initialParamValues.size(); i++) {
+            initialParamValues.add(merged.mergeVar(a, a.initialParamValues.get(i), b, b.initialParamValues.get(i),
+                    mergedIds, sharedIds));
+        }
+        merged.initialParamValues = List.copyOf(initialParamValues);
+
+        for (int i = 0; i < a.stack.size(); i++) {
+            merged.stack.overwrite(merged.mergeVar(a, a.stack.peek(i), b, b.stack.peek(i), mergedIds, sharedIds), i);
+        }
+
+        PersistentMap<FieldId, Integer> liveFields = PersistentMap.empty();
+        // Types are keyed like liveFields, so they are rebuilt for the merged parent ids
+        PersistentMap<FieldId, TypeId> types = PersistentMap.empty();
+        for (var entry : a.types) {
+            if (entry.getKey().isLocal()) {
+                types = types.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (MatchedField field : matchFields(a, b)) {
+            FieldId mergedField = field.aField();
+            FieldId bField = mergedField;
+            if (!mergedField.isLocal()) {
+                // The parents have been merged before, since fields are matched in discovery order
+                int parent = mergedIds.get(pairKey(mergedField.parent(), field.bParent()));
+                mergedField = FieldId.forField(parent, mergedField.name());
+                bField = FieldId.forField(field.bParent(), mergedField.name());
+            }
+            liveFields = liveFields.put(mergedField,
+                    merged.mergeVar(a, field.aValue(), b, field.bValue(), mergedIds, sharedIds));
+            // A field that was only stored to in a has no recorded type there
+            TypeId type = a.types.get(field.aField());
+            if (type == null) {
+                type = b.types.get(bField);
+            }
+            if (type != null) {
+                types = types.put(mergedField, type);
+            }
+        }
+        merged.liveFields = liveFields;
+        merged.types = types;
+
+        // Relations must hold in both states, and must only refer to vars that are the same in both states
+        for (int id = sharedIds.nextSetBit(0); id >= 0; id = sharedIds.nextSetBit(id + 1)) {
+            RelationSet relations = a.varsState.get(id).relations().intersect(b.varsState.get(id).relations(), sharedIds::get);
+            merged.setVar(id, new VarState(merged.varsState.get(id).value(), relations));
+        }
+
+        if (merged.bounds != null) {
+            merged.bounds = DifferenceBoundMatrix.join(a.bounds, b.bounds, sharedIds::get);
+        }
+
+        merged.writtenLocalsAndOwnFields.addAll(b.writtenLocalsAndOwnFields);
+        return merged;
+    }
+
+    private static boolean canMerge(EngineState a, EngineState b) {
+        return a.stack.size() == b.stack.size()
+                && a.initialParamValues.size() == b.initialParamValues.size()
+                && a.writtenLocalsAndOwnFields.size() == b.writtenLocalsAndOwnFields.size()
+                && Objects.equals(a.activeException, b.activeException);
+    }
+
+    /**
+     * Pairs the locals and fields of both states that denote the same location.
+     * Var ids are numbered independently per state, so fields are not matched by the raw id of their parent, but by
+     * the partners of their parent: the vars of b that are paired with it through a parameter, stack slot, local or
+     * already matched field. A var has several partners if the aliases differ between the states.
+     * Fields are returned in discovery order, so the parent of each field is paired before the field itself.
+     */
+    private static List<MatchedField> matchFields(EngineState a, EngineState b) {
+        Map<Integer, List<Integer>> partners = new HashMap<>();
+        for (int i = 0; i < a.initialParamValues.size(); i++) {
+            addPartner(partners, a.initialParamValues.get(i), b.initialParamValues.get(i));
+        }
+        for (int i = 0; i < a.stack.size(); i++) {
+            addPartner(partners, a.stack.peek(i), b.stack.peek(i));
+        }
+
+        List<MatchedField> result = new ArrayList<>();
+        Set<FieldId> done = new HashSet<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (var entry : a.liveFields) {
+                FieldId field = entry.getKey();
+                if (done.contains(field)) {
+                    continue;
+                }
+
+                int bParent = -1;
+                Integer bValue;
+                if (field.isLocal()) {
+                    bValue = b.liveFields.get(field);
+                } else {
+                    List<Integer> parentPartners = partners.get(field.parent());
+                    if (parentPartners == null) {
+                        // The parent may still be paired through another field
+                        continue;
+                    }
+                    bValue = null;
+                    for (int i = 0; i < parentPartners.size() && bValue == null; i++) {
+                        bParent = parentPartners.get(i);
+                        bValue = b.liveFields.get(FieldId.forField(bParent, field.name()));
+                    }
+                }
+
+                if (field.isLocal() || bValue != null) {
+                    // Unmatched fields are checked again if their parent gains another partner
+                    done.add(field);
+                }
+                if (bValue != null) {
+                    result.add(new MatchedField(field, bParent, entry.getValue(), bValue));
+                    addPartner(partners, entry.getValue(), bValue);
+                    changed = true;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void addPartner(Map<Integer, List<Integer>> partners, int aId, int bId) {
+        List<Integer> list = partners.computeIfAbsent(aId, id -> new ArrayList<>(1));
+        if (!list.contains(bId)) {
+            list.add(bId);
+        }
+    }
+
+    private static long pairKey(int aId, int bId) {
+        return ((long) aId << 32) | bId;
+    }
+
+    /**
+     * @param bParent the partner of aField's parent in b, or -1 for locals
+     */
+    private record MatchedField(FieldId aField, int bParent, int aValue, int bValue) {
+    }
+
+    private static int locationMergeCost(EngineState a, int aId, EngineState b, int bId) {
+        VarState aState = a.varsState.get(aId);
+        VarState bState = b.varsState.get(bId);
+        if (aState == bState) {
+            return 0;
+        } else if (aState.value().getClass() != bState.value().getClass()) {
+            return -1;
+        } else if (aState.value().equals(bState.value())) {
+            return aState.relations().equals(bState.relations()) ? 0 : 1;
+        } else if (aState.value().tryMergeExact(bState.value()) != null) {
+            return 1;
+        } else {
+            return 2;
+        }
+    }
+
+    private int mergeVar(EngineState a, int aId, EngineState b, int bId, Map<Long, Integer> mergedIds, BitSet sharedIds) {
+        long key = pairKey(aId, bId);
+        Integer existing = mergedIds.get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        ValueSet aValue = a.varsState.get(aId).value();
+        ValueSet bValue = b.varsState.get(bId).value();
+        ValueSet value = this.context.getValueSets().merge(aValue, bValue);
+        int result;
+        if (aId == bId) {
+            // Relations are fixed later
+            this.setVar(aId, new VarState(value, a.varsState.get(aId).relations()));
+            sharedIds.set(aId);
+            result = aId;
+        } else {
+            result = this.createNewVarEntry(new VarState(value));
+        }
+        mergedIds.put(key, result);
+        return result;
+    }
+
+    private boolean coversVar(int generalId, EngineState specificState, int specificId, int[] mapping) {
+        if (mapping[generalId] >= 0) {
+            return mapping[generalId] == specificId;
+        }
+        mapping[generalId] = specificId;
+
+        VarState general = this.varsState.get(generalId);
+        VarState specific = specificState.varsState.get(specificId);
+        if (general == specific) {
+            return true;
+        }
+        return general.value().getClass() == specific.value().getClass()
+                && general.value().isSupersetOf(specific.value());
     }
 
     int createNewVarEntry(VarState state) {
+        ValueSet value = this.context.getValueSets().intern(state.value());
+        if (value != state.value()) {
+            state = new VarState(value, state.relations());
+        }
         int id = this.varsState.size();
-        this.varsState.add(state);
+        this.varsState = this.varsState.append(state);
+        this.varsHash += ZobristHash.slot(id, state.hashCode());
         return id;
     }
 
+    int getVarsHash() {
+        return this.varsHash;
+    }
+
+    /**
+     * Computes varsHash from scratch
+     */
+    int computeVarsHash() {
+        int result = 0;
+        for (int i = 0; i < this.varsState.size(); i++) {
+            result += ZobristHash.slot(i, this.varsState.get(i).hashCode());
+        }
+        return result;
+    }
+
+    private int symbol(String name) {
+        return this.context.getSymbols().intern(name);
+    }
+
+    private void setVar(int id, VarState state) {
+        VarState oldState = this.varsState.get(id);
+        this.varsHash += ZobristHash.slot(id, state.hashCode()) - ZobristHash.slot(id, oldState.hashCode());
+        this.varsState = this.varsState.set(id, state);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         EngineState that = (EngineState) o;
-        return Objects.equals(varsState, that.varsState) && Objects.equals(stack, that.stack) &&
+        // The hash is O(1), so this rejects most unequal states cheaply
+        return this.hashCode() == that.hashCode() && Objects.equals(varsState, that.varsState) && Objects.equals(stack, that.stack) &&
                 Objects.equals(initialParamValues, that.initialParamValues) &&
-                Objects.equals(liveFields, that.liveFields);
+                Objects.equals(liveFields, that.liveFields) && Objects.equals(bounds, that.bounds);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(varsState, stack, initialParamValues, liveFields);
+        return Objects.hash(varsHash, stack, initialParamValues, liveFields, bounds);
     }
 
     @Override
     public String toString() {
         return "stack: " + this.stack
-                + " fields: [" + this.liveFields.entrySet().stream()
-                .map(e -> e.getKey() + ": $" + e.getValue())
+                + " fields: [" + this.liveFields.entries().stream()
+                .map(e -> e.getKey().toString(this.context.getSymbols()) + ": $" + e.getValue())
                 .collect(Collectors.joining(", "))
                 + "] values: " + this.varsState;
     }
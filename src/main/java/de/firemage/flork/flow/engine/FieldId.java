@@ -4,20 +4,20 @@ package de.firemage.flork.flow.engine;
  * Represents the name of a field of an object through its chain of values
  *
  * @param parent The value id of this object's parent within a specific engine state
- * @param fieldName
+ * @param name   The interned name of the field / local, see {@link SymbolTable}
  */
-public record FieldId(int parent, String fieldName) {
-    public static FieldId THIS = FieldId.forLocal("this");
+public record FieldId(int parent, int name) {
+    public static final FieldId THIS = FieldId.forLocal(SymbolTable.THIS);
 
-    public static FieldId forLocal(String name) {
+    public static FieldId forLocal(int name) {
         return new FieldId(-1, name);
     }
     
-    public static FieldId forField(int parent, String name) {
+    public static FieldId forField(int parent, int name) {
         return new FieldId(parent, name);
     }
 
-    public static FieldId forOwnField(String name) {
+    public static FieldId forOwnField(int name) {
         return new FieldId(EngineState.THIS_VALUE, name);
     }
     
@@ -29,12 +29,28 @@ public record FieldId(int parent, String fieldName) {
         return this.parent <= 0;
     }
 
+    @Override
+    public int hashCode() {
+        // Spread the bits of both components packed into a long, since the persistent maps consume the hash five bits
+        // at a time
+        long h = (((long) this.parent << 32) | (this.name & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public String toString(SymbolTable symbols) {
+        if (this.isLocal()) {
+            return symbols.nameOf(this.name);
+        } else {
+            return "$" + this.parent + "." + symbols.nameOf(this.name);
+        }
+    }
+
     @Override
     public String toString() {
         if (this.isLocal()) {
-            return this.fieldName;
+            return "#" + this.name;
         } else {
-            return "$" + this.parent + "." + this.fieldName;
+            return "$" + this.parent + ".#" + this.name;
         }
     }
 }
@@ -2,6 +2,7 @@ package de.firemage.flork.flow.engine;
 
 import de.firemage.flork.flow.CachedMethod;
 import de.firemage.flork.flow.FlowContext;
+import de.firemage.flork.flow.GreedyMerge;
 import de.firemage.flork.flow.TypeId;
 import de.firemage.flork.flow.value.ObjectValueSet;
 import de.firemage.flork.flow.value.ValueSet;
@@ -9,21 +10,29 @@ import spoon.reflect.declaration.CtParameter;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class FlowEngine {
     private final FlowContext context;
     private List<EngineState> states;
     private List<EngineState> exceptionalStates;
 
-    public FlowEngine(TypeId thisType, ObjectValueSet thisPointer, List<CtParameter<?>> parameters, FlowContext context) {
+    /**
+     * @param parameterValues the initial values of the parameters, or null if they are unconstrained
+     */
+    public FlowEngine(TypeId thisType, ObjectValueSet thisPointer, List<CtParameter<?>> parameters,
+                      List<ValueSet> parameterValues, FlowContext context) {
         this.context = context;
         this.states = new ArrayList<>();
         this.exceptionalStates = new ArrayList<>();
-        this.states.add(new EngineState(thisType, thisPointer, parameters, context));
+        this.states.add(new EngineState(thisType, thisPointer, parameters, parameterValues, context));
     }
 
     private FlowEngine(List<EngineState> states, FlowContext context) {
@@ -42,7 +51,7 @@ public class FlowEngine {
     public FlowEngine extractExceptionalStatesForHandler(TypeId type) {
         var handledStates = new ArrayList<EngineState>();
         this.exceptionalStates.removeIf(state -> {
-            if (state.hasActiveException() && state.activeException.isSubtypeOf(type)) {
+            if (state.hasActiveException() && this.context.isSubtype(state.activeException, type)) {
                 state.clearActiveException();
                 handledStates.add(state);
                 return true;
@@ -104,6 +113,17 @@ public class FlowEngine {
     public void join(FlowEngine other) {
         this.states.addAll(other.states);
         this.exceptionalStates.addAll(other.exceptionalStates);
+
+        if (this.context.getOptions().joinMode() == JoinMode.SUBSUME) {
+            this.states = removeSubsumedStates(this.states);
+            this.exceptionalStates = removeSubsumedStates(this.exceptionalStates);
+        }
+
+        int maxStates = this.context.getOptions().maxStates();
+        if (maxStates > 0) {
+            this.states = mergeToBudget(this.states, maxStates);
+            this.exceptionalStates = mergeToBudget(this.exceptionalStates, maxStates);
+        }
     }
 
     public boolean isStackEmpty() {
@@ -137,6 +157,17 @@ public class FlowEngine {
         return this.states;
     }
 
+    public int getLiveStateCount() {
+        return this.states.size() + this.exceptionalStates.size();
+    }
+
+    public int getMaxVarCount() {
+        return Stream.concat(this.states.stream(), this.exceptionalStates.stream())
+                .mapToInt(EngineState::getVarCount)
+                .max()
+                .orElse(0);
+    }
+
     public void createLocal(String name, TypeId type) {
         this.forEachState(state -> state.createVariable(name, type));
         this.log("createLocal");
@@ -294,6 +325,47 @@ public class FlowEngine {
         this.states = newStates;
     }
 
+    static List<EngineState> removeSubsumedStates(List<EngineState> states) {
+        if (states.size() < 2) {
+            return states;
+        }
+
+        // Only states with the same shape hash can subsume each other
+        Map<Integer, List<Integer>> buckets = new HashMap<>();
+        for (int i = 0; i < states.size(); i++) {
+            buckets.computeIfAbsent(states.get(i).shapeHash(), h -> new ArrayList<>()).add(i);
+        }
+
+        boolean[] removed = new boolean[states.size()];
+        for (List<Integer> bucket : buckets.values()) {
+            for (int i : bucket) {
+                for (int j : bucket) {
+                    // For identical states, keep the first one
+                    if (i != j && !removed[j] && (j < i || !states.get(j).isSubsumedBy(states.get(i)))
+                            && states.get(i).isSubsumedBy(states.get(j))) {
+                        removed[i] = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        List<EngineState> result = new ArrayList<>(states.size());
+        for (int i = 0; i < states.size(); i++) {
+            if (!removed[i]) {
+                result.add(states.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merges states until at most maxStates remain, see {@link GreedyMerge}
+     */
+    static List<EngineState> mergeToBudget(List<EngineState> states, int maxStates) {
+        return GreedyMerge.mergeToBudget(states, maxStates, EngineState::mergeCost, EngineState::merge);
+    }
+
     private void log(String instruction) {
         this.context.log(instruction + ", " + this);
     }
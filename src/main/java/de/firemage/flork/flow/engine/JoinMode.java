@@ -0,0 +1,12 @@
+package de.firemage.flork.flow.engine;
+
+public enum JoinMode {
+    /**
+     * Keep all states of both branches
+     */
+    CONCATENATE,
+    /**
+     * Drop states that are subsumed by another state, i.e. whose possible values are all covered by the other state
+     */
+    SUBSUME
+}
@@ -0,0 +1,185 @@
+package de.firemage.flork.flow.engine;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+/**
+ * An immutable set of relations (rhs var id, relation) of a single var.
+ * The relations are packed into a sorted long array (rhs in the upper bits, relation ordinal in the lowest three bits),
+ * so all relations to one rhs are stored next to each other and lookups are a binary search without any allocation.
+ */
+public final class RelationSet implements Iterable<VarRelation> {
+    private static final RelationSet EMPTY = new RelationSet(new long[0]);
+    private static final Relation[] RELATIONS = Relation.values();
+    private static final int RELATION_BITS = 3;
+    private static final long RELATION_MASK = (1 << RELATION_BITS) - 1;
+
+    private final long[] entries;
+    private final int hash;
+
+    private RelationSet(long[] entries) {
+        this.entries = entries;
+        this.hash = Arrays.hashCode(entries);
+    }
+
+    public static RelationSet empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return this.entries.length;
+    }
+
+    public boolean isEmpty() {
+        return this.entries.length == 0;
+    }
+
+    public int rhs(int index) {
+        return (int) (this.entries[index] >>> RELATION_BITS);
+    }
+
+    public Relation relation(int index) {
+        return RELATIONS[(int) (this.entries[index] & RELATION_MASK)];
+    }
+
+    public boolean contains(int rhs, Relation relation) {
+        return Arrays.binarySearch(this.entries, pack(rhs, relation)) >= 0;
+    }
+
+    /**
+     * Checks whether this set contains a relation to rhs that implies the given relation
+     */
+    public boolean containsImplying(int rhs, Relation relation) {
+        int index = Arrays.binarySearch(this.entries, pack(rhs, Relation.EQUAL));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        for (; index < this.entries.length && this.rhs(index) == rhs; index++) {
+            if (this.relation(index).implies(relation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public RelationSet with(int rhs, Relation relation) {
+        long entry = pack(rhs, relation);
+        int index = Arrays.binarySearch(this.entries, entry);
+        if (index >= 0) {
+            return this;
+        }
+        index = -index - 1;
+        long[] newEntries = new long[this.entries.length + 1];
+        System.arraycopy(this.entries, 0, newEntries, 0, index);
+        newEntries[index] = entry;
+        System.arraycopy(this.entries, index, newEntries, index + 1, this.entries.length - index);
+        return new RelationSet(newEntries);
+    }
+
+    public boolean containsAll(RelationSet other) {
+        if (other.entries.length > this.entries.length) {
+            return false;
+        }
+        int i = 0;
+        for (long entry : other.entries) {
+            while (i < this.entries.length && this.entries[i] < entry) {
+                i++;
+            }
+            if (i == this.entries.length || this.entries[i] != entry) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the relations that are contained in both sets and whose rhs matches the filter
+     */
+    public RelationSet intersect(RelationSet other, IntPredicate rhsFilter) {
+        long[] result = new long[Math.min(this.entries.length, other.entries.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < this.entries.length && j < other.entries.length) {
+            if (this.entries[i] < other.entries[j]) {
+                i++;
+            } else if (this.entries[i] > other.entries[j]) {
+                j++;
+            } else {
+                if (rhsFilter.test(this.rhs(i))) {
+                    result[size++] = this.entries[i];
+                }
+                i++;
+                j++;
+            }
+        }
+        if (size == this.entries.length) {
+            return this;
+        }
+        return size == 0 ? EMPTY : new RelationSet(Arrays.copyOf(result, size));
+    }
+
+    /**
+     * Replaces every rhs by mapping[rhs]
+     */
+    public RelationSet remap(int[] mapping) {
+        if (this.entries.length == 0) {
+            return this;
+        }
+        long[] result = new long[this.entries.length];
+        for (int i = 0; i < this.entries.length; i++) {
+            result[i] = pack(mapping[this.rhs(i)], this.relation(i));
+        }
+        Arrays.sort(result);
+        return new RelationSet(result);
+    }
+
+    @Override
+    public Iterator<VarRelation> iterator() {
+        return new Iterator<>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.index < entries.length;
+            }
+
+            @Override
+            public VarRelation next() {
+                if (this.index >= entries.length) {
+                    throw new NoSuchElementException();
+                }
+                var result = new VarRelation(rhs(this.index), relation(this.index));
+                this.index++;
+                return result;
+            }
+        };
+    }
+
+    private static long pack(int rhs, Relation relation) {
+        return ((long) rhs << RELATION_BITS) | relation.ordinal();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RelationSet that = (RelationSet) o;
+        return this.hash == that.hash && Arrays.equals(this.entries, that.entries);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.stream(this.entries)
+                .mapToObj(e -> new VarRelation((int) (e >>> RELATION_BITS), RELATIONS[(int) (e & RELATION_MASK)]).toString())
+                .collect(Collectors.joining(", "));
+    }
+}
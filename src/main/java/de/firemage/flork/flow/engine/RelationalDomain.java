@@ -0,0 +1,16 @@
+package de.firemage.flork.flow.engine;
+
+/**
+ * How relations between vars (e.g. $1 < $2) are tracked
+ */
+public enum RelationalDomain {
+    /**
+     * Every var stores its relations to other vars, and new relations are closed transitively
+     */
+    TRANSITIVE_CLOSURE,
+    /**
+     * Relations between ints & longs are stored in a {@link DifferenceBoundMatrix}.
+     * Relations that the matrix cannot express (!=, non-integral values) are still closed transitively.
+     */
+    DIFFERENCE_BOUNDS
+}
@@ -0,0 +1,42 @@
+package de.firemage.flork.flow.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns the names of locals and fields, so that {@link FieldId}s only need to store & compare ints.
+ * There is one table per {@link de.firemage.flork.flow.FlowContext}. "this" is always symbol 0.
+ */
+public class SymbolTable {
+    public static final int THIS = 0;
+
+    private final Map<String, Integer> symbols = new ConcurrentHashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    public SymbolTable() {
+        if (this.intern("this") != THIS) {
+            throw new IllegalStateException("Symbol of 'this' is unexpectedly not 0 - this is a bug");
+        }
+    }
+
+    public int intern(String name) {
+        Integer symbol = this.symbols.get(name);
+        if (symbol != null) {
+            return symbol;
+        }
+        synchronized (this.names) {
+            return this.symbols.computeIfAbsent(name, n -> {
+                this.names.add(n);
+                return this.names.size() - 1;
+            });
+        }
+    }
+
+    public String nameOf(int symbol) {
+        synchronized (this.names) {
+            return this.names.get(symbol);
+        }
+    }
+}
@@ -1,57 +1,97 @@
 package de.firemage.flork.flow.engine;
 
-import java.util.ArrayList;
-import java.util.Objects;
+import java.util.Arrays;
 import java.util.stream.Collectors;
 
-// Why tf does ArrayDeque not provide a usable equals implementation???
+/**
+ * A stack of var ids backed by a growable int array.
+ * Copies share the array until one of them writes to it (copy-on-write), so forking a stack is O(1).
+ * Slots above the head are never read, which means that popping never needs to copy.
+ * The hash code is maintained incrementally, so it is O(1).
+ */
 public class ValueStack {
-    private final ArrayList<Integer> values;
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int[] values;
     private int head; // Points to the next free slot
+    private boolean shared; // True if the array may be referenced by another stack
+    private int hash;
 
     public ValueStack() {
-        this.values = new ArrayList<>();
+        this.values = new int[INITIAL_CAPACITY];
         this.head = 0;
+        this.shared = false;
+        this.hash = 0;
     }
 
     public ValueStack(ValueStack other) {
-        this.values = new ArrayList<>(other.values);
+        this.values = other.values;
         this.head = other.head;
+        this.hash = other.hash;
+        this.shared = true;
+        other.shared = true;
     }
 
     public int peek() {
-        return this.values.get(this.head - 1);
+        return this.values[this.head - 1];
     }
 
     public int peek(int offset) {
-        return this.values.get(this.head - 1 - offset);
+        return this.values[this.head - 1 - offset];
     }
 
     public void push(int value) {
-        if (this.head < this.values.size()) {
-            this.values.set(this.head, value);
-        } else {
-            this.values.add(value);
-        }
+        this.prepareWrite(this.head + 1);
+        this.values[this.head] = value;
+        this.hash += ZobristHash.slot(this.head, value);
         this.head++;
     }
 
     public void overwrite(int value, int offset) {
-        this.values.set(this.head - 1 - offset, value);
+        this.prepareWrite(this.head);
+        int index = this.head - 1 - offset;
+        this.hash += ZobristHash.slot(index, value) - ZobristHash.slot(index, this.values[index]);
+        this.values[index] = value;
     }
 
     public int pop() {
         this.head--;
-        return this.values.get(this.head);
+        this.hash -= ZobristHash.slot(this.head, this.values[this.head]);
+        return this.values[this.head];
     }
 
     public boolean isEmpty() {
         return this.head == 0;
     }
 
+    public int size() {
+        return this.head;
+    }
+
     public void clear() {
-        this.values.clear();
         this.head = 0;
+        this.hash = 0;
+    }
+
+    /**
+     * Replaces every id on the stack by mapping[id]
+     */
+    public void remap(int[] mapping) {
+        this.prepareWrite(this.head);
+        this.hash = 0;
+        for (int i = 0; i < this.head; i++) {
+            this.values[i] = mapping[this.values[i]];
+            this.hash += ZobristHash.slot(i, this.values[i]);
+        }
+    }
+
+    private void prepareWrite(int requiredCapacity) {
+        if (this.shared) {
+            this.values = Arrays.copyOf(this.values, Math.max(this.values.length, requiredCapacity));
+            this.shared = false;
+        } else if (requiredCapacity > this.values.length) {
+            this.values = Arrays.copyOf(this.values, this.values.length * 2);
+        }
     }
 
     @Override
@@ -59,16 +99,16 @@ public class ValueStack {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ValueStack that = (ValueStack) o;
-        return this.values.equals(that.values) && this.head == that.head;
+        return this.head == that.head && this.hash == that.hash && Arrays.equals(this.values, 0, this.head, that.values, 0, that.head);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(values, head);
+        return this.hash;
     }
 
     @Override
     public String toString() {
-        return "[" + this.values.stream().limit(this.head).map(x -> "$" + x).collect(Collectors.joining(", ")) + " ^]";
+        return "[" + Arrays.stream(this.values, 0, this.head).mapToObj(x -> "$" + x).collect(Collectors.joining(", ")) + " ^]";
     }
 }
@@ -2,19 +2,24 @@ package de.firemage.flork.flow.engine;
 
 import de.firemage.flork.flow.value.ValueSet;
 
-import java.util.Set;
-import java.util.stream.Collectors;
-
-public record VarState(ValueSet value, Set<VarRelation> relations) {
+public record VarState(ValueSet value, RelationSet relations) {
     
     public VarState(ValueSet value) {
-        this(value, Set.of());
+        this(value, RelationSet.empty());
+    }
+
+    /**
+     * Replaces the ids of all related vars by mapping[id]
+     */
+    public VarState remap(int[] mapping) {
+        if (this.relations.isEmpty()) {
+            return this;
+        }
+        return new VarState(this.value, this.relations.remap(mapping));
     }
 
     @Override
     public String toString() {
-        return "[" + this.value +
-            (!this.relations.isEmpty() ? ", " + this.relations.stream().map(VarRelation::toString).collect(
-                Collectors.joining(", ")) : "") + "]";
+        return "[" + this.value + (!this.relations.isEmpty() ? ", " + this.relations : "") + "]";
     }
 }
@@ -0,0 +1,17 @@
+package de.firemage.flork.flow.engine;
+
+/**
+ * Position-dependent element hashes that are combined by addition (similar to Zobrist hashing),
+ * so the hash of a sequence can be updated in O(1) when a single element changes.
+ */
+final class ZobristHash {
+    private ZobristHash() {
+    }
+
+    static int slot(int index, int elementHash) {
+        int h = elementHash * 0x9E3779B9 + index * 0x85EBCA6B;
+        h ^= h >>> 16;
+        h *= 0x7FEB352D;
+        return h ^ (h >>> 15);
+    }
+}
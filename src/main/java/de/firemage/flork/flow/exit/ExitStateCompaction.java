@@ -0,0 +1,190 @@
+package de.firemage.flork.flow.exit;
+
+import de.firemage.flork.flow.GreedyMerge;
+import de.firemage.flork.flow.value.ValueSet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Shrinks the exit states of a summary, so that callers fork less often.
+ * <ol>
+ *     <li>Returns with identical preconditions are merged into one return if their values can be merged exactly
+ *     (lossless)</li>
+ *     <li>Exit states with the same outcome whose preconditions differ in exactly one parameter are merged if that
+ *     parameter's preconditions can be merged exactly (lossless)</li>
+ *     <li>If more than maxExitStates remain, exit states are merged by joining their preconditions (and return
+ *     values), always merging the pair that loses the least precision</li>
+ * </ol>
+ * The order of the remaining exit states is kept.
+ */
+public final class ExitStateCompaction {
+    private ExitStateCompaction() {
+    }
+
+    /**
+     * @param maxExitStates values <= 0 disable the lossy merging
+     */
+    public static List<MethodExitState> compact(List<MethodExitState> exitStates, int maxExitStates) {
+        List<MethodExitState> result = mergeSamePreconditions(new ArrayList<>(new LinkedHashSet<>(exitStates)));
+        result = mergeExactly(result);
+        if (maxExitStates > 0) {
+            result = mergeToBudget(result, maxExitStates);
+        }
+        return result;
+    }
+
+    private static List<MethodExitState> mergeSamePreconditions(List<MethodExitState> exitStates) {
+        Map<List<ValueSet>, Integer> returns = new LinkedHashMap<>();
+        List<MethodExitState> result = new ArrayList<>(exitStates.size());
+        for (MethodExitState exitState : exitStates) {
+            Integer existing = exitState.getReturnValue() == null
+                    ? null
+                    : returns.get(exitState.getParameterPrecondition());
+            ValueSet merged = existing == null ? null : tryMergeExact(result.get(existing).getReturnValue(),
+                    exitState.getReturnValue());
+            if (merged != null) {
+                result.set(existing, MethodExitState.forReturn(merged, result.get(existing).getParameterPrecondition()));
+            } else {
+                if (exitState.getReturnValue() != null) {
+                    returns.putIfAbsent(exitState.getParameterPrecondition(), result.size());
+                }
+                result.add(exitState);
+            }
+        }
+        return result;
+    }
+
+    private static List<MethodExitState> mergeExactly(List<MethodExitState> exitStates) {
+        List<MethodExitState> result = new ArrayList<>(exitStates);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < result.size() && !changed; i++) {
+                for (int j = i + 1; j < result.size() && !changed; j++) {
+                    MethodExitState merged = tryMergeExactly(result.get(i), result.get(j));
+                    if (merged != null) {
+                        result.set(i, merged);
+                        result.remove(j);
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static MethodExitState tryMergeExactly(MethodExitState a, MethodExitState b) {
+        if (!Objects.equals(a.getReturnValue(), b.getReturnValue())
+                || !Objects.equals(a.getThrownException(), b.getThrownException())) {
+            return null;
+        }
+
+        var aPrecondition = a.getParameterPrecondition();
+        var bPrecondition = b.getParameterPrecondition();
+        int differing = -1;
+        for (int i = 0; i < aPrecondition.size(); i++) {
+            if (!aPrecondition.get(i).equals(bPrecondition.get(i))) {
+                if (differing >= 0) {
+                    return null;
+                }
+                differing = i;
+            }
+        }
+        // Identical exit states have already been removed
+        ValueSet merged = differing < 0 ? null : tryMergeExact(aPrecondition.get(differing), bPrecondition.get(differing));
+        if (merged == null) {
+            return null;
+        }
+        List<ValueSet> precondition = new ArrayList<>(aPrecondition);
+        precondition.set(differing, merged);
+        return withPrecondition(a, precondition);
+    }
+
+    /**
+     * Exit states that cannot be merged with any other exit state (e.g. because they throw different exceptions) are
+     * kept, so the budget may still be exceeded
+     */
+    private static List<MethodExitState> mergeToBudget(List<MethodExitState> exitStates, int maxExitStates) {
+        return GreedyMerge.mergeToBudget(exitStates, maxExitStates, ExitStateCompaction::mergeCost,
+                ExitStateCompaction::merge);
+    }
+
+    /**
+     * Each precondition and the outcome add 0 if they are equal, 1 if they can be merged exactly, and 2 otherwise
+     *
+     * @return the cost, or -1 if the exit states cannot be merged
+     */
+    private static int mergeCost(MethodExitState a, MethodExitState b) {
+        int cost;
+        if (a.getReturnValue() != null && b.getReturnValue() != null) {
+            cost = valueMergeCost(a.getReturnValue(), b.getReturnValue());
+        } else if (a.getThrownException() != null && a.getThrownException().equals(b.getThrownException())) {
+            cost = 0;
+        } else {
+            return -1;
+        }
+        if (cost < 0) {
+            return -1;
+        }
+
+        for (int i = 0; i < a.getParameterPrecondition().size(); i++) {
+            int parameterCost = valueMergeCost(a.getParameterPrecondition().get(i), b.getParameterPrecondition().get(i));
+            if (parameterCost < 0) {
+                return -1;
+            }
+            cost += parameterCost;
+        }
+        return cost;
+    }
+
+    private static int valueMergeCost(ValueSet a, ValueSet b) {
+        if (a.equals(b)) {
+            return 0;
+        } else if (!canMerge(a, b)) {
+            return -1;
+        } else if (a.tryMergeExact(b) != null) {
+            return 1;
+        } else {
+            return 2;
+        }
+    }
+
+    private static MethodExitState merge(MethodExitState a, MethodExitState b) {
+        List<ValueSet> precondition = new ArrayList<>(a.getParameterPrecondition().size());
+        for (int i = 0; i < a.getParameterPrecondition().size(); i++) {
+            precondition.add(a.getParameterPrecondition().get(i).merge(b.getParameterPrecondition().get(i)));
+        }
+        if (a.getReturnValue() != null) {
+            return MethodExitState.forReturn(a.getReturnValue().merge(b.getReturnValue()), precondition);
+        } else {
+            return MethodExitState.forThrow(a.getThrownException(), precondition);
+        }
+    }
+
+    private static MethodExitState withPrecondition(MethodExitState exitState, List<ValueSet> precondition) {
+        if (exitState.getReturnValue() != null) {
+            return MethodExitState.forReturn(exitState.getReturnValue(), precondition);
+        } else {
+            return MethodExitState.forThrow(exitState.getThrownException(), precondition);
+        }
+    }
+
+    /**
+     * @return the union of both values, or null if it cannot be represented exactly
+     */
+    private static ValueSet tryMergeExact(ValueSet a, ValueSet b) {
+        return canMerge(a, b) ? a.tryMergeExact(b) : null;
+    }
+
+    /**
+     * E.g. boxed ints and plain objects can be mixed in preconditions, but not merged
+     */
+    private static boolean canMerge(ValueSet a, ValueSet b) {
+        return a.getClass() == b.getClass();
+    }
+}
@@ -0,0 +1,228 @@
+package de.firemage.flork.flow.exit;
+
+import de.firemage.flork.flow.value.BooleanValueSet;
+import de.firemage.flork.flow.value.IntValueSet;
+import de.firemage.flork.flow.value.Nullness;
+import de.firemage.flork.flow.value.ObjectValueSet;
+import de.firemage.flork.flow.value.ValueSet;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Selects the exit states of a summary whose parameter preconditions are compatible with the actual arguments.
+ * <p>
+ * Summaries with many exit states are indexed per parameter: boolean parameters and the nullness of object
+ * parameters are partitioned by the values they accept, and int parameters are indexed by an interval tree over the
+ * hulls of their preconditions. The indices only rule out exit states; the remaining candidates are checked exactly.
+ * Exit states are always returned in their original order.
+ */
+public class ExitStateIndex {
+    /**
+     * Smaller summaries are just scanned
+     */
+    private static final int MIN_INDEXED_STATES = 8;
+
+    private final List<MethodExitState> exitStates;
+    private final ParameterIndex[] parameterIndices;
+
+    private ExitStateIndex(List<MethodExitState> exitStates, ParameterIndex[] parameterIndices) {
+        this.exitStates = exitStates;
+        this.parameterIndices = parameterIndices;
+    }
+
+    public static ExitStateIndex of(List<MethodExitState> exitStates) {
+        if (exitStates.size() < MIN_INDEXED_STATES) {
+            return new ExitStateIndex(exitStates, new ParameterIndex[0]);
+        }
+
+        int parameterCount = exitStates.getFirst().getParameterPrecondition().size();
+        List<ParameterIndex> indices = new ArrayList<>();
+        for (int i = 0; i < parameterCount; i++) {
+            int parameter = i;
+            List<ValueSet> preconditions = exitStates.stream().map(s -> s.getParameterPrecondition().get(parameter)).toList();
+            if (preconditions.stream().allMatch(p -> p instanceof BooleanValueSet)) {
+                indices.add(new BooleanIndex(parameter, preconditions));
+            } else if (preconditions.stream().allMatch(p -> p instanceof IntValueSet)) {
+                indices.add(new IntervalIndex(parameter, preconditions));
+            } else if (preconditions.stream().allMatch(p -> p instanceof ObjectValueSet)) {
+                indices.add(new NullnessIndex(parameter, preconditions));
+            }
+        }
+        return new ExitStateIndex(exitStates, indices.toArray(ParameterIndex[]::new));
+    }
+
+    public List<MethodExitState> getCompatibleExitStates(List<ValueSet> arguments) {
+        List<MethodExitState> result = new ArrayList<>();
+        if (this.parameterIndices.length == 0) {
+            for (MethodExitState exitState : this.exitStates) {
+                if (isCompatible(exitState, arguments)) {
+                    result.add(exitState);
+                }
+            }
+            return result;
+        }
+
+        BitSet candidates = new BitSet(this.exitStates.size());
+        candidates.set(0, this.exitStates.size());
+        for (ParameterIndex index : this.parameterIndices) {
+            index.retainCandidates(arguments.get(index.parameter()), candidates);
+            if (candidates.isEmpty()) {
+                return result;
+            }
+        }
+
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            if (isCompatible(this.exitStates.get(i), arguments)) {
+                result.add(this.exitStates.get(i));
+            }
+        }
+        return result;
+    }
+
+    private static boolean isCompatible(MethodExitState exitState, List<ValueSet> arguments) {
+        var preconditions = exitState.getParameterPrecondition();
+        for (int i = 0; i < arguments.size(); i++) {
+            if (!preconditions.get(i).intersects(arguments.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private sealed interface ParameterIndex permits BooleanIndex, NullnessIndex, IntervalIndex {
+        int parameter();
+
+        /**
+         * Removes all candidates whose precondition for this parameter can be proven to not accept the argument
+         */
+        void retainCandidates(ValueSet argument, BitSet candidates);
+    }
+
+    private record BooleanIndex(int parameter, BitSet acceptsTrue, BitSet acceptsFalse) implements ParameterIndex {
+        private BooleanIndex(int parameter, List<ValueSet> preconditions) {
+            this(parameter, new BitSet(preconditions.size()), new BitSet(preconditions.size()));
+            for (int i = 0; i < preconditions.size(); i++) {
+                var precondition = (BooleanValueSet) preconditions.get(i);
+                this.acceptsTrue.set(i, precondition.isTop() || precondition.isTrue());
+                this.acceptsFalse.set(i, precondition.isTop() || precondition.isFalse());
+            }
+        }
+
+        @Override
+        public void retainCandidates(ValueSet argument, BitSet candidates) {
+            var value = (BooleanValueSet) argument;
+            if (value.isTrue()) {
+                candidates.and(this.acceptsTrue);
+            } else if (value.isFalse()) {
+                candidates.and(this.acceptsFalse);
+            } else if (value.isBottom()) {
+                candidates.clear();
+            } else {
+                BitSet acceptsAny = (BitSet) this.acceptsTrue.clone();
+                acceptsAny.or(this.acceptsFalse);
+                candidates.and(acceptsAny);
+            }
+        }
+    }
+
+    private record NullnessIndex(int parameter, BitSet acceptsNull, BitSet acceptsNonNull) implements ParameterIndex {
+        private NullnessIndex(int parameter, List<ValueSet> preconditions) {
+            this(parameter, new BitSet(preconditions.size()), new BitSet(preconditions.size()));
+            for (int i = 0; i < preconditions.size(); i++) {
+                Nullness nullness = ((ObjectValueSet) preconditions.get(i)).getNullness();
+                this.acceptsNull.set(i, nullness == Nullness.NULL || nullness == Nullness.UNKNOWN);
+                this.acceptsNonNull.set(i, nullness == Nullness.NON_NULL || nullness == Nullness.UNKNOWN);
+            }
+        }
+
+        @Override
+        public void retainCandidates(ValueSet argument, BitSet candidates) {
+            switch (((ObjectValueSet) argument).getNullness()) {
+                case NULL -> candidates.and(this.acceptsNull);
+                case NON_NULL -> candidates.and(this.acceptsNonNull);
+                case BOTTOM -> candidates.clear();
+                case UNKNOWN -> {
+                    BitSet acceptsAny = (BitSet) this.acceptsNull.clone();
+                    acceptsAny.or(this.acceptsNonNull);
+                    candidates.and(acceptsAny);
+                }
+            }
+        }
+    }
+
+    /**
+     * A static interval tree: the hulls are sorted by their lower end and implicitly form a balanced binary search
+     * tree (the root of a range is its middle element), augmented with the maximum upper end of each subtree.
+     */
+    private record IntervalIndex(int parameter, int[] states, long[] mins, long[] maxs, long[] subtreeMaxs)
+            implements ParameterIndex {
+        private IntervalIndex(int parameter, List<ValueSet> preconditions) {
+            this(parameter, nonEmptyStates(preconditions), preconditions);
+        }
+
+        private IntervalIndex(int parameter, int[] states, List<ValueSet> preconditions) {
+            this(parameter, states, new long[states.length], new long[states.length], new long[states.length]);
+            for (int i = 0; i < states.length; i++) {
+                var precondition = (IntValueSet) preconditions.get(states[i]);
+                this.mins[i] = precondition.min();
+                this.maxs[i] = precondition.max();
+            }
+            this.buildSubtreeMaxs(0, states.length);
+        }
+
+        private static int[] nonEmptyStates(List<ValueSet> preconditions) {
+            // Empty preconditions never match, so they are not part of the tree
+            return IntStream.range(0, preconditions.size())
+                    .filter(i -> !preconditions.get(i).isEmpty())
+                    .boxed()
+                    .sorted(Comparator.comparingLong(i -> ((IntValueSet) preconditions.get(i)).min()))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+
+        private long buildSubtreeMaxs(int from, int to) {
+            if (from >= to) {
+                return Long.MIN_VALUE;
+            }
+            int mid = (from + to) >>> 1;
+            long max = Math.max(this.maxs[mid],
+                    Math.max(this.buildSubtreeMaxs(from, mid), this.buildSubtreeMaxs(mid + 1, to)));
+            this.subtreeMaxs[mid] = max;
+            return max;
+        }
+
+        @Override
+        public void retainCandidates(ValueSet argument, BitSet candidates) {
+            var value = (IntValueSet) argument;
+            BitSet overlapping = new BitSet(candidates.length());
+            if (!value.isEmpty()) {
+                this.collectOverlapping(0, this.states.length, value.min(), value.max(), overlapping);
+            }
+            candidates.and(overlapping);
+        }
+
+        private void collectOverlapping(int from, int to, long min, long max, BitSet result) {
+            if (from >= to) {
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            if (this.subtreeMaxs[mid] < min) {
+                // Every hull in this subtree ends before the argument starts
+                return;
+            }
+            this.collectOverlapping(from, mid, min, max, result);
+            if (this.mins[mid] > max) {
+                // This hull and all hulls to its right start after the argument ends
+                return;
+            }
+            if (this.maxs[mid] >= min) {
+                result.set(this.states[mid]);
+            }
+            this.collectOverlapping(mid + 1, to, min, max, result);
+        }
+    }
+}
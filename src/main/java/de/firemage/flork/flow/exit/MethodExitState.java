@@ -4,6 +4,7 @@ import de.firemage.flork.flow.TypeId;
 import de.firemage.flork.flow.value.ValueSet;
 
 import java.util.List;
+import java.util.Objects;
 
 public class MethodExitState {
     private final List<ValueSet> parameterPreconditions;
@@ -36,6 +37,21 @@ public class MethodExitState {
         return thrownException;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MethodExitState that = (MethodExitState) o;
+        return Objects.equals(this.returnValue, that.returnValue)
+                && Objects.equals(this.thrownException, that.thrownException)
+                && this.parameterPreconditions.equals(that.parameterPreconditions);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.returnValue, this.thrownException, this.parameterPreconditions);
+    }
+
     @Override
     public String toString() {
         String s = this.parameterPreconditions.toString() + " -> ";
@@ -4,36 +4,51 @@ import de.firemage.flork.flow.BooleanStatus;
 import de.firemage.flork.flow.TypeId;
 import de.firemage.flork.flow.engine.Relation;
 
-import java.util.Objects;
-
+/**
+ * There is exactly one instance per state, so instances can be compared by identity.
+ */
 public final class BooleanValueSet extends ValueSet {
+    private static final BooleanValueSet TOP = new BooleanValueSet(State.TOP);
+    private static final BooleanValueSet TRUE = new BooleanValueSet(State.TRUE);
+    private static final BooleanValueSet FALSE = new BooleanValueSet(State.FALSE);
+    private static final BooleanValueSet BOTTOM = new BooleanValueSet(State.BOTTOM);
+
     private final BooleanValueSet.State state;
     
-    public BooleanValueSet(BooleanValueSet.State state) {
+    private BooleanValueSet(BooleanValueSet.State state) {
         this.state = state;
     }
+
+    public static BooleanValueSet of(BooleanValueSet.State state) {
+        return switch (state) {
+            case TOP -> TOP;
+            case TRUE -> TRUE;
+            case FALSE -> FALSE;
+            case BOTTOM -> BOTTOM;
+        };
+    }
     
     public static BooleanValueSet bottom() {
-        return new BooleanValueSet(State.BOTTOM);
+        return BOTTOM;
     }
 
     public static BooleanValueSet top() {
-        return new BooleanValueSet(State.TOP);
+        return TOP;
     }
 
     public static BooleanValueSet of(boolean value) {
-        return new BooleanValueSet(value ? State.TRUE : State.FALSE);
+        return value ? TRUE : FALSE;
     }
 
     @Override
     public BooleanValueSet merge(ValueSet other) {
         if (other instanceof BooleanValueSet set) {
             if (set.state == State.BOTTOM || this.state == State.BOTTOM) {
-                return new BooleanValueSet(State.BOTTOM);
+                return BOTTOM;
             } else if (set.state == this.state) {
-                return new BooleanValueSet(this.state);
+                return this;
             } else {
-                return new BooleanValueSet(State.TOP);
+                return TOP;
             }
         } else {
             throw new IllegalArgumentException("other must be a BooleanValueSet and not " + other.getClass().getName());
@@ -48,7 +63,7 @@ public final class BooleanValueSet extends ValueSet {
     @Override
     public BooleanValueSet intersect(ValueSet o) {
         BooleanValueSet other = (BooleanValueSet) o;
-        if (this.equals(other)) {
+        if (this == other) {
             return this;
         } else if (this.isTop()) {
             return other;
@@ -68,6 +83,10 @@ public final class BooleanValueSet extends ValueSet {
         };
     }
 
+    public State getState() {
+        return this.state;
+    }
+
     public boolean isTop() {
         return this.state == State.TOP;
     }
@@ -141,15 +160,12 @@ public final class BooleanValueSet extends ValueSet {
 
     @Override
     public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        BooleanValueSet that = (BooleanValueSet) o;
-        return state == that.state;
+        return this == o;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(state);
+        return this.state.hashCode();
     }
 
     public enum State {
@@ -37,6 +37,12 @@ public final class BoxedIntValueSet extends ObjectValueSet {
          return new BoxedIntValueSet(this.nullness.intersect(other.nullness), this.value.intersect(other.value), this.context);
     }
 
+    @Override
+    public boolean intersects(ValueSet o) {
+        BoxedIntValueSet other = (BoxedIntValueSet) o;
+        return this.nullness.intersect(other.nullness) != Nullness.BOTTOM;
+    }
+
     @Override
     public boolean isSupersetOf(ValueSet o) {
         if (o instanceof BoxedIntValueSet other) {
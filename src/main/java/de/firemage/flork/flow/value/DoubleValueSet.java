@@ -149,6 +149,9 @@ public final class DoubleValueSet extends NumericValueSet {
 
     @Override
     public DoubleValueSet merge(ValueSet o) {
+        if (this == o) {
+            return this;
+        }
         var other = (DoubleValueSet) o;
 
         if (this == TOP || other == TOP) {
@@ -166,11 +169,32 @@ public final class DoubleValueSet extends NumericValueSet {
 
     @Override
     public DoubleValueSet tryMergeExact(ValueSet o) {
-        return this.merge(o);
+        var other = (DoubleValueSet) o;
+        if (this.isSupersetOf(other)) {
+            return this;
+        } else if (other.isSupersetOf(this)) {
+            return other;
+        }
+
+        boolean mayBeNaN = this.mayBeNaN || other.mayBeNaN;
+        if (this.min > this.max) {
+            return new DoubleValueSet(other.min, other.max, mayBeNaN);
+        } else if (other.min > other.max) {
+            return new DoubleValueSet(this.min, this.max, mayBeNaN);
+        }
+
+        // The hull only adds values if there is a gap between both ranges
+        if (this.hasCommonValues(other)) {
+            return new DoubleValueSet(Math.min(this.min, other.min), Math.max(this.max, other.max), mayBeNaN);
+        }
+        return null;
     }
 
     @Override
     public DoubleValueSet intersect(ValueSet o) {
+        if (this == o) {
+            return this;
+        }
         var other = (DoubleValueSet) o;
 
         if (this == TOP && other == TOP) {
@@ -186,6 +210,22 @@ public final class DoubleValueSet extends NumericValueSet {
         return new DoubleValueSet(Math.max(this.min, other.min), Math.min(this.max, other.max), this.mayBeNaN && other.mayBeNaN);
     }
 
+    @Override
+    public boolean intersects(ValueSet o) {
+        if (this == o) {
+            return !this.isEmpty();
+        }
+        var other = (DoubleValueSet) o;
+
+        if (this.isNaN()) {
+            return !other.isEmpty();
+        } else if (other.isNaN()) {
+            return !this.isEmpty();
+        }
+
+        return this.mayBeNaN && other.mayBeNaN || Math.max(this.min, other.min) <= Math.min(this.max, other.max);
+    }
+
     @Override
     public boolean isSupersetOf(ValueSet o) {
         var other = (DoubleValueSet) o;
@@ -339,6 +379,18 @@ public final class DoubleValueSet extends NumericValueSet {
         }
     }
 
+    public double min() {
+        return this.min;
+    }
+
+    public double max() {
+        return this.max;
+    }
+
+    public boolean mayBeNaN() {
+        return this.mayBeNaN;
+    }
+
     private boolean isSingleNonNaN(double value) {
         return this.min == value && this.max == value && !this.mayBeNaN;
     }
@@ -18,10 +18,23 @@ import java.util.stream.Collectors;
  * This class is immutable, including all its fields!
  */
 public final class IntValueSet extends NumericValueSet {
+    // Constants like 0, 1 or small loop bounds are created all the time, so we cache them
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    private static final IntValueSet[] SINGLE_CACHE = new IntValueSet[CACHE_HIGH - CACHE_LOW + 1];
+    private static final IntValueSet TOP_INT = new IntValueSet(32, List.of(new IntInterval(Integer.MIN_VALUE, Integer.MAX_VALUE)));
+
+    static {
+        for (int i = CACHE_LOW; i <= CACHE_HIGH; i++) {
+            SINGLE_CACHE[i - CACHE_LOW] = new IntValueSet(32, List.of(new IntInterval(i, i)));
+        }
+    }
+
     private final List<IntInterval> intervals;
     private final int bits;
     private final long typeMin;
     private final long typeMax;
+    private int hash; // Lazily computed, 0 if unknown
 
     private IntValueSet(int bits, List<IntInterval> intervals) {
         this.bits = bits;
@@ -31,7 +44,7 @@ public final class IntValueSet extends NumericValueSet {
     }
 
     public static IntValueSet topForInt() {
-        return IntValueSet.ofIntRange(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        return TOP_INT;
     }
 
     public static IntValueSet ofIntSingle(long value) {
@@ -39,9 +52,24 @@ public final class IntValueSet extends NumericValueSet {
     }
 
     public static IntValueSet ofIntRange(long min, long max) {
+        if (min == max && min >= CACHE_LOW && min <= CACHE_HIGH) {
+            return SINGLE_CACHE[(int) min - CACHE_LOW];
+        } else if (min == Integer.MIN_VALUE && max == Integer.MAX_VALUE) {
+            return TOP_INT;
+        }
         return new IntValueSet(32, List.of(new IntInterval(min, max)));
     }
 
+    /**
+     * @param intervals sorted, disjoint and non-adjacent, as returned by {@link #getIntervals()}
+     */
+    public static IntValueSet ofIntIntervals(List<IntInterval> intervals) {
+        if (intervals.size() == 1) {
+            return ofIntRange(intervals.getFirst().min, intervals.getFirst().max);
+        }
+        return new IntValueSet(32, new ArrayList<>(intervals));
+    }
+
     private static IntValueSet createTopLike(IntValueSet set) {
         return new IntValueSet(set.bits, List.of(new IntInterval(set.typeMin, set.typeMax)));
     }
@@ -94,6 +122,9 @@ public final class IntValueSet extends NumericValueSet {
 
     @Override
     public IntValueSet merge(ValueSet o) {
+        if (this == o) {
+            return this;
+        }
         IntValueSet other = (IntValueSet) o;
         List<IntInterval> result = new ArrayList<>(this.intervals);
         for (IntInterval newInterval : other.intervals) {
@@ -109,6 +140,9 @@ public final class IntValueSet extends NumericValueSet {
 
     @Override
     public IntValueSet intersect(ValueSet o) {
+        if (this == o) {
+            return this;
+        }
         IntValueSet other = (IntValueSet) o;
         List<IntInterval> result = new ArrayList<>();
         int i = 0;
@@ -128,6 +162,11 @@ public final class IntValueSet extends NumericValueSet {
         return new IntValueSet(this.bits, result);
     }
 
+    @Override
+    public boolean intersects(ValueSet o) {
+        return this.hasCommonValue((IntValueSet) o);
+    }
+
     public IntValueSet symmetricDifference(ValueSet o) {
         IntValueSet other = (IntValueSet) o;
         if (this.isTop() && other.isTop()) {
@@ -170,7 +209,7 @@ public final class IntValueSet extends NumericValueSet {
     @Override
     public boolean isSupersetOf(ValueSet o) {
         IntValueSet other = (IntValueSet) o;
-        if (other.intervals.isEmpty()) {
+        if (this == other || other.intervals.isEmpty()) {
             return true;
         }
         int i = 0;
@@ -275,6 +314,10 @@ public final class IntValueSet extends NumericValueSet {
         }
     }
 
+    public List<IntInterval> getIntervals() {
+        return this.intervals;
+    }
+
     public IntValueSet splitAtAbove(long min) {
         if (min <= this.min()) {
             return this;
@@ -566,11 +609,14 @@ public final class IntValueSet extends NumericValueSet {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         IntValueSet that = (IntValueSet) o;
-        return bits == that.bits && intervals.equals(that.intervals);
+        return bits == that.bits && this.hashCode() == that.hashCode() && intervals.equals(that.intervals);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(intervals, bits);
+        if (this.hash == 0) {
+            this.hash = Objects.hash(intervals, bits);
+        }
+        return this.hash;
     }
 }
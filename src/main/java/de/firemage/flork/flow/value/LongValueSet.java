@@ -110,21 +110,46 @@ public final class LongValueSet extends NumericValueSet {
 
     @Override
     public LongValueSet merge(ValueSet o) {
+        if (this == o) {
+            return this;
+        }
         var other = (LongValueSet) o;
         return new LongValueSet(Math.min(this.min, other.min), Math.max(this.max, other.max));
     }
 
     @Override
-    public LongValueSet tryMergeExact(ValueSet other) {
-        return this.merge(other);
+    public LongValueSet tryMergeExact(ValueSet o) {
+        var other = (LongValueSet) o;
+        if (this.isEmpty()) {
+            return other;
+        } else if (other.isEmpty()) {
+            return this;
+        }
+
+        // The hull only adds values if there is a gap between both ranges
+        LongValueSet lower = this.min <= other.min ? this : other;
+        LongValueSet upper = lower == this ? other : this;
+        if (upper.min <= lower.max || upper.min - 1 == lower.max) {
+            return this.merge(other);
+        }
+        return null;
     }
 
     @Override
     public LongValueSet intersect(ValueSet o) {
+        if (this == o) {
+            return this;
+        }
         var other = (LongValueSet) o;
         return new LongValueSet(Math.max(this.min, other.min), Math.min(this.max, other.max));
     }
 
+    @Override
+    public boolean intersects(ValueSet o) {
+        var other = (LongValueSet) o;
+        return Math.max(this.min, other.min) <= Math.min(this.max, other.max);
+    }
+
     @Override
     public boolean isSupersetOf(ValueSet o) {
         var other = (LongValueSet) o;
@@ -239,6 +264,14 @@ public final class LongValueSet extends NumericValueSet {
         return this.min == this.max;
     }
 
+    public long min() {
+        return this.min;
+    }
+
+    public long max() {
+        return this.max;
+    }
+
     private boolean hasCommonValue(LongValueSet other) {
         return this.min <= other.max && other.min <= this.max;
     }
@@ -13,13 +13,13 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public sealed class ObjectValueSet extends ValueSet permits BoxedIntValueSet {
-    private static ObjectValueSet nullSet;
 
     private final FlowContext context;
     protected final Nullness nullness;
     private final TypeId supertype;
     private final Set<TypeId> lowerLimitingTypes;
     private final boolean exact;
+    private int hash; // Lazily computed, 0 if unknown
 
     public ObjectValueSet(Nullness nullness, TypeId supertype, Set<TypeId> lowerLimitingTypes, FlowContext context) {
         this.nullness = nullness;
@@ -34,14 +34,6 @@ public sealed class ObjectValueSet extends ValueSet permits BoxedIntValueSet {
                 other.context);
     }
 
-    public static ObjectValueSet getNullSet(FlowContext context) {
-        if (nullSet == null) {
-            nullSet =
-                    ObjectValueSet.forExactType(Nullness.NULL, new TypeId(context.getFactory().Type().NULL_TYPE), context);
-        }
-        return nullSet;
-    }
-
     public static ObjectValueSet forExactType(Nullness nullness, TypeId type, FlowContext context) {
         return new ObjectValueSet(nullness, type, Set.of(type), context);
     }
@@ -58,13 +50,14 @@ public sealed class ObjectValueSet extends ValueSet permits BoxedIntValueSet {
         return a.supertype.equals(b.supertype);
     }
 
-    private static Set<TypeId> mergeLowerBounds(TypeId aRoot, Set<TypeId> a, TypeId bRoot, Set<TypeId> b) {
+    private static Set<TypeId> mergeLowerBounds(TypeId aRoot, Set<TypeId> a, TypeId bRoot, Set<TypeId> b,
+                                                FlowContext context) {
         return Stream.concat(
                 a.stream().map(type -> {
                     for (TypeId other : b) {
-                        if (type.isSubtypeOf(other)) {
+                        if (context.isSubtype(type, other)) {
                             return type;
-                        } else if (other.isSubtypeOf(type)) {
+                        } else if (context.isSubtype(other, type)) {
                             return other;
                         }
                     }
@@ -72,28 +65,36 @@ public sealed class ObjectValueSet extends ValueSet permits BoxedIntValueSet {
                 }).filter(Objects::nonNull),
                 Stream.concat(
                         // Types for which the respective other set does not make any statement
-                        a.stream().filter(t -> TypeUtil.areSiblingTypes(bRoot, t)),
-                        b.stream().filter(t -> TypeUtil.areSiblingTypes(aRoot, t)))
+                        a.stream().filter(t -> TypeUtil.areSiblingTypes(bRoot, t, context)),
+                        b.stream().filter(t -> TypeUtil.areSiblingTypes(aRoot, t, context)))
         ).collect(Collectors.toSet());
     }
 
-    private static Set<TypeId> intersectLowerBounds(Set<TypeId> a, Set<TypeId> b) {
+    private static Set<TypeId> intersectLowerBounds(Set<TypeId> a, Set<TypeId> b, FlowContext context) {
         return Stream.concat(
-                a.stream().map(type -> b.stream().filter(type::isSubtypeOf).findAny().orElse(type)),
-                b.stream().map(type -> a.stream().filter(type::isSubtypeOf).findAny().orElse(type))
+                a.stream().map(type -> b.stream().filter(t -> context.isSubtype(type, t)).findAny().orElse(type)),
+                b.stream().map(type -> a.stream().filter(t -> context.isSubtype(type, t)).findAny().orElse(type))
         ).collect(Collectors.toSet());
     }
 
+    public Nullness getNullness() {
+        return this.nullness;
+    }
+
     public TypeId getSupertype() {
         return supertype;
     }
 
+    public Set<TypeId> getLowerLimitingTypes() {
+        return this.lowerLimitingTypes;
+    }
+
     public boolean isExact() {
         return this.exact;
     }
 
     public TypeId getFieldType(String name) {
-        return new TypeId(this.supertype.type().getDeclaredOrInheritedField(name).getType());
+        return this.context.getType(this.supertype.type().getDeclaredOrInheritedField(name).getType());
     }
 
     public ObjectValueSet asNonNull() {
@@ -110,6 +111,9 @@ public sealed class ObjectValueSet extends ValueSet permits BoxedIntValueSet {
 
     @Override
     public ValueSet merge(ValueSet o) {
+        if (this == o) {
+            return this;
+        }
         ObjectValueSet other = (ObjectValueSet) o;
         if (this.isEmpty()) {
             return other;
@@ -118,7 +122,8 @@ public sealed class ObjectValueSet extends ValueSet permits BoxedIntValueSet {
         } else {
             var resultType = TypeUtil.findLowestCommonSupertype(this.supertype, other.supertype, this.context);
             var resultBounds =
-                    mergeLowerBounds(this.supertype, this.lowerLimitingTypes, other.supertype, other.lowerLimitingTypes);
+                    mergeLowerBounds(this.supertype, this.lowerLimitingTypes, other.supertype, other.lowerLimitingTypes,
+                            this.context);
             return new ObjectValueSet(this.nullness.merge(other.nullness), resultType, resultBounds, this.context);
         }
     }
@@ -149,29 +154,32 @@ public sealed class ObjectValueSet extends ValueSet permits BoxedIntValueSet {
 
     @Override
     public ValueSet intersect(ValueSet o) {
+        if (this == o) {
+            return this;
+        }
         ObjectValueSet other = (ObjectValueSet) o;
 
         // This or other is the nulltype, for which we do not know supertypes / lower bounds
         if (this.supertype.isNulltype() && other.nullness.canBeNull() || other.supertype.isNulltype() && this.nullness.canBeNull()) {
-            return ObjectValueSet.getNullSet(this.context);
+            return this.context.getNullSet();
         }
 
         if (this.nullness.intersect(other.nullness) == Nullness.BOTTOM) {
             return ObjectValueSet.bottom(this.context);
-        } else if (other.supertype.isSubtypeOf(this.supertype)
-                && this.lowerLimitingTypes.stream().noneMatch(t -> TypeUtil.isTrueSubtype(other.supertype, t))) {
+        } else if (this.context.isSubtype(other.supertype, this.supertype)
+                && this.lowerLimitingTypes.stream().noneMatch(t -> TypeUtil.isTrueSubtype(other.supertype, t, this.context))) {
             return new ObjectValueSet(
                     this.nullness.intersect(other.nullness),
                     other.supertype,
-                    intersectLowerBounds(this.lowerLimitingTypes, other.lowerLimitingTypes),
+                    intersectLowerBounds(this.lowerLimitingTypes, other.lowerLimitingTypes, this.context),
                     this.context
             );
-        } else if (this.supertype.isSubtypeOf(other.supertype)
-                && other.lowerLimitingTypes.stream().noneMatch(t -> TypeUtil.isTrueSubtype(this.supertype, t))) {
+        } else if (this.context.isSubtype(this.supertype, other.supertype)
+                && other.lowerLimitingTypes.stream().noneMatch(t -> TypeUtil.isTrueSubtype(this.supertype, t, this.context))) {
             return new ObjectValueSet(
                     this.nullness.intersect(other.nullness),
                     this.supertype,
-                    intersectLowerBounds(this.lowerLimitingTypes, other.lowerLimitingTypes),
+                    intersectLowerBounds(this.lowerLimitingTypes, other.lowerLimitingTypes, this.context),
                     this.context
             );
         } else {
@@ -179,6 +187,27 @@ public sealed class ObjectValueSet extends ValueSet permits BoxedIntValueSet {
         }
     }
 
+    @Override
+    public boolean intersects(ValueSet o) {
+        if (this == o) {
+            return !this.isEmpty();
+        }
+        ObjectValueSet other = (ObjectValueSet) o;
+
+        // Same cases as in intersect
+        if (this.supertype.isNulltype() && other.nullness.canBeNull() || other.supertype.isNulltype() && this.nullness.canBeNull()) {
+            return true;
+        }
+
+        if (this.nullness.intersect(other.nullness) == Nullness.BOTTOM) {
+            return false;
+        }
+        return this.context.isSubtype(other.supertype, this.supertype)
+                && this.lowerLimitingTypes.stream().noneMatch(t -> TypeUtil.isTrueSubtype(other.supertype, t, this.context))
+                || this.context.isSubtype(this.supertype, other.supertype)
+                && other.lowerLimitingTypes.stream().noneMatch(t -> TypeUtil.isTrueSubtype(this.supertype, t, this.context));
+    }
+
     @Override
     public boolean isSupersetOf(ValueSet o) {
         ObjectValueSet other = (ObjectValueSet) o;
@@ -188,14 +217,14 @@ public sealed class ObjectValueSet extends ValueSet permits BoxedIntValueSet {
             return false;
         } else if (this.nullness == Nullness.NULL && other.nullness == Nullness.NULL) {
             return true;
-        } else if (this.nullness != Nullness.NON_NULL && other == getNullSet(this.context)) {
+        } else if (this.nullness != Nullness.NON_NULL && other == this.context.getNullSet()) {
             return true;
         }
 
         return this.nullness.isSupersetOf(other.nullness)
-                && other.supertype.isSubtypeOf(this.supertype)
+                && this.context.isSubtype(other.supertype, this.supertype)
                 && this.lowerLimitingTypes.stream()
-                .noneMatch(t -> other.supertype.isSubtypeOf(t) && !t.equals(other.supertype));
+                .noneMatch(t -> this.context.isSubtype(other.supertype, t) && !t.equals(other.supertype));
     }
 
     @Override
@@ -245,10 +274,10 @@ public sealed class ObjectValueSet extends ValueSet permits BoxedIntValueSet {
 
         if (this.isEmpty()) {
             return ObjectValueSet.bottom(this.context);
-        } else if (this.supertype.isSubtypeOf(newType)) {
+        } else if (this.context.isSubtype(this.supertype, newType)) {
             // Upcast
             return this;
-        } else if (newType.isSubtypeOf(this.supertype)) {
+        } else if (this.context.isSubtype(newType, this.supertype)) {
             // Downcast
             return new ObjectValueSet(this.nullness, newType, this.lowerLimitingTypes, this.context);
         } else if (this.supertype.isNulltype()) {
@@ -263,14 +292,18 @@ public sealed class ObjectValueSet extends ValueSet permits BoxedIntValueSet {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ObjectValueSet that = (ObjectValueSet) o;
-        return this.lowerLimitingTypes.equals(that.lowerLimitingTypes)
+        return this.hashCode() == that.hashCode()
+                && this.lowerLimitingTypes.equals(that.lowerLimitingTypes)
                 && nullness == that.nullness
                 && Objects.equals(supertype, that.supertype);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(nullness, supertype, lowerLimitingTypes);
+        if (this.hash == 0) {
+            this.hash = Objects.hash(nullness, supertype, lowerLimitingTypes);
+        }
+        return this.hash;
     }
 
     @Override
@@ -8,23 +8,17 @@ import de.firemage.flork.flow.engine.Relation;
 public abstract sealed class ValueSet permits BooleanValueSet, NumericValueSet, ObjectValueSet, VoidValue {
 
     public static ValueSet topForType(TypeId type, FlowContext context) {
-        if (!type.isPrimitive()) {
-            if (type.getName().equals("java.lang.Integer")) {
-                return new BoxedIntValueSet(Nullness.UNKNOWN, IntValueSet.topForInt(), context);
-            } else if (context.isEffectivelyFinalType(type)) {
-                return ObjectValueSet.forExactType(Nullness.UNKNOWN, type, context);
-            } else {
-                return ObjectValueSet.forUnconstrainedType(Nullness.UNKNOWN, type, context);
-            }
-        } else {
-            return switch (type.getName()) {
-                case "boolean" -> BooleanValueSet.top();
-                case "int" -> IntValueSet.topForInt();
-                case "long" -> LongValueSet.TOP;
-                case "double" -> DoubleValueSet.TOP;
-                default -> throw new UnsupportedOperationException(type.getName());
-            };
-        }
+        return switch (type.kind()) {
+            case BOOLEAN -> BooleanValueSet.top();
+            case INT -> IntValueSet.topForInt();
+            case LONG -> LongValueSet.TOP;
+            case DOUBLE -> DoubleValueSet.TOP;
+            case BYTE, SHORT, CHAR, FLOAT, VOID -> throw new UnsupportedOperationException(type.getName());
+            case BOXED_INT -> new BoxedIntValueSet(Nullness.UNKNOWN, IntValueSet.topForInt(), context);
+            case OBJECT, NULL, REFERENCE -> context.isEffectivelyFinalType(type)
+                    ? ObjectValueSet.forExactType(Nullness.UNKNOWN, type, context)
+                    : ObjectValueSet.forUnconstrainedType(Nullness.UNKNOWN, type, context);
+        };
     }
 
     public abstract ValueSet merge(ValueSet other);
@@ -41,7 +35,10 @@ public abstract sealed class ValueSet permits BooleanValueSet, NumericValueSet,
 
     public abstract boolean isSupersetOf(ValueSet other);
 
-    public boolean isCompatible(ValueSet other) {
+    /**
+     * Equivalent to {@code !this.intersect(other).isEmpty()}, but subclasses avoid building the intersection
+     */
+    public boolean intersects(ValueSet other) {
         return !this.intersect(other).isEmpty();
     }
 
@@ -0,0 +1,142 @@
+package de.firemage.flork.flow.value;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Hash-conses value sets, so that equal value sets share one instance (and can therefore be compared by identity).
+ * Interned instances are only weakly referenced, so the table does not keep dead values alive.
+ * Results of merge & intersect on interned instances are memoized in a small LRU cache.
+ * All methods are thread-safe. Both the table and the cache are split into stripes that are selected by hash and
+ * locked independently, so that parallel analyses rarely wait for each other.
+ */
+public class ValueSetInterner {
+    private static final int STRIPES = 16;
+    private static final int MEMO_CAPACITY = 4096;
+
+    private final TableStripe[] tables = new TableStripe[STRIPES];
+    private final MemoStripe[] memos = new MemoStripe[STRIPES];
+
+    public ValueSetInterner() {
+        for (int i = 0; i < STRIPES; i++) {
+            this.tables[i] = new TableStripe();
+            this.memos[i] = new MemoStripe();
+        }
+    }
+
+    public ValueSet intern(ValueSet value) {
+        if (value instanceof BooleanValueSet) {
+            // Already canonical
+            return value;
+        }
+
+        TableStripe table = this.tables[stripe(value.hashCode())];
+        synchronized (table) {
+            var existing = table.get(value);
+            ValueSet result = existing == null ? null : existing.get();
+            if (result == null) {
+                table.put(value, new WeakReference<>(value));
+                result = value;
+            }
+            return result;
+        }
+    }
+
+    public ValueSet merge(ValueSet a, ValueSet b) {
+        return this.apply(a, b, false);
+    }
+
+    public ValueSet intersect(ValueSet a, ValueSet b) {
+        return this.apply(a, b, true);
+    }
+
+    /**
+     * @return how many interned value sets are still alive
+     */
+    int size() {
+        int size = 0;
+        for (TableStripe table : this.tables) {
+            synchronized (table) {
+                size += table.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return how many merges & intersections have been answered from the cache
+     */
+    long getMemoHits() {
+        long hits = 0;
+        for (MemoStripe memo : this.memos) {
+            synchronized (memo) {
+                hits += memo.hits;
+            }
+        }
+        return hits;
+    }
+
+    private ValueSet apply(ValueSet a, ValueSet b, boolean intersect) {
+        a = this.intern(a);
+        b = this.intern(b);
+        if (a == b) {
+            return a;
+        }
+
+        var operation = new Operation(a, b, intersect);
+        MemoStripe memo = this.memos[stripe(operation.hashCode())];
+        synchronized (memo) {
+            ValueSet result = memo.get(operation);
+            if (result != null) {
+                memo.hits++;
+                return result;
+            }
+        }
+
+        // Computed outside the lock; concurrent computations of the same operation intern to the same instance
+        ValueSet result = this.intern(intersect ? a.intersect(b) : a.merge(b));
+        synchronized (memo) {
+            memo.put(operation, result);
+        }
+        return result;
+    }
+
+    private static int stripe(int hash) {
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private static final class TableStripe extends WeakHashMap<ValueSet, WeakReference<ValueSet>> {
+    }
+
+    private static final class MemoStripe extends LinkedHashMap<Operation, ValueSet> {
+        private long hits;
+
+        private MemoStripe() {
+            super(64, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Operation, ValueSet> eldest) {
+            return this.size() > MEMO_CAPACITY / STRIPES;
+        }
+    }
+
+    /**
+     * Operands are interned, so they can be compared by identity
+     */
+    private record Operation(ValueSet lhs, ValueSet rhs, boolean intersect) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Operation other && this.lhs == other.lhs && this.rhs == other.rhs
+                    && this.intersect == other.intersect;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * System.identityHashCode(this.lhs) + System.identityHashCode(this.rhs))
+                    + Boolean.hashCode(this.intersect);
+        }
+    }
+}
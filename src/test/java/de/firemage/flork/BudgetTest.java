@@ -0,0 +1,77 @@
+package de.firemage.flork;
+
+import de.firemage.flork.flow.AnalysisBudget;
+import de.firemage.flork.flow.AnalysisOptions;
+import de.firemage.flork.flow.value.IntValueSet;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BudgetTest {
+    private static final String CODE = """
+            public class Foo {
+                public static int foo() {
+                    return sign(3);
+                }
+
+                public static int sign(int x) {
+                    if (x < 0) {
+                        return -1;
+                    } else if (x > 0) {
+                        return 1;
+                    }
+                    return 0;
+                }
+            }
+            """;
+
+    @Test
+    void testExitStateBudget() throws IOException {
+        var options = AnalysisOptions.defaults().withBudget(AnalysisBudget.unlimited().withMaxExitStates(2));
+        var context = TestUtil.getFlowContext("Foo.java", CODE, true, options);
+        var sign = context.getCachedMethod(TestUtil.getMethod("Foo", "sign", context).getReference());
+        var analysis = sign.getFixedCallAnalysis();
+
+        // Falls back to the stub, which can return anything
+        TestUtil.canReturn(IntValueSet.ofIntSingle(42), analysis);
+        assertEquals(1, context.getBudgetViolations().size());
+        assertEquals(sign, context.getBudgetViolations().getFirst().method());
+    }
+
+    @Test
+    void testExitStateBudgetIgnoresCompaction() throws IOException {
+        // sign is compacted to a single exit state, but produced three
+        var options = AnalysisOptions.defaults()
+                .withMaxExitStates(1)
+                .withBudget(AnalysisBudget.unlimited().withMaxExitStates(2));
+        var context = TestUtil.getFlowContext("Foo.java", CODE, true, options);
+        var sign = context.getCachedMethod(TestUtil.getMethod("Foo", "sign", context).getReference());
+        sign.getFixedCallAnalysis();
+        assertEquals(1, context.getBudgetViolations().size());
+    }
+
+    @Test
+    void testCallerContinuesAfterViolation() throws IOException {
+        var options = AnalysisOptions.defaults().withBudget(AnalysisBudget.unlimited().withMaxExitStates(2));
+        var context = TestUtil.getFlowContext("Foo.java", CODE, true, options);
+        var analysis = context.getCachedMethod(TestUtil.getMethod("Foo", "foo", context).getReference())
+                .getFixedCallAnalysis();
+
+        // Only sign exceeded its budget
+        TestUtil.canReturn(IntValueSet.ofIntSingle(42), analysis);
+        assertEquals(1, context.getBudgetViolations().size());
+    }
+
+    @Test
+    void testWithinBudget() throws IOException {
+        var options = AnalysisOptions.defaults().withBudget(new AnalysisBudget(60_000, 64, 1024, 8));
+        var context = TestUtil.getFlowContext("Foo.java", CODE, true, options);
+        var analysis = context.getCachedMethod(TestUtil.getMethod("Foo", "foo", context).getReference())
+                .getFixedCallAnalysis();
+        TestUtil.mustReturn(IntValueSet.ofIntSingle(1), analysis);
+        assertTrue(context.getBudgetViolations().isEmpty());
+    }
+}
@@ -1,10 +1,16 @@
 package de.firemage.flork;
 
+import de.firemage.flork.flow.AnalysisOptions;
+import de.firemage.flork.flow.DispatchMode;
 import de.firemage.flork.flow.value.IntValueSet;
 import org.junit.jupiter.api.Test;
 import spoon.compiler.ModelBuildingException;
 
 import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class DispatchTest {
     @Test
@@ -45,4 +51,126 @@ public class DispatchTest {
         TestUtil.canReturn(IntValueSet.ofIntSingle(1), analysis);
         TestUtil.canReturn(IntValueSet.ofIntSingle(2), analysis);
     }
+
+    @Test
+    void testRapidTypeAnalysis() throws ModelBuildingException, IOException {
+        var code = """
+            public class Foo {
+                public static int main() {
+                    return new Foo().foo(1);
+                }
+
+                public int foo(int x) {
+                    int foo = this.bar(x);
+                    return foo;
+                }
+
+                public int bar(int x) {
+                    return 0;
+                }
+            }
+
+            class Bar extends Foo {
+                @Override
+                public int bar(int x) {
+                    return 1;
+                }
+            }
+            """;
+
+        var options = AnalysisOptions.defaults().withDispatchMode(DispatchMode.RAPID_TYPE_ANALYSIS);
+        var context = TestUtil.getFlowContext("Foo.java", code, true, options);
+        var main = TestUtil.getMethod("Foo", "main", context);
+        context.setEntryPoints(List.of(main.getReference()));
+
+        // Bar is never instantiated, so Bar::bar cannot be called
+        var method = TestUtil.getMethod("Foo", "foo", context);
+        var analysis = context.getCachedMethod(method.getReference()).getFixedCallAnalysis();
+        TestUtil.mustReturn(IntValueSet.ofIntSingle(0), analysis);
+    }
+
+    @Test
+    void testRapidTypeAnalysisStaticField() throws ModelBuildingException, IOException {
+        var code = """
+            public class Foo {
+                public static int main() {
+                    return Config.DEFAULT.area();
+                }
+            }
+
+            class Shape {
+                public int area() {
+                    return 1;
+                }
+            }
+
+            class Square extends Shape {
+                public int area() {
+                    return 0;
+                }
+            }
+
+            class Circle extends Shape {
+            }
+
+            class Config {
+                static final Shape DEFAULT = new Circle();
+            }
+            """;
+
+        var options = AnalysisOptions.defaults().withDispatchMode(DispatchMode.RAPID_TYPE_ANALYSIS);
+        var context = TestUtil.getFlowContext("Foo.java", code, true, options);
+        var main = TestUtil.getMethod("Foo", "main", context);
+        context.setEntryPoints(List.of(main.getReference()));
+
+        // Reading Config.DEFAULT initializes Config, which instantiates Circle
+        assertTrue(context.getRapidTypeAnalysis().isPossiblyInstantiated(context.getType("Circle")));
+        assertFalse(context.getRapidTypeAnalysis().isPossiblyInstantiated(context.getType("Square")));
+        var analysis = context.getCachedMethod(main.getReference()).getFixedCallAnalysis();
+        TestUtil.mustReturn(IntValueSet.ofIntSingle(1), analysis);
+    }
+
+    @Test
+    void testRapidTypeAnalysisLambda() throws ModelBuildingException, IOException {
+        var code = """
+            public class Foo {
+                public static int lambda() {
+                    Op op = x -> x;
+                    return op.twice(1);
+                }
+
+                public static int reference() {
+                    Op op = Foo::id;
+                    return op.twice(1);
+                }
+
+                static int id(int x) {
+                    return x;
+                }
+            }
+
+            interface Op {
+                int apply(int x);
+
+                default int twice(int x) {
+                    return 2;
+                }
+            }
+            """;
+
+        var options = AnalysisOptions.defaults().withDispatchMode(DispatchMode.RAPID_TYPE_ANALYSIS);
+        var context = TestUtil.getFlowContext("Foo.java", code, true, options);
+        var lambda = TestUtil.getMethod("Foo", "lambda", context);
+        context.setEntryPoints(List.of(lambda.getReference()));
+
+        // Op is only implemented by the lambda
+        assertTrue(context.getRapidTypeAnalysis().isPossiblyInstantiated(context.getType("Op")));
+        var analysis = context.getCachedMethod(lambda.getReference()).getFixedCallAnalysis();
+        TestUtil.mustReturn(IntValueSet.ofIntSingle(2), analysis);
+
+        // The flow analysis does not support method references, so only check the instantiated types
+        context = TestUtil.getFlowContext("Foo.java", code, true, options);
+        context.setEntryPoints(List.of(TestUtil.getMethod("Foo", "reference", context).getReference()));
+        assertTrue(context.getRapidTypeAnalysis().isPossiblyInstantiated(context.getType("Op")));
+    }
 }
@@ -0,0 +1,77 @@
+package de.firemage.flork;
+
+import de.firemage.flork.flow.value.BooleanValueSet;
+import de.firemage.flork.flow.value.IntValueSet;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+public class RecursionTest {
+    @Test
+    void testRecursion() throws IOException {
+        var code = """
+                public class Foo {
+                    public static int foo(int x) {
+                        if (x <= 0) {
+                            return 0;
+                        }
+                        return foo(x - 1);
+                    }
+                }
+                """;
+
+        var context = TestUtil.getFlowContext("Foo.java", code, true);
+        var method = TestUtil.getMethod("Foo", "foo", context);
+        var analysis = context.getCachedMethod(method.getReference()).getFixedCallAnalysis();
+        TestUtil.canReturn(IntValueSet.ofIntSingle(0), analysis);
+        TestUtil.cannotReturn(IntValueSet.ofIntSingle(1), analysis);
+    }
+
+    @Test
+    void testMutualRecursion() throws IOException {
+        var code = """
+                public class Foo {
+                    public static boolean isEven(int x) {
+                        if (x == 0) {
+                            return true;
+                        }
+                        return isOdd(x - 1);
+                    }
+
+                    public static boolean isOdd(int x) {
+                        if (x == 0) {
+                            return false;
+                        }
+                        return isEven(x - 1);
+                    }
+                }
+                """;
+
+        var context = TestUtil.getFlowContext("Foo.java", code, true);
+        var method = TestUtil.getMethod("Foo", "isEven", context);
+        var analysis = context.getCachedMethod(method.getReference()).getFixedCallAnalysis();
+        TestUtil.canReturn(BooleanValueSet.of(true), analysis);
+        TestUtil.canReturn(BooleanValueSet.of(false), analysis);
+    }
+
+    @Test
+    void testRecursionWithoutFixpoint() throws IOException {
+        var code = """
+                public class Foo {
+                    public static int foo(int x) {
+                        if (x > 0) {
+                            return foo(x - 1) + 1;
+                        }
+                        return 0;
+                    }
+                }
+                """;
+
+        // The return value grows with every iteration, so the summary must be widened
+        var context = TestUtil.getFlowContext("Foo.java", code, true);
+        var method = TestUtil.getMethod("Foo", "foo", context);
+        var analysis = context.getCachedMethod(method.getReference()).getFixedCallAnalysis();
+        TestUtil.canReturn(IntValueSet.ofIntSingle(0), analysis);
+        TestUtil.canReturn(IntValueSet.ofIntSingle(100), analysis);
+    }
+}
@@ -0,0 +1,65 @@
+package de.firemage.flork;
+
+import de.firemage.flork.flow.AnalysisOptions;
+import de.firemage.flork.flow.value.IntValueSet;
+import de.firemage.flork.flow.value.ValueSet;
+import org.junit.jupiter.api.Test;
+import spoon.reflect.code.CtExpression;
+import spoon.reflect.code.CtReturn;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class SpecializationTest {
+    private static final String CODE = """
+            public class Foo {
+                public static int foo() {
+                    return inc(2) + inc(2);
+                }
+
+                public static int inc(int x) {
+                    return x + 1;
+                }
+            }
+            """;
+
+    @Test
+    void testSpecialization() throws IOException {
+        var options = AnalysisOptions.defaults().withSpecializationDepth(1);
+        var context = TestUtil.getFlowContext("Foo.java", CODE, true, options);
+        var method = TestUtil.getMethod("Foo", "foo", context);
+        var analysis = context.getCachedMethod(method.getReference()).getFixedCallAnalysis();
+        TestUtil.mustReturn(IntValueSet.ofIntSingle(6), analysis);
+        // Both calls share one specialization
+        assertEquals(1, context.getSpecializations().size());
+    }
+
+    @Test
+    void testSpecializationKeepsExpressionValues() throws IOException {
+        var options = AnalysisOptions.defaults().withSpecializationDepth(1);
+        var context = TestUtil.getFlowContext("Foo.java", CODE, true, options);
+        var inc = TestUtil.getMethod("Foo", "inc", context);
+        CtExpression<?> returned = ((CtReturn<?>) inc.getBody().getStatement(0)).getReturnedExpression();
+        context.getCachedMethod(inc.getReference()).getFixedCallAnalysis();
+        ValueSet general = context.getExpressionValue(returned);
+        assertNotNull(general);
+
+        // The specialized analysis of inc(2) must not overwrite the value of x + 1
+        var foo = TestUtil.getMethod("Foo", "foo", context);
+        context.getCachedMethod(foo.getReference()).getFixedCallAnalysis();
+        assertEquals(1, context.getSpecializations().size());
+        assertSame(general, context.getExpressionValue(returned));
+    }
+
+    @Test
+    void testWithoutSpecialization() throws IOException {
+        var context = TestUtil.getFlowContext("Foo.java", CODE, true);
+        var method = TestUtil.getMethod("Foo", "foo", context);
+        var analysis = context.getCachedMethod(method.getReference()).getFixedCallAnalysis();
+        TestUtil.canReturn(IntValueSet.ofIntSingle(7), analysis);
+        assertEquals(0, context.getSpecializations().size());
+    }
+}
@@ -0,0 +1,102 @@
+package de.firemage.flork;
+
+import de.firemage.flork.flow.AnalysisOptions;
+import de.firemage.flork.flow.FlowContext;
+import de.firemage.flork.flow.analysis.FixedMethodAnalysis;
+import de.firemage.flork.flow.analysis.FlowMethodAnalysis;
+import de.firemage.flork.flow.analysis.MethodAnalysis;
+import de.firemage.flork.flow.value.IntValueSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+public class SummaryStoreTest {
+    private static final String CODE = """
+            public class Foo {
+                public static int foo() {
+                    return sign(3) + 1;
+                }
+
+                public static int sign(int x) {
+                    if (x < 0) {
+                        return -1;
+                    } else if (x > 0) {
+                        return 1;
+                    }
+                    return 0;
+                }
+            }
+            """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testWarmStart() throws IOException {
+        var analysis = analyzeFoo(CODE, AnalysisOptions.defaults());
+        assertInstanceOf(FlowMethodAnalysis.class, analysis);
+        TestUtil.mustReturn(IntValueSet.ofIntSingle(2), analysis);
+        assertEquals(2, countSummaries());
+
+        // A new context loads the summary instead of analyzing foo again
+        analysis = analyzeFoo(CODE, AnalysisOptions.defaults());
+        assertInstanceOf(FixedMethodAnalysis.class, analysis);
+        TestUtil.mustReturn(IntValueSet.ofIntSingle(2), analysis);
+        assertEquals(2, countSummaries());
+    }
+
+    @Test
+    void testChangedCallee() throws IOException {
+        analyzeFoo(CODE, AnalysisOptions.defaults());
+
+        // foo itself is unchanged, but depends on the summary of sign
+        var analysis = analyzeFoo(CODE.replace("return 1;", "return 5;"), AnalysisOptions.defaults());
+        assertInstanceOf(FlowMethodAnalysis.class, analysis);
+        TestUtil.mustReturn(IntValueSet.ofIntSingle(6), analysis);
+        assertEquals(4, countSummaries());
+    }
+
+    @Test
+    void testChangedOptions() throws IOException {
+        analyzeFoo(CODE, AnalysisOptions.defaults());
+
+        var analysis = analyzeFoo(CODE, AnalysisOptions.defaults().withMaxExitStates(1));
+        assertInstanceOf(FlowMethodAnalysis.class, analysis);
+        assertEquals(4, countSummaries());
+    }
+
+    @Test
+    void testCorruptSummary() throws IOException {
+        analyzeFoo(CODE, AnalysisOptions.defaults());
+        try (var files = Files.list(this.directory)) {
+            for (Path file : files.toList()) {
+                Files.write(file, new byte[]{42});
+            }
+        }
+
+        // Unreadable summaries are ignored and replaced
+        var analysis = analyzeFoo(CODE, AnalysisOptions.defaults());
+        assertInstanceOf(FlowMethodAnalysis.class, analysis);
+        TestUtil.mustReturn(IntValueSet.ofIntSingle(2), analysis);
+        analysis = analyzeFoo(CODE, AnalysisOptions.defaults());
+        assertInstanceOf(FixedMethodAnalysis.class, analysis);
+    }
+
+    private MethodAnalysis analyzeFoo(String code, AnalysisOptions options) {
+        FlowContext context = TestUtil.getFlowContext("Foo.java", code, true, options);
+        context.setSummaryStore(this.directory);
+        return context.getCachedMethod(TestUtil.getMethod("Foo", "foo", context).getReference()).getFixedCallAnalysis();
+    }
+
+    private long countSummaries() throws IOException {
+        try (var files = Files.list(this.directory)) {
+            return files.filter(f -> f.toString().endsWith(".summary")).count();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package de.firemage.flork;
 
 import de.firemage.flork.compiler.InMemoryCompiler;
+import de.firemage.flork.flow.AnalysisOptions;
 import de.firemage.flork.flow.FlowContext;
 import de.firemage.flork.flow.TypeId;
 import de.firemage.flork.flow.analysis.MethodAnalysis;
@@ -28,11 +29,20 @@ public class TestUtil {
         return getFlowContext(new VirtualFile(fileContent), closedWorld);
     }
 
+    public static FlowContext getFlowContext(String fileName, String fileContent, boolean closedWorld,
+                                             AnalysisOptions options) {
+        return getFlowContext(new VirtualFile(fileContent), closedWorld, options);
+    }
+
     public static FlowContext getFlowContext(Path folder, boolean closedWorld) throws IOException {
         return getFlowContext(new FileSystemFolder(folder.toFile()), closedWorld);
     }
 
     public static FlowContext getFlowContext(SpoonResource resource, boolean closedWorld) {
+        return getFlowContext(resource, closedWorld, AnalysisOptions.defaults());
+    }
+
+    public static FlowContext getFlowContext(SpoonResource resource, boolean closedWorld, AnalysisOptions options) {
         Launcher launcher = new Launcher();
         launcher.addInputResource(resource);
         // launcher.addInputResource(new FileSystemFolder("jdk-minified"));
@@ -42,7 +52,7 @@ public class TestUtil {
         launcher.getEnvironment().setComplianceLevel(17);
 
         CtModel model = launcher.buildModel();
-        return new FlowContext(launcher.getFactory(), closedWorld);
+        return new FlowContext(launcher.getFactory(), closedWorld, options);
     }
 
     public static CtMethod<?> getMethod(String type, String method, FlowContext context) {
@@ -0,0 +1,93 @@
+package de.firemage.flork.flow;
+
+import de.firemage.flork.TestUtil;
+import org.junit.jupiter.api.Test;
+import spoon.reflect.declaration.CtType;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlowContextTest {
+    private static final String CODE = """
+            public class Foo {
+                static class Nested {
+                }
+            }
+
+            final class Leaf extends Foo {
+            }
+
+            class Base {
+            }
+
+            class Middle extends Base {
+            }
+
+            class Bottom extends Middle {
+            }
+
+            interface Service {
+            }
+
+            interface Unused {
+            }
+
+            class ServiceImpl implements Service {
+            }
+            """;
+
+    @Test
+    void effectivelyFinalMatchesUncachedCheck() {
+        for (boolean closedWorld : List.of(true, false)) {
+            FlowContext context = TestUtil.getFlowContext("Foo.java", CODE, closedWorld, AnalysisOptions.defaults());
+            List<TypeId> types = context.getAllTypes().toList();
+            for (TypeId type : types) {
+                boolean expected = isEffectivelyFinal(type, types, closedWorld);
+                assertEquals(expected, context.isEffectivelyFinalType(type), type + ", closed world: " + closedWorld);
+                // Memoized answers stay the same
+                assertEquals(expected, context.isEffectivelyFinalType(type));
+            }
+        }
+    }
+
+    @Test
+    void effectivelyFinalTypes() {
+        FlowContext context = TestUtil.getFlowContext("Foo.java", CODE, true, AnalysisOptions.defaults());
+        assertTrue(context.isEffectivelyFinalType(context.getType("Leaf")));
+        assertTrue(context.isEffectivelyFinalType(context.getType("Bottom")));
+        assertFalse(context.isEffectivelyFinalType(context.getType("Middle")));
+        // Interfaces may be implemented by lambdas, even if no class implements them
+        assertFalse(context.isEffectivelyFinalType(context.getType("Unused")));
+        // JDK classes may have subclasses that are not part of the model
+        assertFalse(context.isEffectivelyFinalType(context.getObject()));
+    }
+
+    @Test
+    void objectType() {
+        FlowContext context = TestUtil.getFlowContext("Foo.java", CODE, true, AnalysisOptions.defaults());
+        TypeId object = context.getObject();
+        assertTrue(object.isObject());
+        assertSame(object, context.getObject());
+        assertEquals(context.getType(context.getFactory().Type().createReference(Object.class)), object);
+        assertEquals(object, TypeUtil.getBestSuperclass(context.getType("Base"), context));
+    }
+
+    /**
+     * Scans the whole model, like the check did before it was memoized
+     */
+    private static boolean isEffectivelyFinal(TypeId type, List<TypeId> types, boolean closedWorld) {
+        CtType<?> declaration = type.type().getDeclaration();
+        if (type.type().isInterface() || declaration == null) {
+            return false;
+        } else if (declaration.isFinal()) {
+            return true;
+        } else if (closedWorld) {
+            return types.stream().noneMatch(t -> !t.equals(type) && t.isSubtypeOf(type));
+        }
+        return false;
+    }
+}
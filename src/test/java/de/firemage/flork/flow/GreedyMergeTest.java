@@ -0,0 +1,77 @@
+package de.firemage.flork.flow;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GreedyMergeTest {
+    @Test
+    void mergesCheapestPairsFirst() {
+        var result = GreedyMerge.mergeToBudget(List.of(range(0, 0), range(10, 10), range(1, 1), range(12, 12)), 2,
+                GreedyMergeTest::cost, GreedyMergeTest::merge);
+        assertEquals(List.of(range(0, 1), range(10, 12)), result);
+    }
+
+    @Test
+    void reconsidersMergedItems() {
+        // After merging 0 and 1, [0, 1] is closer to 3 than 6 is
+        var result = GreedyMerge.mergeToBudget(List.of(range(0, 0), range(1, 1), range(3, 3), range(6, 6)), 2,
+                GreedyMergeTest::cost, GreedyMergeTest::merge);
+        assertEquals(List.of(range(0, 3), range(6, 6)), result);
+    }
+
+    @Test
+    void keepsItemsWithinBudget() {
+        var items = List.of(range(0, 0), range(5, 5));
+        assertSame(items, GreedyMerge.mergeToBudget(items, 2, GreedyMergeTest::cost, GreedyMergeTest::merge));
+    }
+
+    @Test
+    void keepsUnmergeableItems() {
+        // Negative and positive ranges cannot be merged
+        var items = List.of(range(-2, -2), range(1, 1), range(-1, -1), range(2, 2));
+        var result = GreedyMerge.mergeToBudget(items, 1, GreedyMergeTest::cost, GreedyMergeTest::merge);
+        assertEquals(List.of(range(-2, -1), range(1, 2)), result);
+    }
+
+    @Test
+    void mergesManyItems() {
+        List<Range> items = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            items.add(range(i * i, i * i));
+        }
+        var result = GreedyMerge.mergeToBudget(items, 10, GreedyMergeTest::cost, GreedyMergeTest::merge);
+        assertEquals(10, result.size());
+        assertEquals(0, result.getFirst().min());
+        assertEquals(199 * 199, result.getLast().max());
+        for (int i = 1; i < result.size(); i++) {
+            assertTrue(result.get(i - 1).max() < result.get(i).min());
+        }
+    }
+
+    private static Range range(int min, int max) {
+        return new Range(min, max);
+    }
+
+    private static int cost(Range a, Range b) {
+        if (Integer.signum(a.min()) * Integer.signum(b.min()) < 0) {
+            return -1;
+        }
+        return merge(a, b).width() - a.width() - b.width();
+    }
+
+    private static Range merge(Range a, Range b) {
+        return new Range(Math.min(a.min(), b.min()), Math.max(a.max(), b.max()));
+    }
+
+    private record Range(int min, int max) {
+        int width() {
+            return this.max - this.min;
+        }
+    }
+}
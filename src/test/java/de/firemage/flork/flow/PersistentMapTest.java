@@ -0,0 +1,72 @@
+package de.firemage.flork.flow;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersistentMapTest {
+
+    @Test
+    void putAndRemoveAreNonDestructive() {
+        PersistentMap<String, Integer> empty = PersistentMap.empty();
+        var a = empty.put("a", 1);
+        var ab = a.put("b", 2);
+        var b = ab.remove("a");
+
+        assertTrue(empty.isEmpty());
+        assertEquals(1, a.size());
+        assertEquals(2, ab.size());
+        assertEquals(1, ab.get("a"));
+        assertEquals(2, ab.get("b"));
+        assertNull(b.get("a"));
+        assertEquals(2, b.get("b"));
+        assertEquals(1, a.get("a"));
+    }
+
+    @Test
+    void collidingHashes() {
+        // "Aa" and "BB" have the same hash code
+        PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty().put("Aa", 1).put("BB", 2);
+        assertEquals(1, map.get("Aa"));
+        assertEquals(2, map.get("BB"));
+        assertEquals(1, map.remove("BB").size());
+        assertFalse(map.remove("Aa").containsKey("Aa"));
+        assertEquals(2, map.put("C", 3).remove("C").size());
+    }
+
+    @Test
+    void behavesLikeHashMap() {
+        Random random = new Random(42);
+        Map<Integer, Integer> expected = new HashMap<>();
+        PersistentMap<Integer, Integer> actual = PersistentMap.empty();
+        for (int i = 0; i < 10_000; i++) {
+            int key = random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                actual = actual.remove(key);
+            } else {
+                expected.put(key, i);
+                actual = actual.put(key, i);
+            }
+        }
+
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.hashCode(), actual.hashCode());
+        for (var entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), actual.get(entry.getKey()));
+        }
+
+        PersistentMap<Integer, Integer> rebuilt = PersistentMap.empty();
+        for (var entry : expected.entrySet()) {
+            rebuilt = rebuilt.put(entry.getKey(), entry.getValue());
+        }
+        assertEquals(rebuilt, actual);
+    }
+}
@@ -0,0 +1,48 @@
+package de.firemage.flork.flow;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PersistentVectorTest {
+
+    @Test
+    void appendAndGet() {
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            vector = vector.append(i);
+            expected.add(i);
+        }
+
+        assertEquals(expected.size(), vector.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), vector.get(i));
+        }
+        assertEquals(expected.hashCode(), vector.hashCode());
+    }
+
+    @Test
+    void setIsNonDestructive() {
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        for (int i = 0; i < 100; i++) {
+            vector = vector.append(i);
+        }
+
+        var modified = vector.set(3, -1).set(98, -2);
+        assertEquals(3, vector.get(3));
+        assertEquals(98, vector.get(98));
+        assertEquals(-1, modified.get(3));
+        assertEquals(-2, modified.get(98));
+
+        int i = 0;
+        for (int value : modified) {
+            assertEquals(i == 3 ? -1 : i == 98 ? -2 : i, value);
+            i++;
+        }
+        assertEquals(100, i);
+    }
+}
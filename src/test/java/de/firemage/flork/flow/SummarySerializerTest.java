@@ -0,0 +1,115 @@
+package de.firemage.flork.flow;
+
+import de.firemage.flork.TestUtil;
+import de.firemage.flork.flow.analysis.FixedMethodAnalysis;
+import de.firemage.flork.flow.exit.MethodExitState;
+import de.firemage.flork.flow.value.BooleanValueSet;
+import de.firemage.flork.flow.value.BoxedIntValueSet;
+import de.firemage.flork.flow.value.DoubleValueSet;
+import de.firemage.flork.flow.value.IntValueSet;
+import de.firemage.flork.flow.value.LongValueSet;
+import de.firemage.flork.flow.value.Nullness;
+import de.firemage.flork.flow.value.ObjectValueSet;
+import de.firemage.flork.flow.value.ValueSet;
+import de.firemage.flork.flow.value.VoidValue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SummarySerializerTest {
+    private static final String CODE = """
+            public class Foo {
+                public static void foo(int x) {
+                }
+            }
+            class Bar extends Foo {
+            }
+            """;
+
+    private FlowContext context;
+    private CachedMethod method;
+    private SummarySerializer serializer;
+
+    @BeforeEach
+    void setUp() {
+        this.context = TestUtil.getFlowContext("Foo.java", CODE, true, AnalysisOptions.defaults());
+        this.method = this.context.getCachedMethod(TestUtil.getMethod("Foo", "foo", this.context).getReference());
+        this.serializer = new SummarySerializer(this.context);
+    }
+
+    @Test
+    void roundTripsAllValueSets() throws IOException {
+        TypeId foo = this.context.getType("Foo");
+        TypeId bar = this.context.getType("Bar");
+        List<ValueSet> values = List.of(
+                VoidValue.getInstance(),
+                BooleanValueSet.top(),
+                BooleanValueSet.bottom(),
+                IntValueSet.topForInt(),
+                IntValueSet.ofIntSingle(-5).merge(IntValueSet.ofIntRange(10, 100_000)),
+                IntValueSet.ofIntSingle(1).intersect(IntValueSet.ofIntSingle(2)),
+                LongValueSet.ofRange(Long.MIN_VALUE, 3),
+                LongValueSet.BOTTOM,
+                DoubleValueSet.ofRange(-0.5, 2.0),
+                DoubleValueSet.NAN,
+                DoubleValueSet.TOP,
+                new BoxedIntValueSet(Nullness.NON_NULL, IntValueSet.ofIntRange(0, 9), this.context),
+                ObjectValueSet.forExactType(Nullness.NON_NULL, foo, this.context),
+                new ObjectValueSet(Nullness.UNKNOWN, foo, Set.of(bar), this.context),
+                ObjectValueSet.bottom(this.context),
+                this.context.getNullSet()
+        );
+        var exitStates = values.stream()
+                .map(v -> MethodExitState.forReturn(v, List.of(v, IntValueSet.ofIntSingle(0))))
+                .toList();
+
+        var result = this.roundTrip(exitStates);
+        assertEquals(exitStates, result);
+        // The null set is compared by identity
+        assertSame(this.context.getNullSet(), result.getLast().getReturnValue());
+    }
+
+    @Test
+    void roundTripsThrows() throws IOException {
+        var exitStates = List.of(
+                MethodExitState.forThrow(this.context.getType("java.lang.IllegalStateException"),
+                        List.of(IntValueSet.ofIntRange(-3, 3))),
+                MethodExitState.forReturn(VoidValue.getInstance(), List.of(IntValueSet.ofIntSingle(4)))
+        );
+        assertEquals(exitStates, this.roundTrip(exitStates));
+    }
+
+    @Test
+    void isDeterministic() {
+        TypeId foo = this.context.getType("Foo");
+        var lowerTypes = Set.of(this.context.getType("Bar"), this.context.getType("Baz"), this.context.getType("Qux"));
+        var analysis = new FixedMethodAnalysis(this.method, List.of(
+                MethodExitState.forReturn(new ObjectValueSet(Nullness.UNKNOWN, foo, lowerTypes, this.context), List.of())));
+        var sameAnalysis = new FixedMethodAnalysis(this.method, List.of(
+                MethodExitState.forReturn(new ObjectValueSet(Nullness.UNKNOWN, foo, Set.copyOf(lowerTypes), this.context), List.of())));
+        assertArrayEquals(this.serializer.serialize(analysis), this.serializer.serialize(sameAnalysis));
+    }
+
+    @Test
+    void rejectsCorruptData() {
+        var analysis = new FixedMethodAnalysis(this.method, List.of(
+                MethodExitState.forReturn(VoidValue.getInstance(), List.of(IntValueSet.ofIntRange(0, 1000)))));
+        byte[] data = this.serializer.serialize(analysis);
+        assertThrows(IOException.class, () -> this.serializer.deserialize(this.method, Arrays.copyOf(data, data.length - 1)));
+        assertThrows(IOException.class, () -> this.serializer.deserialize(this.method, new byte[]{1, 2, 3, 4, 5}));
+    }
+
+    private List<MethodExitState> roundTrip(List<MethodExitState> exitStates) throws IOException {
+        byte[] data = this.serializer.serialize(new FixedMethodAnalysis(this.method, exitStates));
+        return this.serializer.deserialize(this.method, data).getReturnStates();
+    }
+}
@@ -0,0 +1,192 @@
+package de.firemage.flork.flow;
+
+import de.firemage.flork.TestUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import spoon.reflect.declaration.CtExecutable;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.declaration.CtTypeParameter;
+import spoon.reflect.reference.CtExecutableReference;
+import spoon.reflect.visitor.filter.TypeFilter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TypeHierarchyTest {
+    private static final String CODE = """
+            import java.util.ArrayList;
+
+            public class Foo {
+            }
+
+            interface Shape extends Comparable<Shape> {
+                int area();
+            }
+
+            interface Named {
+                String name();
+            }
+
+            // Diamond: Shape is reachable through Base and through Both
+            interface Both extends Shape, Named {
+            }
+
+            abstract class Base implements Shape {
+                public int area() {
+                    return 0;
+                }
+
+                public int compareTo(Shape other) {
+                    return 0;
+                }
+            }
+
+            class Circle extends Base implements Both {
+                public int area() {
+                    return 1;
+                }
+
+                public String name() {
+                    return "circle";
+                }
+            }
+
+            class Square extends Base {
+                public int area() {
+                    return 2;
+                }
+            }
+
+            class Unit extends Square {
+                public int area() {
+                    return 3;
+                }
+            }
+
+            class Shapes<T extends Square> extends ArrayList<T> {
+            }
+
+            class Holder<T extends Circle & Named> {
+                T value;
+            }
+            """;
+
+    private FlowContext context;
+    private TypeHierarchy hierarchy;
+    private List<TypeId> types;
+
+    @BeforeEach
+    void setUp() {
+        this.context = TestUtil.getFlowContext("Foo.java", CODE, true, AnalysisOptions.defaults());
+        this.hierarchy = this.context.getTypeHierarchy();
+
+        this.types = new ArrayList<>();
+        for (CtType<?> type : this.context.getModel().getElements(new TypeFilter<>(CtType.class))) {
+            if (!(type instanceof CtTypeParameter)) {
+                this.types.add(this.context.getType(type.getReference()));
+            }
+        }
+        for (Class<?> jdkType : List.of(Object.class, Comparable.class, ArrayList.class, java.util.List.class,
+                java.util.Collection.class, java.io.Serializable.class, String.class)) {
+            this.types.add(this.jdkType(jdkType));
+        }
+    }
+
+    @Test
+    void subtypesMatchSpoon() {
+        TypeId string = this.jdkType(String.class);
+        TypeId comparable = this.jdkType(Comparable.class);
+        for (TypeId a : this.types) {
+            for (TypeId b : this.types) {
+                if (a.equals(string) && b.equals(comparable)) {
+                    // Spoon answers this wrongly for the raw reference
+                    assertTrue(this.hierarchy.isSubtypeOf(a, b));
+                } else {
+                    assertEquals(a.isSubtypeOf(b), this.hierarchy.isSubtypeOf(a, b), a + " <: " + b);
+                }
+            }
+        }
+
+        assertTrue(this.hierarchy.isSubtypeOf(this.type("Circle"), this.type("Shape")));
+        assertTrue(this.hierarchy.isSubtypeOf(this.type("Unit"), comparable));
+        assertTrue(this.hierarchy.isSubtypeOf(this.type("Shapes"), this.jdkType(java.util.List.class)));
+        assertFalse(this.hierarchy.isSubtypeOf(this.type("Square"), this.type("Named")));
+    }
+
+    @Test
+    void lowestCommonSupertypeMatchesParentWalk() {
+        for (TypeId a : this.types) {
+            for (TypeId b : this.types) {
+                assertEquals(this.walkLowestCommonSupertype(a, b), this.hierarchy.getLowestCommonSupertype(a, b),
+                        a + " & " + b);
+            }
+        }
+
+        assertEquals(this.type("Base"), this.hierarchy.getLowestCommonSupertype(this.type("Circle"), this.type("Unit")));
+        assertEquals(this.type("Square"), this.hierarchy.getLowestCommonSupertype(this.type("Unit"), this.type("Square")));
+        assertEquals(this.context.getObject(), this.hierarchy.getLowestCommonSupertype(this.type("Circle"), this.type("Shapes")));
+    }
+
+    @Test
+    void overridingMethodsMatchModelScan() {
+        List<CtExecutableReference<?>> executables = this.context.getModel()
+                .getElements(new TypeFilter<>(CtExecutable.class)).stream()
+                .<CtExecutableReference<?>>map(CtExecutable::getReference)
+                .toList();
+        for (CtExecutableReference<?> method : executables) {
+            Set<CtExecutableReference<?>> expected = new HashSet<>();
+            for (CtExecutableReference<?> candidate : executables) {
+                if (candidate.isOverriding(method) && !candidate.equals(method)) {
+                    expected.add(candidate);
+                }
+            }
+            assertEquals(expected, new HashSet<>(this.hierarchy.getOverridingMethods(method)), method.toString());
+        }
+
+        CtExecutableReference<?> area = TestUtil.getMethod("Shape", "area", this.context).getReference();
+        assertEquals(4, this.hierarchy.getOverridingMethods(area).size());
+    }
+
+    @Test
+    void typeParametersAreNotSubtypes() {
+        assertEquals(Set.of(), this.hierarchy.getDirectSubtypes(this.type("Circle")));
+        assertEquals(Set.of(this.type("Unit")), this.hierarchy.getDirectSubtypes(this.type("Square")));
+        assertEquals(Set.of(this.type("Both")), this.hierarchy.getDirectSubtypes(this.type("Named")));
+        assertTrue(this.context.isEffectivelyFinalType(this.type("Circle")));
+        assertTrue(this.context.isEffectivelyFinalType(this.type("Unit")));
+        assertFalse(this.context.isEffectivelyFinalType(this.type("Square")));
+    }
+
+    private TypeId type(String name) {
+        return this.context.getType(name);
+    }
+
+    private TypeId jdkType(Class<?> type) {
+        return this.context.getType(this.context.getFactory().Type().createReference(type));
+    }
+
+    /**
+     * The lowest common supertype as computed before the hierarchy index existed
+     */
+    private TypeId walkLowestCommonSupertype(TypeId a, TypeId b) {
+        Set<TypeId> aParents = new HashSet<>();
+        aParents.add(a);
+        TypeId aParent = a;
+        while (!aParent.isObject()) {
+            aParent = TypeUtil.getBestSuperclass(aParent, this.context);
+            aParents.add(aParent);
+        }
+
+        TypeId bParent = b;
+        while (!aParents.contains(bParent)) {
+            bParent = TypeUtil.getBestSuperclass(bParent, this.context);
+        }
+        return bParent;
+    }
+}
@@ -0,0 +1,70 @@
+package de.firemage.flork.flow.callgraph;
+
+import de.firemage.flork.TestUtil;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CallGraphTest {
+    private static final String CODE = """
+            public class Foo {
+                public static int a(int x) {
+                    return b(x) + c(x);
+                }
+
+                public static int b(int x) {
+                    if (x > 0) {
+                        return d(x - 1);
+                    }
+                    return c(x);
+                }
+
+                public static int c(int x) {
+                    return x;
+                }
+
+                public static int d(int x) {
+                    return b(x);
+                }
+            }
+            """;
+
+    @Test
+    void componentsBottomUp() throws IOException {
+        var context = TestUtil.getFlowContext("Foo.java", CODE, true);
+        var a = TestUtil.getMethod("Foo", "a", context).getReference();
+        var b = TestUtil.getMethod("Foo", "b", context).getReference();
+        var c = TestUtil.getMethod("Foo", "c", context).getReference();
+        var d = TestUtil.getMethod("Foo", "d", context).getReference();
+
+        var components = context.getCallGraph().getComponentsBottomUp(List.of(a));
+        assertEquals(3, components.size());
+
+        assertEquals(List.of(c), components.get(0).executables());
+        assertFalse(components.get(0).recursive());
+
+        assertEquals(2, components.get(1).executables().size());
+        assertTrue(components.get(1).executables().containsAll(List.of(b, d)));
+        assertTrue(components.get(1).recursive());
+
+        assertEquals(List.of(a), components.get(2).executables());
+        assertFalse(components.get(2).recursive());
+    }
+
+    @Test
+    void onlyReachableComponents() throws IOException {
+        var context = TestUtil.getFlowContext("Foo.java", CODE, true);
+        var c = TestUtil.getMethod("Foo", "c", context).getReference();
+
+        assertEquals(List.of(new CallGraph.Component(List.of(c), false)),
+                context.getCallGraph().getComponentsBottomUp(List.of(c)));
+        // Every executable (including the implicit constructor) is in its own component, except b & d
+        var callGraph = context.getCallGraph();
+        assertEquals(callGraph.size() - 1, callGraph.getComponentsBottomUp().size());
+    }
+}
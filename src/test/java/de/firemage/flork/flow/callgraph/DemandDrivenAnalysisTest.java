@@ -0,0 +1,63 @@
+package de.firemage.flork.flow.callgraph;
+
+import de.firemage.flork.TestUtil;
+import de.firemage.flork.flow.AnalysisOptions;
+import de.firemage.flork.flow.DispatchMode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DemandDrivenAnalysisTest {
+    private static final String CODE = """
+            public class Foo {
+                public static int main() {
+                    return new Foo().bar(1);
+                }
+
+                public int bar(int x) {
+                    return x;
+                }
+
+                public static int unused() {
+                    return 2;
+                }
+            }
+
+            class Sub extends Foo {
+                @Override
+                public int bar(int x) {
+                    return 3;
+                }
+            }
+            """;
+
+    @Test
+    void skipsUnreachableMethods() throws IOException {
+        var options = AnalysisOptions.defaults().withDispatchMode(DispatchMode.RAPID_TYPE_ANALYSIS);
+        var context = TestUtil.getFlowContext("Foo.java", CODE, true, options);
+        var main = TestUtil.getMethod("Foo", "main", context).getReference();
+        var bar = TestUtil.getMethod("Foo", "bar", context).getReference();
+        var unused = TestUtil.getMethod("Foo", "unused", context).getReference();
+        var subBar = TestUtil.getMethod("Sub", "bar", context).getReference();
+
+        var report = new DemandDrivenAnalysis(context, List.of(main)).analyze();
+        // main, bar and the implicit constructor of Foo
+        assertEquals(3, report.analyzed().size());
+        assertEquals(main, report.analyzed().getLast());
+        assertTrue(report.analyzed().contains(bar));
+        // Sub is never instantiated, so Sub.bar is not a possible target
+        assertTrue(report.skipped().containsAll(List.of(unused, subBar)));
+        assertEquals(context.getCallGraph().size(), report.analyzed().size() + report.skipped().size());
+    }
+
+    @Test
+    void requiresEntryPoints() throws IOException {
+        var context = TestUtil.getFlowContext("Foo.java", CODE, true);
+        assertThrows(IllegalArgumentException.class, () -> new DemandDrivenAnalysis(context, List.of()));
+    }
+}
@@ -0,0 +1,120 @@
+package de.firemage.flork.flow.callgraph;
+
+import de.firemage.flork.TestUtil;
+import de.firemage.flork.flow.value.IntValueSet;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SummarySchedulerTest {
+    private static final String CODE = """
+            public class Foo {
+                public static int a(int x) {
+                    return b(x) + c(x) + e(x);
+                }
+
+                public static int b(int x) {
+                    if (x > 0) {
+                        return d(x - 1);
+                    }
+                    return c(x);
+                }
+
+                public static int c(int x) {
+                    return 1;
+                }
+
+                public static int d(int x) {
+                    return b(x);
+                }
+
+                public static int e(int x) {
+                    if (x == 0) {
+                        return c(x);
+                    }
+                    return 2;
+                }
+            }
+            """;
+
+    @Test
+    void analyzeInParallel() throws IOException {
+        var context = TestUtil.getFlowContext("Foo.java", CODE, true);
+        var a = TestUtil.getMethod("Foo", "a", context).getReference();
+
+        var pool = new ForkJoinPool(4);
+        try {
+            new SummaryScheduler(context).analyzeAllInParallel(pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        // All summaries are published by the scheduler, so they are not recomputed
+        for (String method : List.of("a", "b", "c", "d", "e")) {
+            assertTrue(context.getCachedMethod(TestUtil.getMethod("Foo", method, context).getReference())
+                    .hasPublishedAnalysis(), method);
+        }
+        var analysis = context.getCachedMethod(a).getFixedCallAnalysis();
+        assertSame(analysis, context.getCachedMethod(a).getFixedCallAnalysis());
+        TestUtil.canReturn(IntValueSet.ofIntSingle(3), analysis);
+    }
+
+    @Test
+    void analyzeInParallelWithFailure() throws IOException {
+        // Array creation is not supported by the analysis
+        var context = TestUtil.getFlowContext("Foo.java", """
+                public class Foo {
+                    public static int a() {
+                        return b() + c();
+                    }
+
+                    public static int b() {
+                        int[] array = new int[3];
+                        return 1;
+                    }
+
+                    public static int c() {
+                        return 2;
+                    }
+
+                    public static int d() {
+                        int[] array = new int[4];
+                        return 3;
+                    }
+                }
+                """, true);
+        var c = TestUtil.getMethod("Foo", "c", context).getReference();
+
+        var pool = new ForkJoinPool(4);
+        try {
+            var scheduler = new SummaryScheduler(context);
+            var failure = assertThrows(UnsupportedOperationException.class, () -> scheduler.analyzeAllInParallel(pool));
+            // b, d and a (which analyzes b again) fail, and all failures are reported
+            assertEquals(2, failure.getSuppressed().length);
+        } finally {
+            pool.shutdown();
+        }
+
+        // Components that do not depend on the failing ones are still analyzed by the scheduler
+        assertTrue(context.getCachedMethod(c).hasPublishedAnalysis());
+        TestUtil.mustReturn(IntValueSet.ofIntSingle(2), context.getCachedMethod(c).getFixedCallAnalysis());
+    }
+
+    @Test
+    void analyzeReachable() throws IOException {
+        var context = TestUtil.getFlowContext("Foo.java", CODE, true);
+        var e = TestUtil.getMethod("Foo", "e", context).getReference();
+
+        new SummaryScheduler(context).analyzeReachable(List.of(e));
+        var analysis = context.getCachedMethod(e).getFixedCallAnalysis();
+        TestUtil.canReturn(IntValueSet.ofIntSingle(1), analysis);
+        TestUtil.canReturn(IntValueSet.ofIntSingle(2), analysis);
+    }
+}
@@ -0,0 +1,61 @@
+package de.firemage.flork.flow.engine;
+
+import de.firemage.flork.flow.BooleanStatus;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DifferenceBoundMatrixTest {
+
+    @Test
+    void transitiveRelations() {
+        DifferenceBoundMatrix dbm = new DifferenceBoundMatrix();
+        dbm.addVar(1, Long.MIN_VALUE, Long.MAX_VALUE);
+        dbm.addVar(2, Long.MIN_VALUE, Long.MAX_VALUE);
+        dbm.addVar(3, Long.MIN_VALUE, Long.MAX_VALUE);
+
+        assertTrue(dbm.assertRelation(1, 2, Relation.LESS_THAN));
+        assertTrue(dbm.assertRelation(2, 3, Relation.LESS_THAN_EQUAL));
+
+        assertEquals(BooleanStatus.ALWAYS, dbm.check(1, 3, Relation.LESS_THAN));
+        assertEquals(BooleanStatus.NEVER, dbm.check(3, 1, Relation.LESS_THAN_EQUAL));
+        assertEquals(BooleanStatus.ALWAYS, dbm.check(1, 3, Relation.NOT_EQUAL));
+        assertEquals(BooleanStatus.SOMETIMES, dbm.check(2, 3, Relation.EQUAL));
+        assertFalse(dbm.assertRelation(3, 1, Relation.LESS_THAN));
+    }
+
+    @Test
+    void boundsArePropagated() {
+        DifferenceBoundMatrix dbm = new DifferenceBoundMatrix();
+        dbm.addVar(1, 0, 10);
+        dbm.addVar(2, Long.MIN_VALUE, Long.MAX_VALUE);
+
+        assertTrue(dbm.assertRelation(2, 1, Relation.LESS_THAN));
+        assertEquals(9, dbm.upperBound(2));
+        assertEquals(Long.MIN_VALUE, dbm.lowerBound(2));
+
+        assertTrue(dbm.restrict(2, 5, Long.MAX_VALUE));
+        assertEquals(6, dbm.lowerBound(1));
+    }
+
+    @Test
+    void copyOnWriteAndJoin() {
+        DifferenceBoundMatrix a = new DifferenceBoundMatrix();
+        a.addVar(1, 0, 10);
+        a.addVar(2, 0, 10);
+        DifferenceBoundMatrix b = new DifferenceBoundMatrix(a);
+
+        a.assertRelation(1, 2, Relation.LESS_THAN);
+        b.assertRelation(1, 2, Relation.EQUAL);
+        assertEquals(BooleanStatus.NEVER, a.check(1, 2, Relation.EQUAL));
+        assertEquals(BooleanStatus.ALWAYS, b.check(1, 2, Relation.EQUAL));
+
+        DifferenceBoundMatrix joined = DifferenceBoundMatrix.join(a, b, var -> true);
+        assertEquals(BooleanStatus.ALWAYS, joined.check(1, 2, Relation.LESS_THAN_EQUAL));
+        assertEquals(BooleanStatus.SOMETIMES, joined.check(1, 2, Relation.LESS_THAN));
+        assertTrue(a.implies(joined, new int[]{-1, 1, 2}));
+        assertFalse(joined.implies(a, new int[]{-1, 1, 2}));
+    }
+}
@@ -0,0 +1,99 @@
+package de.firemage.flork.flow.engine;
+
+import de.firemage.flork.flow.value.IntValueSet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static de.firemage.flork.flow.engine.EngineStates.assumeLess;
+import static de.firemage.flork.flow.engine.EngineStates.fieldOf;
+import static de.firemage.flork.flow.engine.EngineStates.hasRelation;
+import static de.firemage.flork.flow.engine.EngineStates.idOf;
+import static de.firemage.flork.flow.engine.EngineStates.setLocal;
+import static de.firemage.flork.flow.engine.EngineStates.storeField;
+import static de.firemage.flork.flow.engine.EngineStates.valueOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EngineStateCompactionTest {
+    private EngineState base;
+
+    @BeforeEach
+    void setUp() {
+        this.base = EngineStates.initial(EngineStates.context());
+    }
+
+    @Test
+    void keepsLiveVars() {
+        EngineState state = this.base.fork();
+        addTemporaries(state, 30);
+        state = build(state);
+        int size = state.varsState.size();
+        addTemporaries(state, 70);
+        assertTrue(state.varsState.size() < size, "compact() was not triggered");
+
+        assertEquals(IntValueSet.ofIntRange(1, 5), valueOf(state, "a"));
+        assertEquals(idOf(state, "a"), idOf(state, "b"));
+        assertTrue(hasRelation(state, "a", "z", Relation.LESS_THAN));
+        assertEquals(IntValueSet.ofIntSingle(7), state.varsState.get(fieldOf(state, "o", "f")).value());
+        int next = state.liveFields.get(FieldId.forField(idOf(state, "o"), state.context.getSymbols().intern("next")));
+        assertEquals(idOf(state, "o"), next);
+    }
+
+    @Test
+    void keepsThisAndParameterIds() {
+        List<Integer> parameters = List.of(idOf(this.base, "x"), idOf(this.base, "y"), idOf(this.base, "z"),
+                idOf(this.base, "o"));
+        EngineState state = this.base.fork();
+        addTemporaries(state, 30);
+        setLocal(state, "a", IntValueSet.ofIntSingle(1));
+        addTemporaries(state, 70);
+        assertEquals(this.base.varsState.size() + 1, state.varsState.size());
+
+        assertEquals(this.base.varsState.get(EngineState.THIS_VALUE), state.varsState.get(EngineState.THIS_VALUE));
+        assertEquals(parameters, List.of(idOf(state, "x"), idOf(state, "y"), idOf(state, "z"), idOf(state, "o")));
+        assertEquals(this.base.getInitialState(), state.getInitialState());
+    }
+
+    @Test
+    void equalsFreshState() {
+        EngineState state = this.base.fork();
+        addTemporaries(state, 30);
+        state = build(state);
+        addTemporaries(state, 70);
+
+        EngineState fresh = build(this.base.fork());
+        // The relation check leaves a dead boolean, which is not enough to trigger compaction
+        fresh.compact();
+        assertEquals(fresh.varsState, state.varsState);
+        assertEquals(fresh, state);
+        assertEquals(fresh.hashCode(), state.hashCode());
+    }
+
+    /**
+     * Adds dead vars, which are compacted at the statement boundary once there are enough of them
+     */
+    private static void addTemporaries(EngineState state, int count) {
+        for (int i = 0; i < count; i++) {
+            state.pushValue(IntValueSet.ofIntRange(i, i + 1000));
+        }
+        state.clearStack();
+    }
+
+    private static EngineState build(EngineState state) {
+        setLocal(state, "a", IntValueSet.ofIntRange(1, 5));
+        state.pushVar("a");
+        state.storeVar("b");
+        state.clearStack();
+        state = assumeLess(state, "a", "z");
+        storeField(state, "o", "f", IntValueSet.ofIntSingle(7));
+        state.pushVar("o");
+        state.pushVar("o");
+        state.storeField("next");
+        state.clearStack();
+        assertNotNull(fieldOf(state, "o", "f"));
+        return state;
+    }
+}
@@ -0,0 +1,88 @@
+package de.firemage.flork.flow.engine;
+
+import de.firemage.flork.flow.value.IntValueSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static de.firemage.flork.flow.engine.EngineStates.assumeLess;
+import static de.firemage.flork.flow.engine.EngineStates.setLocal;
+import static de.firemage.flork.flow.engine.EngineStates.storeField;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EngineStateHashTest {
+    private static final String[] LOCALS = {"x", "y", "z"};
+
+    /**
+     * Applies random operations to a few states and checks after each one that the incrementally maintained hash
+     * matches the hash computed from scratch
+     */
+    @Test
+    void incrementalHashMatchesRecomputation() {
+        EngineState base = EngineStates.initial(EngineStates.context());
+        for (int seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            List<EngineState> states = new ArrayList<>(List.of(base.fork(), base.fork()));
+            for (int step = 0; step < 200; step++) {
+                int index = random.nextInt(states.size());
+                EngineState state = states.get(index);
+                EngineState result = switch (random.nextInt(8)) {
+                    case 0 -> {
+                        setLocal(state, local(random), value(random));
+                        yield state;
+                    }
+                    case 1 -> {
+                        storeField(state, "o", "f", value(random));
+                        yield state;
+                    }
+                    case 2 -> {
+                        // Stack operations
+                        state.pushValue(value(random));
+                        state.pushVar(local(random));
+                        state.pop();
+                        yield state;
+                    }
+                    case 3 -> {
+                        state.clearStack();
+                        yield state;
+                    }
+                    case 4 -> {
+                        state.clearStack();
+                        state.compact();
+                        yield state;
+                    }
+                    case 5 -> {
+                        state.clearStack();
+                        yield assumeLess(state, local(random), local(random));
+                    }
+                    case 6 -> {
+                        state.clearStack();
+                        EngineState other = states.get(random.nextInt(states.size()));
+                        other.clearStack();
+                        yield EngineState.mergeCost(state, other) < 0 ? state : EngineState.merge(state, other);
+                    }
+                    default -> {
+                        states.add(state.fork());
+                        yield state;
+                    }
+                };
+                states.set(index, result);
+
+                for (EngineState s : states) {
+                    assertEquals(s.computeVarsHash(), s.getVarsHash(), "seed " + seed + ", step " + step);
+                }
+            }
+        }
+    }
+
+    private static String local(Random random) {
+        return LOCALS[random.nextInt(LOCALS.length)];
+    }
+
+    private static IntValueSet value(Random random) {
+        int min = random.nextInt(20) - 10;
+        return IntValueSet.ofIntRange(min, min + random.nextInt(5));
+    }
+}
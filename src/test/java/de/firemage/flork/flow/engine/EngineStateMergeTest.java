@@ -0,0 +1,184 @@
+package de.firemage.flork.flow.engine;
+
+import de.firemage.flork.flow.FlowContext;
+import de.firemage.flork.flow.value.IntValueSet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static de.firemage.flork.flow.engine.EngineStates.assumeLess;
+import static de.firemage.flork.flow.engine.EngineStates.fieldOf;
+import static de.firemage.flork.flow.engine.EngineStates.hasRelation;
+import static de.firemage.flork.flow.engine.EngineStates.idOf;
+import static de.firemage.flork.flow.engine.EngineStates.setLocal;
+import static de.firemage.flork.flow.engine.EngineStates.storeField;
+import static de.firemage.flork.flow.engine.EngineStates.valueOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EngineStateMergeTest {
+    private FlowContext context;
+    private EngineState base;
+
+    @BeforeEach
+    void setUp() {
+        this.context = EngineStates.context();
+        this.base = EngineStates.initial(this.context);
+    }
+
+    @Test
+    void mergesCheapestPair() {
+        EngineState a = this.withXY(1, 1);
+        EngineState b = this.withXY(2, 1);
+        EngineState c = this.withXY(5, 7);
+        assertTrue(EngineState.mergeCost(a, b) < EngineState.mergeCost(a, c));
+        assertTrue(EngineState.mergeCost(a, b) < EngineState.mergeCost(b, c));
+
+        List<EngineState> result = FlowEngine.mergeToBudget(List.of(a, b, c), 2);
+        assertEquals(2, result.size());
+        assertEquals(IntValueSet.ofIntRange(1, 2), valueOf(result.get(0), "x"));
+        assertEquals(IntValueSet.ofIntSingle(1), valueOf(result.get(0), "y"));
+        assertEquals(c, result.get(1));
+    }
+
+    @Test
+    void keepsStatesWithinBudget() {
+        List<EngineState> states = List.of(this.withXY(1, 1), this.withXY(2, 1));
+        assertEquals(states, FlowEngine.mergeToBudget(states, 2));
+    }
+
+    @Test
+    void keepsAliasesOfBothStates() {
+        EngineState a = this.aliasYToX(this.withXY(1, 1));
+        EngineState b = this.aliasYToX(this.withXY(2, 2));
+        EngineState merged = EngineState.merge(a, b);
+        assertEquals(idOf(merged, "x"), idOf(merged, "y"));
+        assertEquals(IntValueSet.ofIntRange(1, 2), valueOf(merged, "y"));
+    }
+
+    @Test
+    void dropsAliasesOfOneState() {
+        EngineState a = this.aliasYToX(this.withXY(1, 1));
+        EngineState b = this.withXY(2, 2);
+        EngineState merged = EngineState.merge(a, b);
+        assertNotEquals(idOf(merged, "x"), idOf(merged, "y"));
+        assertEquals(IntValueSet.ofIntRange(1, 2), valueOf(merged, "x"));
+        assertEquals(IntValueSet.ofIntRange(1, 2), valueOf(merged, "y"));
+    }
+
+    @Test
+    void intersectsRelations() {
+        EngineState a = assumeLess(this.base.fork(), "x", "y");
+        EngineState b = assumeLess(assumeLess(this.base.fork(), "x", "y"), "x", "z");
+        assertTrue(hasRelation(b, "x", "z", Relation.LESS_THAN));
+
+        EngineState merged = EngineState.merge(a, b);
+        assertTrue(hasRelation(merged, "x", "y", Relation.LESS_THAN));
+        assertFalse(hasRelation(merged, "x", "z", Relation.LESS_THAN));
+    }
+
+    @Test
+    void forgetsFieldsOfOneState() {
+        EngineState a = this.base.fork();
+        storeField(a, "o", "f", IntValueSet.ofIntSingle(1));
+        EngineState b = this.base.fork();
+        storeField(b, "o", "f", IntValueSet.ofIntSingle(2));
+        EngineState c = this.base.fork();
+
+        EngineState merged = EngineState.merge(a, b);
+        assertEquals(IntValueSet.ofIntRange(1, 2), merged.varsState.get(fieldOf(merged, "o", "f")).value());
+        assertTrue(EngineState.mergeCost(a, b) < EngineState.mergeCost(a, c));
+        assertNull(fieldOf(EngineState.merge(a, c), "o", "f"));
+        assertNull(fieldOf(EngineState.merge(c, a), "o", "f"));
+    }
+
+    @Test
+    void matchesFieldsThroughParents() {
+        // The same local has a different id in both states, so the raw ids of the field parents differ
+        EngineState a = this.base.fork();
+        a.pushValue(IntValueSet.ofIntSingle(42));
+        a.clearStack();
+        a.createVariable("t", this.context.getType("Foo"));
+        storeField(a, "t", "f", IntValueSet.ofIntSingle(1));
+        EngineState b = this.base.fork();
+        b.createVariable("t", this.context.getType("Foo"));
+        storeField(b, "t", "f", IntValueSet.ofIntSingle(1));
+        assertNotEquals(idOf(a, "t"), idOf(b, "t"));
+
+        assertTrue(EngineState.mergeCost(a, b) >= 0);
+        EngineState merged = EngineState.merge(a, b);
+        Integer field = fieldOf(merged, "t", "f");
+        assertNotNull(field);
+        assertEquals(IntValueSet.ofIntSingle(1), merged.varsState.get(field).value());
+    }
+
+    @Test
+    void keepsFieldTypesThroughParents() {
+        EngineState a = this.base.fork();
+        a.pushValue(IntValueSet.ofIntSingle(42));
+        a.clearStack();
+        a.createVariable("t", this.context.getType("Foo"));
+        this.readField(a, "t", "f");
+        EngineState b = this.base.fork();
+        b.createVariable("t", this.context.getType("Foo"));
+        this.readField(b, "t", "f");
+        assertNotEquals(idOf(a, "t"), idOf(b, "t"));
+
+        EngineState merged = EngineState.merge(a, b);
+        FieldId field = FieldId.forField(idOf(merged, "t"), this.context.getSymbols().intern("f"));
+        assertNotNull(merged.liveFields.get(field));
+        assertEquals(this.context.getType("int"), merged.types.get(field));
+    }
+
+    @Test
+    void resetsWrittenLocalsAfterMerge() {
+        // a only stores to v, so only b knows its type
+        EngineState a = this.base.fork();
+        a.beginWritesScope();
+        setLocal(a, "v", IntValueSet.ofIntSingle(1));
+        EngineState b = this.base.fork();
+        b.createVariable("v", this.context.getType("int"));
+        b.beginWritesScope();
+        setLocal(b, "v", IntValueSet.ofIntSingle(2));
+
+        EngineState merged = EngineState.merge(a, b);
+        assertEquals(IntValueSet.ofIntRange(1, 2), valueOf(merged, "v"));
+        merged.resetWrittenLocalsAndFields();
+        assertEquals(IntValueSet.topForInt(), valueOf(merged, "v"));
+    }
+
+    @Test
+    void doesNotMergeDifferentExceptions() {
+        EngineState a = this.withXY(1, 1);
+        a.activeException = this.context.getType("java.lang.IllegalStateException");
+        EngineState b = this.withXY(1, 2);
+        b.activeException = this.context.getType("java.lang.IllegalArgumentException");
+        assertEquals(-1, EngineState.mergeCost(a, b));
+        assertEquals(List.of(a, b), FlowEngine.mergeToBudget(List.of(a, b), 1));
+    }
+
+    private EngineState withXY(int x, int y) {
+        EngineState state = this.base.fork();
+        setLocal(state, "x", IntValueSet.ofIntSingle(x));
+        setLocal(state, "y", IntValueSet.ofIntSingle(y));
+        return state;
+    }
+
+    private void readField(EngineState state, String local, String field) {
+        state.pushVar(local);
+        state.pushField(field);
+        state.clearStack();
+    }
+
+    private EngineState aliasYToX(EngineState state) {
+        state.pushVar("x");
+        state.storeVar("y");
+        state.clearStack();
+        return state;
+    }
+}
@@ -0,0 +1,143 @@
+package de.firemage.flork.flow.engine;
+
+import de.firemage.flork.flow.value.IntValueSet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static de.firemage.flork.flow.engine.EngineStates.assume;
+import static de.firemage.flork.flow.engine.EngineStates.hasRelation;
+import static de.firemage.flork.flow.engine.EngineStates.setLocal;
+import static de.firemage.flork.flow.engine.EngineStates.storeField;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EngineStateSubsumptionTest {
+    private EngineState base;
+
+    @BeforeEach
+    void setUp() {
+        this.base = EngineStates.initial(EngineStates.context());
+    }
+
+    @Test
+    void keepsFirstOfIdenticalStates() {
+        EngineState a = this.withX(IntValueSet.ofIntSingle(1));
+        EngineState b = this.withX(IntValueSet.ofIntSingle(1));
+        EngineState c = this.withX(IntValueSet.ofIntSingle(1));
+        assertTrue(a.isSubsumedBy(b));
+        assertTrue(b.isSubsumedBy(a));
+
+        List<EngineState> result = FlowEngine.removeSubsumedStates(List.of(a, b, c));
+        assertEquals(1, result.size());
+        assertSame(a, result.getFirst());
+    }
+
+    @Test
+    void removesNarrowerState() {
+        EngineState narrow = this.withX(IntValueSet.ofIntSingle(1));
+        EngineState general = this.withX(IntValueSet.ofIntRange(0, 5));
+        assertTrue(narrow.isSubsumedBy(general));
+        assertFalse(general.isSubsumedBy(narrow));
+
+        assertEquals(List.of(general), FlowEngine.removeSubsumedStates(List.of(narrow, general)));
+        assertEquals(List.of(general), FlowEngine.removeSubsumedStates(List.of(general, narrow)));
+    }
+
+    @Test
+    void removesStateWithMoreRelations() {
+        EngineState related = assume(this.base.fork(), "x", "y", Relation.LESS_THAN_EQUAL);
+        EngineState unrelated = this.base.fork();
+        assertTrue(hasRelation(related, "x", "y", Relation.LESS_THAN_EQUAL));
+        assertEquals(related.shapeHash(), unrelated.shapeHash());
+
+        assertEquals(List.of(unrelated), FlowEngine.removeSubsumedStates(List.of(related, unrelated)));
+    }
+
+    @Test
+    void keepsStatesWithDifferentValues() {
+        EngineState a = this.withX(IntValueSet.ofIntRange(0, 5));
+        EngineState b = this.withX(IntValueSet.ofIntRange(3, 8));
+        assertEquals(List.of(a, b), FlowEngine.removeSubsumedStates(List.of(a, b)));
+    }
+
+    @Test
+    void keepsStatesWithDifferentAliases() {
+        // x = y in a, y = z in b
+        EngineState a = this.alias(this.withXYZ(), "x", "y");
+        EngineState b = this.alias(this.withXYZ(), "y", "z");
+        assertEquals(a.shapeHash(), b.shapeHash());
+        assertFalse(a.isSubsumedBy(b));
+        assertFalse(b.isSubsumedBy(a));
+        assertEquals(List.of(a, b), FlowEngine.removeSubsumedStates(List.of(a, b)));
+
+        // Without the alias, b describes more concrete states
+        EngineState unaliased = this.withXYZ();
+        assertTrue(a.isSubsumedBy(unaliased));
+        assertFalse(unaliased.isSubsumedBy(a));
+    }
+
+    @Test
+    void keepsStatesWithDifferentRelations() {
+        EngineState a = assume(this.base.fork(), "x", "y", Relation.LESS_THAN_EQUAL);
+        EngineState b = assume(this.base.fork(), "y", "x", Relation.LESS_THAN_EQUAL);
+        assertFalse(a.isSubsumedBy(b));
+        assertFalse(b.isSubsumedBy(a));
+        assertEquals(List.of(a, b), FlowEngine.removeSubsumedStates(List.of(a, b)));
+    }
+
+    @Test
+    void keepsStatesWithDifferentWrittenFields() {
+        EngineState a = this.withXYZ();
+        a.beginWritesScope();
+        setLocal(a, "x", IntValueSet.ofIntSingle(1));
+        EngineState b = this.withXYZ();
+        b.beginWritesScope();
+        setLocal(b, "y", IntValueSet.ofIntSingle(1));
+
+        assertFalse(a.isSubsumedBy(b));
+        assertFalse(b.isSubsumedBy(a));
+        assertEquals(List.of(a, b), FlowEngine.removeSubsumedStates(List.of(a, b)));
+    }
+
+    @Test
+    void bucketsByShape() {
+        EngineState a = this.withX(IntValueSet.ofIntSingle(1));
+        EngineState b = this.withX(IntValueSet.ofIntSingle(1));
+        storeField(b, "o", "f", IntValueSet.ofIntSingle(2));
+        EngineState c = this.withX(IntValueSet.ofIntSingle(1));
+        c.pushValue(IntValueSet.ofIntSingle(3));
+
+        // Different tracked fields or stack sizes never subsume each other
+        assertNotEquals(a.shapeHash(), b.shapeHash());
+        assertNotEquals(a.shapeHash(), c.shapeHash());
+        assertFalse(a.isSubsumedBy(b));
+        assertFalse(b.isSubsumedBy(a));
+        assertEquals(List.of(a, b, c), FlowEngine.removeSubsumedStates(List.of(a, b, c)));
+    }
+
+    private EngineState withX(IntValueSet x) {
+        EngineState state = this.base.fork();
+        setLocal(state, "x", x);
+        return state;
+    }
+
+    private EngineState withXYZ() {
+        EngineState state = this.base.fork();
+        setLocal(state, "x", IntValueSet.ofIntSingle(1));
+        setLocal(state, "y", IntValueSet.ofIntSingle(1));
+        setLocal(state, "z", IntValueSet.ofIntSingle(1));
+        return state;
+    }
+
+    private EngineState alias(EngineState state, String source, String target) {
+        state.pushVar(source);
+        state.storeVar(target);
+        state.clearStack();
+        return state;
+    }
+}
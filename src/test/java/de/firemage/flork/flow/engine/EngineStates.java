@@ -0,0 +1,87 @@
+package de.firemage.flork.flow.engine;
+
+import de.firemage.flork.TestUtil;
+import de.firemage.flork.flow.AnalysisOptions;
+import de.firemage.flork.flow.FlowContext;
+import de.firemage.flork.flow.value.ValueSet;
+
+/**
+ * Builds engine states of the method {@code Foo.m(int x, int y, int z, Foo o)} for engine-level tests
+ */
+final class EngineStates {
+    private static final String CODE = """
+            public class Foo {
+                int f;
+                Foo next;
+
+                public static void m(int x, int y, int z, Foo o) {
+                }
+            }
+            """;
+
+    private EngineStates() {
+    }
+
+    static FlowContext context() {
+        return context(AnalysisOptions.defaults());
+    }
+
+    static FlowContext context(AnalysisOptions options) {
+        return TestUtil.getFlowContext("Foo.java", CODE, true, options);
+    }
+
+    static EngineState initial(FlowContext context) {
+        var parameters = TestUtil.getMethod("Foo", "m", context).getParameters();
+        return new EngineState(null, null, parameters, null, context);
+    }
+
+    static void setLocal(EngineState state, String local, ValueSet value) {
+        state.pushValue(value);
+        state.storeVar(local);
+        state.clearStack();
+    }
+
+    static ValueSet valueOf(EngineState state, String local) {
+        return state.varsState.get(idOf(state, local)).value();
+    }
+
+    static int idOf(EngineState state, String local) {
+        return state.liveFields.get(FieldId.forLocal(state.context.getSymbols().intern(local)));
+    }
+
+    /**
+     * @return the var of local.field, or null if it is not tracked
+     */
+    static Integer fieldOf(EngineState state, String local, String field) {
+        return state.liveFields.get(FieldId.forField(idOf(state, local), state.context.getSymbols().intern(field)));
+    }
+
+    static void storeField(EngineState state, String local, String field, ValueSet value) {
+        state.pushValue(value);
+        state.pushVar(local);
+        state.storeField(field);
+        state.clearStack();
+    }
+
+    /**
+     * Asserts lhs < rhs on the path where it holds
+     */
+    static EngineState assumeLess(EngineState state, String lhs, String rhs) {
+        return assume(state, lhs, rhs, Relation.LESS_THAN);
+    }
+
+    /**
+     * Asserts the relation between lhs and rhs on the path where it holds
+     */
+    static EngineState assume(EngineState state, String lhs, String rhs, Relation relation) {
+        state.pushVar(lhs);
+        state.pushVar(rhs);
+        EngineState result = state.compareOp(relation).getFirst();
+        result.clearStack();
+        return result;
+    }
+
+    static boolean hasRelation(EngineState state, String lhs, String rhs, Relation relation) {
+        return state.varsState.get(idOf(state, lhs)).relations().contains(idOf(state, rhs), relation);
+    }
+}
@@ -0,0 +1,55 @@
+package de.firemage.flork.flow.engine;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RelationSetTest {
+
+    @Test
+    void withAndContains() {
+        RelationSet set = RelationSet.empty()
+                .with(5, Relation.LESS_THAN)
+                .with(2, Relation.NOT_EQUAL)
+                .with(5, Relation.EQUAL);
+
+        assertEquals(3, set.size());
+        assertTrue(set.contains(5, Relation.LESS_THAN));
+        assertTrue(set.contains(2, Relation.NOT_EQUAL));
+        assertFalse(set.contains(2, Relation.EQUAL));
+        assertSame(set, set.with(5, Relation.EQUAL));
+        // Sorted by rhs
+        assertEquals(2, set.rhs(0));
+        assertEquals(5, set.rhs(2));
+    }
+
+    @Test
+    void containsImplying() {
+        RelationSet set = RelationSet.empty().with(3, Relation.LESS_THAN).with(4, Relation.EQUAL);
+
+        assertTrue(set.containsImplying(3, Relation.NOT_EQUAL));
+        assertTrue(set.containsImplying(3, Relation.LESS_THAN_EQUAL));
+        assertFalse(set.containsImplying(3, Relation.GREATER_THAN_EQUAL));
+        assertTrue(set.containsImplying(4, Relation.GREATER_THAN_EQUAL));
+        assertFalse(set.containsImplying(5, Relation.NOT_EQUAL));
+    }
+
+    @Test
+    void intersectAndRemap() {
+        RelationSet a = RelationSet.empty().with(1, Relation.LESS_THAN).with(2, Relation.EQUAL).with(3, Relation.NOT_EQUAL);
+        RelationSet b = RelationSet.empty().with(1, Relation.LESS_THAN).with(3, Relation.NOT_EQUAL);
+
+        assertEquals(b, a.intersect(b, rhs -> true));
+        assertEquals(RelationSet.empty().with(3, Relation.NOT_EQUAL), a.intersect(b, rhs -> rhs != 1));
+        assertTrue(a.containsAll(b));
+        assertFalse(b.containsAll(a));
+
+        RelationSet remapped = a.remap(new int[]{-1, 2, 0, 1});
+        assertTrue(remapped.contains(2, Relation.LESS_THAN));
+        assertTrue(remapped.contains(0, Relation.EQUAL));
+        assertTrue(remapped.contains(1, Relation.NOT_EQUAL));
+    }
+}
@@ -0,0 +1,92 @@
+package de.firemage.flork.flow.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SymbolTableTest {
+    @Test
+    void thisIsSymbolZero() {
+        var symbols = new SymbolTable();
+        assertEquals(SymbolTable.THIS, symbols.intern("this"));
+        assertEquals(0, SymbolTable.THIS);
+        assertEquals("this", symbols.nameOf(SymbolTable.THIS));
+        assertEquals(FieldId.forLocal(symbols.intern("this")), FieldId.THIS);
+        // Other names never get symbol 0, even if they are interned first
+        assertNotEquals(SymbolTable.THIS, new SymbolTable().intern("x"));
+    }
+
+    @Test
+    void internsNames() {
+        var symbols = new SymbolTable();
+        int x = symbols.intern("x");
+        int y = symbols.intern("y");
+        assertNotEquals(x, y);
+        assertEquals(x, symbols.intern(new String("x")));
+        assertEquals("x", symbols.nameOf(x));
+        assertEquals("y", symbols.nameOf(y));
+    }
+
+    @Test
+    void internsConcurrently() throws Exception {
+        var symbols = new SymbolTable();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Integer>>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(() -> {
+                    List<Integer> ids = new ArrayList<>();
+                    for (int i = 0; i < 1000; i++) {
+                        ids.add(symbols.intern("name" + i));
+                    }
+                    return ids;
+                }));
+            }
+
+            List<Integer> first = results.getFirst().get();
+            for (Future<List<Integer>> result : results) {
+                assertEquals(first, result.get());
+            }
+            // Dense & unique
+            assertEquals(1000, new HashSet<>(first).size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("name" + i, symbols.nameOf(first.get(i)));
+                assertTrue(first.get(i) > 0 && first.get(i) <= 1000);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void fieldIds() {
+        assertTrue(FieldId.forLocal(3).isLocal());
+        assertTrue(FieldId.forOwnField(3).isLocalOrOwnField());
+        assertFalse(FieldId.forOwnField(3).isLocal());
+        assertFalse(FieldId.forField(1, 3).isLocalOrOwnField());
+
+        assertEquals(FieldId.forField(1, 3), FieldId.forField(1, 3));
+        assertEquals(FieldId.forField(1, 3).hashCode(), FieldId.forField(1, 3).hashCode());
+        assertNotEquals(FieldId.forField(1, 3), FieldId.forField(3, 1));
+
+        // The hash uses both components, so swapped or negative parents rarely collide
+        Set<Integer> hashes = new HashSet<>();
+        for (int parent = -1; parent < 50; parent++) {
+            for (int name = 0; name < 50; name++) {
+                hashes.add(FieldId.forField(parent, name).hashCode());
+            }
+        }
+        assertEquals(51 * 50, hashes.size());
+    }
+}
@@ -0,0 +1,131 @@
+package de.firemage.flork.flow.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class ValueStackTest {
+
+    @Test
+    void pushAndPop() {
+        ValueStack stack = new ValueStack();
+        for (int i = 0; i < 100; i++) {
+            stack.push(i);
+        }
+
+        assertEquals(100, stack.size());
+        assertEquals(99, stack.peek());
+        assertEquals(90, stack.peek(9));
+        for (int i = 99; i >= 0; i--) {
+            assertEquals(i, stack.pop());
+        }
+        assertEquals(0, stack.size());
+        assertEquals(new ValueStack(), stack);
+        assertEquals(new ValueStack().hashCode(), stack.hashCode());
+    }
+
+    @Test
+    void forkIsIndependent() {
+        ValueStack stack = new ValueStack();
+        for (int i = 0; i < 8; i++) {
+            stack.push(i);
+        }
+
+        ValueStack fork = new ValueStack(stack);
+        assertEquals(stack, fork);
+
+        // Writes to the fork
+        fork.pop();
+        fork.push(-1);
+        fork.overwrite(-2, 3);
+        // Writes to the original, which also shares its array
+        stack.overwrite(-3, 0);
+        stack.pop();
+        stack.pop();
+        stack.push(-4);
+
+        assertEquals(List.of(0, 1, 2, 3, -2, 5, 6, -1), contents(fork));
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, -4), contents(stack));
+        assertNotEquals(stack, fork);
+    }
+
+    @Test
+    void forkOfForkIsIndependent() {
+        ValueStack stack = new ValueStack();
+        stack.push(1);
+        ValueStack fork = new ValueStack(stack);
+        ValueStack forkOfFork = new ValueStack(fork);
+
+        // Grows beyond the shared array
+        for (int i = 0; i < 20; i++) {
+            forkOfFork.push(100 + i);
+        }
+        fork.overwrite(2, 0);
+        stack.remap(new int[]{0, 42});
+
+        assertEquals(List.of(42), contents(stack));
+        assertEquals(List.of(2), contents(fork));
+        assertEquals(21, forkOfFork.size());
+        assertEquals(1, forkOfFork.peek(20));
+    }
+
+    @Test
+    void matchesReferenceAfterRandomForks() {
+        Random random = new Random(0);
+        List<ValueStack> stacks = new ArrayList<>(List.of(new ValueStack()));
+        List<List<Integer>> expected = new ArrayList<>(List.of(new ArrayList<>()));
+        for (int step = 0; step < 5000; step++) {
+            int index = random.nextInt(stacks.size());
+            ValueStack stack = stacks.get(index);
+            List<Integer> reference = expected.get(index);
+            int operation = random.nextInt(reference.isEmpty() ? 2 : 5);
+            switch (operation) {
+                case 0 -> {
+                    int value = random.nextInt(1000);
+                    stack.push(value);
+                    reference.add(value);
+                }
+                case 1 -> {
+                    stacks.add(new ValueStack(stack));
+                    expected.add(new ArrayList<>(reference));
+                }
+                case 2 -> assertEquals(reference.removeLast(), stack.pop());
+                case 3 -> {
+                    int offset = random.nextInt(reference.size());
+                    int value = random.nextInt(1000);
+                    stack.overwrite(value, offset);
+                    reference.set(reference.size() - 1 - offset, value);
+                }
+                default -> {
+                    stack.clear();
+                    reference.clear();
+                }
+            }
+
+            for (int i = 0; i < stacks.size(); i++) {
+                assertEquals(expected.get(i), contents(stacks.get(i)), "step " + step);
+            }
+        }
+
+        // Equal contents imply equal stacks & hashes
+        for (int i = 0; i < stacks.size(); i++) {
+            ValueStack rebuilt = new ValueStack();
+            expected.get(i).forEach(rebuilt::push);
+            assertEquals(rebuilt, stacks.get(i));
+            assertEquals(rebuilt.hashCode(), stacks.get(i).hashCode());
+        }
+    }
+
+    private static List<Integer> contents(ValueStack stack) {
+        List<Integer> result = new ArrayList<>();
+        for (int i = stack.size() - 1; i >= 0; i--) {
+            result.add(stack.peek(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,79 @@
+package de.firemage.flork.flow.exit;
+
+import de.firemage.flork.flow.value.BooleanValueSet;
+import de.firemage.flork.flow.value.IntValueSet;
+import de.firemage.flork.flow.value.LongValueSet;
+import de.firemage.flork.flow.value.ValueSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ExitStateCompactionTest {
+    @Test
+    void mergesSamePreconditions() {
+        var precondition = List.<ValueSet>of(IntValueSet.ofIntRange(0, 5));
+        var exitStates = List.of(
+                MethodExitState.forReturn(IntValueSet.ofIntSingle(1), precondition),
+                MethodExitState.forReturn(IntValueSet.ofIntSingle(2), precondition),
+                MethodExitState.forReturn(IntValueSet.ofIntSingle(1), precondition)
+        );
+        assertEquals(List.of(MethodExitState.forReturn(IntValueSet.ofIntRange(1, 2), precondition)),
+                ExitStateCompaction.compact(exitStates, 0));
+    }
+
+    @Test
+    void keepsInexactReturnsApart() {
+        var precondition = List.<ValueSet>of(IntValueSet.ofIntRange(0, 5));
+        var exitStates = List.of(
+                MethodExitState.forReturn(LongValueSet.ofSingle(1), precondition),
+                MethodExitState.forReturn(LongValueSet.ofSingle(3), precondition)
+        );
+        // The hull of 1 and 3 would add 2
+        assertEquals(exitStates, ExitStateCompaction.compact(exitStates, 0));
+
+        var adjacent = List.of(
+                MethodExitState.forReturn(LongValueSet.ofSingle(1), precondition),
+                MethodExitState.forReturn(LongValueSet.ofSingle(2), precondition)
+        );
+        assertEquals(List.of(MethodExitState.forReturn(LongValueSet.ofRange(1, 2), precondition)),
+                ExitStateCompaction.compact(adjacent, 0));
+    }
+
+    @Test
+    void mergesSameOutcomeExactly() {
+        var exitStates = List.of(
+                MethodExitState.forReturn(IntValueSet.ofIntSingle(1), List.of(IntValueSet.ofIntRange(0, 5), BooleanValueSet.of(true))),
+                MethodExitState.forReturn(IntValueSet.ofIntSingle(2), List.of(IntValueSet.ofIntRange(0, 5), BooleanValueSet.of(false))),
+                MethodExitState.forReturn(IntValueSet.ofIntSingle(1), List.of(IntValueSet.ofIntRange(6, 9), BooleanValueSet.of(true)))
+        );
+        assertEquals(List.of(
+                MethodExitState.forReturn(IntValueSet.ofIntSingle(1), List.of(IntValueSet.ofIntRange(0, 9), BooleanValueSet.of(true))),
+                MethodExitState.forReturn(IntValueSet.ofIntSingle(2), List.of(IntValueSet.ofIntRange(0, 5), BooleanValueSet.of(false)))
+        ), ExitStateCompaction.compact(exitStates, 0));
+    }
+
+    @Test
+    void enforcesBudget() {
+        List<MethodExitState> exitStates = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            exitStates.add(MethodExitState.forReturn(IntValueSet.ofIntSingle(i), List.of(IntValueSet.ofIntSingle(2 * i))));
+        }
+        var compacted = ExitStateCompaction.compact(exitStates, 3);
+        assertEquals(3, compacted.size());
+
+        // Every original exit state is still covered
+        for (MethodExitState exitState : exitStates) {
+            assertEquals(1, compacted.stream()
+                    .filter(s -> covers(s.getParameterPrecondition().getFirst(), exitState.getParameterPrecondition().getFirst())
+                            && covers(s.getReturnValue(), exitState.getReturnValue()))
+                    .count());
+        }
+    }
+
+    private static boolean covers(ValueSet a, ValueSet b) {
+        return a.merge(b).equals(a);
+    }
+}
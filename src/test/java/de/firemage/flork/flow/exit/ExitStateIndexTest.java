@@ -0,0 +1,42 @@
+package de.firemage.flork.flow.exit;
+
+import de.firemage.flork.flow.value.BooleanValueSet;
+import de.firemage.flork.flow.value.IntValueSet;
+import de.firemage.flork.flow.value.ValueSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ExitStateIndexTest {
+    @Test
+    void selectsCompatibleExitStatesInOrder() {
+        // Exit state i accepts x in [10i, 10i + 15] and b == (i is even), so neighbouring hulls overlap
+        List<MethodExitState> exitStates = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            exitStates.add(MethodExitState.forReturn(IntValueSet.ofIntSingle(i),
+                    List.of(IntValueSet.ofIntRange(10 * i, 10 * i + 15), BooleanValueSet.of(i % 2 == 0))));
+        }
+        // Accepts everything, and is last
+        exitStates.add(MethodExitState.forReturn(IntValueSet.ofIntSingle(-1),
+                List.of(IntValueSet.topForInt(), BooleanValueSet.top())));
+        var index = ExitStateIndex.of(exitStates);
+
+        List<List<ValueSet>> queries = List.of(
+                List.of(IntValueSet.ofIntSingle(42), BooleanValueSet.top()),
+                List.of(IntValueSet.ofIntRange(25, 61), BooleanValueSet.of(true)),
+                List.of(IntValueSet.ofIntRange(-5, 3), BooleanValueSet.of(false)),
+                List.of(IntValueSet.ofIntSingle(1000), BooleanValueSet.top()),
+                List.of(IntValueSet.topForInt(), BooleanValueSet.bottom())
+        );
+        for (var arguments : queries) {
+            List<MethodExitState> expected = exitStates.stream()
+                    .filter(s -> !s.getParameterPrecondition().get(0).intersect(arguments.get(0)).isEmpty()
+                            && !s.getParameterPrecondition().get(1).intersect(arguments.get(1)).isEmpty())
+                    .toList();
+            assertEquals(expected, index.getCompatibleExitStates(arguments), arguments.toString());
+        }
+    }
+}
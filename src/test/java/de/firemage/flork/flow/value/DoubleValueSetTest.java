@@ -5,6 +5,7 @@ import de.firemage.flork.flow.engine.Relation;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 
 public class DoubleValueSetTest {
@@ -142,4 +143,15 @@ public class DoubleValueSetTest {
         assertEquals(DoubleValueSet.ofRange(1.0, 2.0), DoubleValueSet.ofRange(1.0, 2.0).removeNotFulfillingValues(DoubleValueSet.ofRange(3.0, 4.0), Relation.LESS_THAN));
         assertEquals(DoubleValueSet.BOTTOM, DoubleValueSet.ofRange(3.0, 4.0).removeNotFulfillingValues(DoubleValueSet.ofRange(1.0, 2.0), Relation.LESS_THAN));
     }
+
+    @Test
+    void testTryMergeExact() {
+        assertEquals(DoubleValueSet.ofRange(1.0, 4.0), DoubleValueSet.ofRange(1.0, 2.0).tryMergeExact(DoubleValueSet.ofRange(2.0, 4.0)));
+        assertEquals(DoubleValueSet.ofRangeWithNaN(1.0, 4.0), DoubleValueSet.ofRange(1.0, 3.0).tryMergeExact(DoubleValueSet.ofRangeWithNaN(2.0, 4.0)));
+        assertEquals(DoubleValueSet.ofRangeWithNaN(1.0, 2.0), DoubleValueSet.ofRange(1.0, 2.0).tryMergeExact(DoubleValueSet.NAN));
+        assertEquals(DoubleValueSet.ofRange(1.0, 2.0), DoubleValueSet.BOTTOM.tryMergeExact(DoubleValueSet.ofRange(1.0, 2.0)));
+        assertSame(DoubleValueSet.TOP, DoubleValueSet.TOP.tryMergeExact(DoubleValueSet.ofRange(1.0, 2.0)));
+        assertNull(DoubleValueSet.ofSingle(1.0).tryMergeExact(DoubleValueSet.ofSingle(3.0)));
+        assertNull(DoubleValueSet.ofRangeWithNaN(1.0, 2.0).tryMergeExact(DoubleValueSet.ofRange(3.0, 4.0)));
+    }
 }
@@ -2,6 +2,8 @@ package de.firemage.flork.flow.value;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class IntValueSetTest {
@@ -20,4 +22,16 @@ class IntValueSetTest {
         assertEquals(IntValueSet.ofIntRange(0, 5), IntValueSet.ofIntRange(4, 5).merge(IntValueSet.ofIntRange(0, 3)));
         assertEquals(IntValueSet.ofIntRange(0, 5), IntValueSet.ofIntRange(0, 1).merge(IntValueSet.ofIntRange(4, 5).merge(IntValueSet.ofIntRange(2, 3))));
     }
-}
\ No newline at end of file
+
+    @Test
+    void intersects() {
+        var gapped = IntValueSet.ofIntRange(0, 2).merge(IntValueSet.ofIntRange(6, 8));
+        assertTrue(gapped.intersects(IntValueSet.ofIntSingle(7)));
+        assertTrue(gapped.intersects(IntValueSet.ofIntRange(2, 4)));
+        assertFalse(gapped.intersects(IntValueSet.ofIntRange(3, 5)));
+        assertFalse(gapped.intersects(IntValueSet.ofIntSingle(1).intersect(IntValueSet.ofIntSingle(2))));
+        for (var other : List.of(IntValueSet.ofIntRange(-1, 0), IntValueSet.ofIntRange(3, 5), IntValueSet.topForInt())) {
+            assertEquals(!gapped.intersect(other).isEmpty(), gapped.intersects(other));
+        }
+    }
+}
@@ -5,6 +5,7 @@ import de.firemage.flork.flow.engine.Relation;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -83,4 +84,15 @@ public class LongValueSetTest {
         assertEquals(LongValueSet.ofSingle(2), LongValueSet.ofRange(1, 2).removeNotFulfillingValues(LongValueSet.ofRange(2, 3), Relation.GREATER_THAN_EQUAL));
         assertTrue(LongValueSet.ofRange(1, 2).removeNotFulfillingValues(LongValueSet.ofRange(3, 4), Relation.GREATER_THAN_EQUAL).isEmpty());
     }
+
+    @Test
+    void tryMergeExact() {
+        assertEquals(LongValueSet.ofRange(1, 4), LongValueSet.ofRange(1, 2).tryMergeExact(LongValueSet.ofRange(3, 4)));
+        assertEquals(LongValueSet.ofRange(1, 4), LongValueSet.ofRange(2, 4).tryMergeExact(LongValueSet.ofRange(1, 3)));
+        assertEquals(LongValueSet.ofRange(1, 2), LongValueSet.BOTTOM.tryMergeExact(LongValueSet.ofRange(1, 2)));
+        assertEquals(LongValueSet.ofRange(1, 2), LongValueSet.ofRange(1, 2).tryMergeExact(LongValueSet.BOTTOM));
+        assertNull(LongValueSet.ofSingle(1).tryMergeExact(LongValueSet.ofSingle(3)));
+        assertNull(LongValueSet.ofRange(5, 6).tryMergeExact(LongValueSet.ofRange(1, 2)));
+        assertNull(LongValueSet.ofSingle(Long.MIN_VALUE).tryMergeExact(LongValueSet.ofSingle(Long.MAX_VALUE)));
+    }
 }
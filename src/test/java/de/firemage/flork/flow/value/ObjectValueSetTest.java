@@ -261,7 +261,7 @@ class ObjectValueSetTest {
         // Cast null
         assertEquals(
                 ObjectValueSet.forExactType(Nullness.NULL, midA, context),
-                ObjectValueSet.getNullSet(context).castTo(midA)
+                context.getNullSet().castTo(midA)
         );
     }
 
@@ -0,0 +1,94 @@
+package de.firemage.flork.flow.value;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValueSetInternerTest {
+    @Test
+    void internsEqualValues() {
+        var interner = new ValueSetInterner();
+        ValueSet a = IntValueSet.ofIntRange(1, 5);
+        ValueSet b = IntValueSet.ofIntRange(1, 5);
+        assertNotSame(a, b);
+
+        assertSame(a, interner.intern(a));
+        assertSame(a, interner.intern(b));
+        assertSame(a, interner.intern(a));
+        assertNotSame(a, interner.intern(IntValueSet.ofIntRange(1, 6)));
+    }
+
+    @Test
+    void memoizesOperations() {
+        var interner = new ValueSetInterner();
+        ValueSet a = IntValueSet.ofIntRange(1, 5);
+        ValueSet b = IntValueSet.ofIntRange(3, 8);
+
+        ValueSet merged = interner.merge(a, b);
+        assertEquals(IntValueSet.ofIntRange(1, 8), merged);
+        assertEquals(0, interner.getMemoHits());
+        assertSame(merged, interner.merge(IntValueSet.ofIntRange(1, 5), IntValueSet.ofIntRange(3, 8)));
+        assertEquals(1, interner.getMemoHits());
+
+        // Intersections are cached separately
+        assertEquals(IntValueSet.ofIntRange(3, 5), interner.intersect(a, b));
+        assertEquals(1, interner.getMemoHits());
+        interner.intersect(a, b);
+        assertEquals(2, interner.getMemoHits());
+    }
+
+    @Test
+    void releasesUnreferencedValues() throws InterruptedException {
+        var interner = new ValueSetInterner();
+        // Small singletons are cached by IntValueSet itself, so use ranges
+        ValueSet kept = interner.intern(IntValueSet.ofIntRange(-2, -1));
+        for (int i = 0; i < 1000; i++) {
+            interner.intern(IntValueSet.ofIntRange(i, i + 1));
+        }
+
+        for (int i = 0; i < 50 && interner.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(1, interner.size());
+        assertSame(kept, interner.intern(IntValueSet.ofIntRange(-2, -1)));
+    }
+
+    @Test
+    void internsConcurrently() throws Exception {
+        var interner = new ValueSetInterner();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<ValueSet>>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(() -> {
+                    List<ValueSet> values = new ArrayList<>();
+                    for (int i = 0; i < 500; i++) {
+                        values.add(interner.merge(IntValueSet.ofIntSingle(i), IntValueSet.ofIntSingle(i + 1)));
+                    }
+                    return values;
+                }));
+            }
+
+            List<ValueSet> first = results.getFirst().get();
+            for (Future<List<ValueSet>> result : results) {
+                List<ValueSet> values = result.get();
+                for (int i = 0; i < values.size(); i++) {
+                    assertSame(first.get(i), values.get(i));
+                }
+            }
+            assertTrue(interner.getMemoHits() <= 3 * 500);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}